@@ -8,7 +8,7 @@ import api.Direction;
 import api.Location;
 import api.MazeMap;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  *   
@@ -38,7 +38,7 @@ public class Blinky extends Ghost
 	 * 		Pseudorandom generator used in frightened mode 
 	 */
 	public Blinky(MazeMap maze, Location home, double baseSpeed, 
-			Direction homeDirection, Location scatterTarget, Random rand)
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand)
 	{
 		super(maze, home, baseSpeed, homeDirection, scatterTarget, rand);
 	}
@@ -46,6 +46,6 @@ public class Blinky extends Ghost
 	@Override
 	protected void calcTargetCell(Descriptor desc)
 	{
-		setTargetCell(desc.getPlayerLocation());
+		setTargetCell(Location.packedRow(desc.getPlayerCell()), Location.packedCol(desc.getPlayerCell()));
 	}
 }
@@ -3,7 +3,7 @@
  */
 package hw4;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import api.Descriptor;
 import api.Direction;
@@ -13,9 +13,14 @@ import api.MazeMap;
 public class Clyde extends Ghost
 {
 	/**
-	 * Stores the distance from Clyde to Pacman
+	 * Number of cells from Pacman within which Clyde gives up the chase
 	 */
-	private double distToPac;
+	private static final int SHY_RADIUS = 8;
+	
+	/**
+	 * Stores the distance from Clyde to Pacman, in the units of the distance metric
+	 */
+	private int distToPac;
 	
 	/**
 	 * Inherited constructor from Ghost
@@ -33,19 +38,43 @@ public class Clyde extends Ghost
 	 * 		Pseudorandom generator used in frightened mode 
 	 */
 	public Clyde(MazeMap maze, Location home, double baseSpeed, 
-			Direction homeDirection, Location scatterTarget, Random rand)
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand)
 	{
 		super(maze, home, baseSpeed, homeDirection, scatterTarget, rand);
 	}
 	
+	/**
+	 * Inherited constructor from Ghost with a given distance metric
+	 * @param maze
+	 * 		Maze configuration
+	 * @param home
+	 * 		Initial location
+	 * @param baseSpeed
+	 * 		Base speed increment
+	 * @param homeDirection
+	 * 		Initial direction
+	 * @param scatterTarget
+	 * 		Scatter location for ghost
+	 * @param rand
+	 * 		Pseudorandom generator used in frightened mode 
+	 * @param metric
+	 * 		Metric used for targeting and for measuring the distance to Pacman
+	 */
+	public Clyde(MazeMap maze, Location home, double baseSpeed, 
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand, DistanceMetric metric)
+	{
+		super(maze, home, baseSpeed, homeDirection, scatterTarget, rand, metric);
+	}
+	
 	@Override
 	protected void calcTargetCell(Descriptor desc)
 	{
-		distToPac = calculateDistance(getCurrentLocation(), desc.getPlayerLocation());
+		distToPac = getDistanceMetric().distance(getCurLocRow(), getCurLocCol(), 
+				desc.getPlayerRow(), desc.getPlayerCol());
 		
-		if(distToPac > 8.0)
+		if(distToPac > getDistanceMetric().radius(SHY_RADIUS))
 		{
-			setTargetCell(desc.getPlayerLocation());
+			setTargetCell(desc.getPlayerRow(), desc.getPlayerCol());
 		}
 		else 
 		{
@@ -0,0 +1,37 @@
+package hw4;
+
+/**
+ * Strategy used by a ghost to measure how far a cell is from its target.
+ * Distances are integers, so ghosts can compare them exactly and break
+ * ties by direction order instead of with a margin of error.  Only the
+ * ordering of distances matters, so a metric does not have to be measured
+ * in cells; radius() converts a number of cells into the metric's units.
+ */
+public interface DistanceMetric
+{
+	/**
+	 * Returns the distance from one cell to another, smaller values
+	 * are closer
+	 * @param fromRow
+	 * 		Row of the starting cell
+	 * @param fromCol
+	 * 		Col of the starting cell
+	 * @param toRow
+	 * 		Row of the target cell
+	 * @param toCol
+	 * 		Col of the target cell
+	 * @return
+	 * 		Distance between the cells, in the metric's units
+	 */
+	int distance(int fromRow, int fromCol, int toRow, int toCol);
+	
+	/**
+	 * Converts a straight-line number of cells into the metric's units,
+	 * for comparing against results of distance()
+	 * @param cells
+	 * 		Given number of cells
+	 * @return
+	 * 		Equivalent distance in the metric's units
+	 */
+	int radius(int cells);
+}
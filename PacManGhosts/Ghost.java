@@ -8,68 +8,74 @@ import static api.Direction.LEFT;
 import static api.Direction.RIGHT;
 import static api.Direction.UP;
 
+import api.ActorState;
 import api.Descriptor;
 import api.Direction;
+import api.FlowField;
 import api.Location;
 import api.MazeMap;
 import api.Mode;
+import api.SplitMixRandom;
 import static api.Mode.*;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public abstract class Ghost extends PacmanAndFriends
 {
 	//Variables
 	/**
-	 * The cell above the current location
+	 * Directions in the order they are considered when choosing
+	 * the next cell, this order also breaks ties between equal distances
 	 */
-	private Location nextCellUp;
+	private static final Direction[] DIRECTIONS = {UP, LEFT, DOWN, RIGHT};
 	
 	/**
-	 * The cell to the left of the current location
+	 * Direction opposite to each entry of DIRECTIONS, ghosts may not reverse
 	 */
-	private Location nextCellLeft;
+	private static final Direction[] REVERSE = {DOWN, RIGHT, UP, LEFT};
 	
 	/**
-	 * The cell to the below the current location
+	 * Directions indexed by ordinal, used when restoring a saved state
 	 */
-	private Location nextCellDown;
+	private static final Direction[] ALL_DIRECTIONS = Direction.values();
 	
 	/**
-	 * The cell to the right of the current location
+	 * Value in distances[] for a direction that cannot be taken
 	 */
-	private Location nextCellRight;
+	private static final int NOT_LEGAL = Integer.MAX_VALUE;
 	
 	/**
-	 * Distance between nextCellUp and the target cell
+	 * Shared default distance metric, exact integer squared distance
 	 */
-	private double distUpToTarg;
+	private static final DistanceMetric DEFAULT_METRIC = new SquaredEuclideanMetric();
 	
 	/**
-	 * Distance between nextCellLeft and the target cell
+	 * Marker for a packed cell that is not set, does not equal any 
+	 * cell in the maze
 	 */
-	private double distLeftToTarg;
+	private static final int NO_CELL = Integer.MIN_VALUE;
 	
 	/**
-	 * Distance between nextCellDown and the target cell
+	 * The cells above, to the left of, below, and to the right of 
+	 * the current location, packed, in the order of DIRECTIONS
 	 */
-	private double distDownToTarg;
+	private int[] neighborCells;
 	
 	/**
-	 * Distance between nextCellRight and the target cell
+	 * Metric used to compare the distances of neighboring cells to the target
 	 */
-	private double distRightToTarg;
+	private DistanceMetric metric;
 	
 	/**
-	 * Stores the value of the "next" cell 
-	 * that is the shortest distance of the target cell
+	 * Directions that can be moved in from the current cell,
+	 * as a move mask from the maze
 	 */
-	private double distShort;
+	private int moveMask;
 	
 	/**
-	 * Target of the ghost
+	 * Target of the ghost, packed
 	 */
-	private Location targetCell;
+	private int targetCell;
 	
 	/**
 	 * Scatter location of the ghosts
@@ -77,9 +83,14 @@ public abstract class Ghost extends PacmanAndFriends
 	private Location scatterTarget;
 	
 	/**
-	 * The next cell to be reached by the ghost
+	 * Scatter location of the ghosts, packed
 	 */
-	private Location nextCell;
+	private int scatterCell;
+	
+	/**
+	 * The next cell to be reached by the ghost, packed
+	 */
+	private int nextCell = NO_CELL;
 	
 	/**
 	 * The next direction the ghost will be in
@@ -122,34 +133,51 @@ public abstract class Ghost extends PacmanAndFriends
 	private int colNum;
 	
 	/**
-	 * Array of doubles that store the potential distShort among the "next" cells
+	 * Distance from each of neighborCells[] to the target, 
+	 * or NOT_LEGAL if that cell cannot be moved to
 	 */
-	private double[] distances;
+	private int[] distances;
 	
 	/**
-	 * Temporary placeholder for values in distances[], 
-	 * assists in determining distShort
+	 * Used to store the random generator from the constructor
 	 */
-	private double distance;
+	private RandomGenerator rand;
 	
 	/**
-	 * Current location of the player
+	 * Random number from rand to determine 
+	 * the next cell while in mode "FRIGHTENED"
 	 */
-	private Location playerLoc;
+	private int randNum;
 	
 	/**
-	 * Used to store Random rand from the constructor
+	 * Whether the ghost chases the player along shortest paths
+	 * instead of heading for its usual target
 	 */
-	private Random rand;
+	private boolean pursuit;
 	
 	/**
-	 * Random number from rand to determine 
-	 * the next cell while in mode "FRIGHTENED"
+	 * Universal constructor for ghost object 
+	 * @param maze
+	 * 		Maze configuration
+	 * @param home
+	 * 		Initial location
+	 * @param baseSpeed
+	 * 		Base speed increment
+	 * @param homeDirection
+	 * 		Initial direction
+	 * @param scatterTarget
+	 * 		Scatter location for ghost
+	 * @param rand
+	 * 		Pseudorandom generator used in frightened mode 
 	 */
-	private int randNum;
+	public Ghost(MazeMap maze, Location home, double baseSpeed, 
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand)
+	{
+		this(maze, home, baseSpeed, homeDirection, scatterTarget, rand, DEFAULT_METRIC);
+	}
 	
 	/**
-	 * Universal constructor for ghost object 
+	 * Universal constructor for ghost object with a given distance metric
 	 * @param maze
 	 * 		Maze configuration
 	 * @param home
@@ -162,17 +190,22 @@ public abstract class Ghost extends PacmanAndFriends
 	 * 		Scatter location for ghost
 	 * @param rand
 	 * 		Pseudorandom generator used in frightened mode 
+	 * @param metric
+	 * 		Metric used to compare distances to the target cell
 	 */
 	public Ghost(MazeMap maze, Location home, double baseSpeed, 
-			Direction homeDirection, Location scatterTarget, Random rand)
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand, DistanceMetric metric)
 	{
 		setMaze(maze);
 		setHome(home);
 		setBaseIncrement(baseSpeed);
 		setHomeDirection(homeDirection);
 		this.scatterTarget = scatterTarget;
+		scatterCell = scatterTarget.pack();
 		this.rand = rand;
-		distances = new double[4];
+		this.metric = metric;
+		neighborCells = new int[4];
+		distances = new int[4];
 		currentMode = INACTIVE;
 	}
 	
@@ -184,7 +217,7 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	protected int getCurLocRow()
 	{
-		return (int) getCurrentLocation().row();
+		return Location.packedRow(getCurrentCell());
 	}
 	
 	/**
@@ -194,7 +227,7 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	protected int getCurLocCol()
 	{
-		return (int) getCurrentLocation().col();
+		return Location.packedCol(getCurrentCell());
 	}
 	
 	/**
@@ -210,11 +243,35 @@ public abstract class Ghost extends PacmanAndFriends
 	/**
 	 * 
 	 * @return
-	 * 		Next cell location
+	 * 		Packed cell of the ghost's scatter target
+	 */
+	protected int getScatterCell()
+	{
+		return scatterCell;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 * 		Metric used to compare distances to the target cell
+	 */
+	protected DistanceMetric getDistanceMetric()
+	{
+		return metric;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 * 		Next cell location, or null if not yet calculated
 	 */
 	public Location getNextCell()
 	{
-		return nextCell;
+		if(nextCell == NO_CELL)
+		{
+			return null;
+		}
+		return Location.unpack(nextCell);
 	}
 	
 	@Override
@@ -231,7 +288,52 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	protected void setTargetCell(Location l)
 	{
-		targetCell = l;
+		targetCell = l.pack();
+	}
+	
+	/**
+	 * Sets the ghost's target cell without allocating a location
+	 * @param row
+	 * 		Given row
+	 * @param col
+	 * 		Given col
+	 */
+	protected void setTargetCell(int row, int col)
+	{
+		targetCell = Location.pack(row, col);
+	}
+	
+	/**
+	 * Sets the metric used to compare distances to the target cell
+	 * @param m
+	 * 		Given metric
+	 */
+	public void setDistanceMetric(DistanceMetric m)
+	{
+		metric = m;
+	}
+	
+	/**
+	 * Sets whether the ghost pursues the player along shortest paths 
+	 * through the maze while in CHASE mode, instead of heading for the
+	 * target cell it would usually choose.  Pursuing ghosts read their
+	 * distances from the game's shared flow field toward the player
+	 * @param p
+	 * 		True for pursuit, false for the usual targeting
+	 */
+	public void setPursuit(boolean p)
+	{
+		pursuit = p;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 * 		True if the ghost pursues the player along shortest paths
+	 */
+	public boolean isPursuit()
+	{
+		return pursuit;
 	}
 	
 	//Methods
@@ -246,6 +348,51 @@ public abstract class Ghost extends PacmanAndFriends
 		return new Location((int) getRowExact(), (int) getColExact());
 	}
 	
+	@Override
+	public int getCurrentCell()
+	{
+		if(getRowExact() == 0 || getColExact() == 0)
+		{
+			return getHomeCell();
+		}
+		
+		return Location.pack((int) getRowExact(), (int) getColExact());
+	}
+	
+	/**
+	 * Saves the mode, pending move, target and random state along with
+	 * the position.  The random state can only be saved if the ghost's
+	 * generator is a SplitMixRandom.
+	 */
+	@Override
+	public void saveState(ActorState state)
+	{
+		if(!(rand instanceof SplitMixRandom))
+		{
+			throw new IllegalStateException("Random generator state cannot be saved");
+		}
+		super.saveState(state);
+		state.setExtra(0, nextCell);
+		state.setExtra(1, nextDir == null ? -1 : nextDir.ordinal());
+		state.setExtra(2, targetCell);
+		state.setExtra(3, ((SplitMixRandom) rand).getState());
+	}
+	
+	@Override
+	public void restoreState(ActorState state)
+	{
+		if(!(rand instanceof SplitMixRandom))
+		{
+			throw new IllegalStateException("Random generator state cannot be restored");
+		}
+		super.restoreState(state);
+		currentMode = state.getMode();
+		nextCell = (int) state.getExtra(0);
+		nextDir = state.getExtra(1) < 0 ? null : ALL_DIRECTIONS[(int) state.getExtra(1)];
+		targetCell = (int) state.getExtra(2);
+		((SplitMixRandom) rand).setState(state.getExtra(3));
+	}
+	
 	@Override
 	public void reset()
 	{
@@ -279,13 +426,18 @@ public abstract class Ghost extends PacmanAndFriends
 	@Override
 	public void update(Descriptor desc)
 	{
+		 if(isFixedPoint())
+		 {
+			 updateFixed(desc);
+			 return;
+		 }
+		 
 		 increment = getCurrentIncrement();
 		 curRowExact = getRowExact();
 		 curColExact = getColExact();
 		 rowNum = (int) curRowExact;
 		 colNum = (int) curColExact; 
 		 distCenter = distanceToCenter();
-		 distShort = 0;
 		 
 		
 		 if (getCurrentDirection() == null)
@@ -304,10 +456,15 @@ public abstract class Ghost extends PacmanAndFriends
 		 		if (curColExact - increment - 0.5 < 0)
 		        {
 		 			curColExact = getMaze().getNumColumns() + (curColExact - increment - 0.5);
+		 			if(curColExact >= getMaze().getNumColumns())
+		 			{
+		 				//A tiny negative offset rounds to the right edge itself
+		 				curColExact = Math.nextDown((double) getMaze().getNumColumns());
+		 			}
 		        }
 		        else
 		        {
-		          if (distCenter > -getERR() && distCenter < increment && getMaze().isWall(rowNum, colNum - 1)
+		          if (distCenter > -getERR() && distCenter < increment && !getMaze().canMove(rowNum, colNum, LEFT)
 		        		  || nextDir != LEFT)
 		          {
 		        	  increment = distCenter;
@@ -338,7 +495,7 @@ public abstract class Ghost extends PacmanAndFriends
 		        }
 		 		else
 		 		{
-		 			if (distCenter > -getERR() && distCenter < increment && getMaze().isWall(rowNum, colNum + 1)
+		 			if (distCenter > -getERR() && distCenter < increment && !getMaze().canMove(rowNum, colNum, RIGHT)
 		 					|| nextDir != RIGHT)
 		 	        {
 		 				increment = distCenter;
@@ -363,7 +520,7 @@ public abstract class Ghost extends PacmanAndFriends
 
 		 	case UP:
 		 	{	
-		 		if ((distCenter > -getERR() && distCenter < increment && getMaze().isWall(rowNum - 1, colNum))
+		 		if ((distCenter > -getERR() && distCenter < increment && !getMaze().canMove(rowNum, colNum, UP))
 		 				|| nextDir != UP)
 		        {
 		 			if(increment > distCenter)
@@ -390,7 +547,7 @@ public abstract class Ghost extends PacmanAndFriends
 
 		 	case DOWN:
 		 	{		 		
-		 		 if (distCenter > -getERR() && distCenter < increment && getMaze().isWall(rowNum + 1, colNum)
+		 		 if (distCenter > -getERR() && distCenter < increment && !getMaze().canMove(rowNum, colNum, DOWN)
 		 				 || nextDir != DOWN)
 		         {
 		 			increment = distCenter;
@@ -417,6 +574,149 @@ public abstract class Ghost extends PacmanAndFriends
 		 setColExact(curColExact);
 	}
 	
+	/**
+	 * Returns no frames when the ghost is about to turn, since update()
+	 * then moves it straight to the center of its cell, and any number
+	 * while it is INACTIVE and does not move at all.
+	 */
+	@Override
+	public int framesUntilEvent(int limit)
+	{
+		if(currentMode == INACTIVE)
+		{
+			return limit;
+		}
+		else if(nextDir != getCurrentDirection())
+		{
+			return 0;
+		}
+		return super.framesUntilEvent(limit);
+	}
+	
+	@Override
+	public void glide(int frames)
+	{
+		if(currentMode != INACTIVE)
+		{
+			super.glide(frames);
+		}
+	}
+	
+	/**
+	 * Fixed-point version of update(), with the same rules on integer 
+	 * positions in units of 1/256 of a cell, so centerlines and cell 
+	 * edges are reached exactly
+	 * @param desc
+	 * 		Given descriptor
+	 */
+	private void updateFixed(Descriptor desc)
+	{
+		if(getCurrentDirection() == null || currentMode == INACTIVE)
+		{
+			return;
+		}
+		
+		int inc = getIncrementFixed();
+		int row = getRowFixed();
+		int col = getColFixed();
+		int cellRow = row >> FIXED_SHIFT;
+		int cellCol = col >> FIXED_SHIFT;
+		int width = getMaze().getNumColumns() << FIXED_SHIFT;
+		int dist = distanceToCenterFixed();
+		
+		switch(getCurrentDirection())
+		{
+			case LEFT:
+				if(col - inc - FIXED_HALF < 0)
+				{
+					setColFixed(width + (col - inc - FIXED_HALF));
+					return;
+				}
+				if(dist >= 0 && dist < inc && !getMaze().canMove(cellRow, cellCol, LEFT) || nextDir != LEFT)
+				{
+					inc = dist;
+				}
+				col -= inc;
+				if(col < cellCol << FIXED_SHIFT)
+				{
+					setColFixed(col);
+					calculateNextCell(desc);
+				}
+				break;
+				
+			case RIGHT:
+				if(col + inc + FIXED_HALF >= width)
+				{
+					setColFixed(col + inc + FIXED_HALF - width);
+					return;
+				}
+				if(dist >= 0 && dist < inc && !getMaze().canMove(cellRow, cellCol, RIGHT) || nextDir != RIGHT)
+				{
+					inc = dist;
+				}
+				col += inc;
+				if(col > (cellCol + 1) << FIXED_SHIFT)
+				{
+					setColFixed(col);
+					calculateNextCell(desc);
+				}
+				break;
+				
+			case UP:
+				if((dist >= 0 && dist < inc && !getMaze().canMove(cellRow, cellCol, UP)) || nextDir != UP)
+				{
+					if(inc > dist)
+					{
+						inc = dist;
+					}
+				}
+				row -= inc;
+				if(row < cellRow << FIXED_SHIFT)
+				{
+					setRowFixed(row);
+					calculateNextCell(desc);
+				}
+				break;
+				
+			case DOWN:
+				if(dist >= 0 && dist < inc && !getMaze().canMove(cellRow, cellCol, DOWN) || nextDir != DOWN)
+				{
+					inc = dist;
+				}
+				row += inc;
+				if(row > (cellRow + 1) << FIXED_SHIFT)
+				{
+					setRowFixed(row);
+					calculateNextCell(desc);
+				}
+				break;
+		}
+		
+		//At the exact center of the (possibly new) cell, take the next direction
+		if(getCurrentDirection() != null && isCentered(row, getRowFixed()) && isCentered(col, getColFixed()))
+		{
+			setDirection(nextDir);
+		}
+		
+		setRowFixed(row);
+		setColFixed(col);
+	}
+	
+	/**
+	 * Helper method used to check whether a fixed-point coordinate is on 
+	 * the centerline of the cell containing another
+	 * @param x
+	 * 		Coordinate to check
+	 * @param cellOf
+	 * 		Coordinate whose cell is used
+	 * @return
+	 * 		True if x is on that cell's centerline
+	 */
+	private static boolean isCentered(int x, int cellOf)
+	{
+		return x == ((cellOf >> FIXED_SHIFT) << FIXED_SHIFT) + FIXED_HALF;
+	}
+	
 	/**
 	 * Determines the next cell to be traveled to by the ghost 	
 	 * @param desc
@@ -424,32 +724,40 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	public void calculateNextCell(Descriptor desc)
 	{
-		nextCellUp = new Location(getCurLocRow() - 1, getCurLocCol());
+		int row = getCurLocRow();
+		int col = getCurLocCol();
+		moveMask = getMaze().getMoveMask(row, col);
 		
-		if(getCurLocCol() == 0)
+		neighborCells[0] = Location.pack(row - 1, col);
+		
+		if(col == 0)
 		{
-			nextCellLeft = new Location(getCurLocRow(), getMaze().getNumColumns() - 2);
+			neighborCells[1] = Location.pack(row, getMaze().getNumColumns() - 2);
 		}
 		else
 		{
-			nextCellLeft = new Location(getCurLocRow(), getCurLocCol() - 1);
+			neighborCells[1] = Location.pack(row, col - 1);
 		}
 		
-		nextCellDown = new Location(getCurLocRow() + 1, getCurLocCol());
+		neighborCells[2] = Location.pack(row + 1, col);
 		
-		if(getCurLocCol() == getMaze().getNumColumns() - 1)
+		if(col == getMaze().getNumColumns() - 1)
 		{
-			nextCellRight = new Location(getCurLocRow(), 1);
+			neighborCells[3] = Location.pack(row, 1);
 		}
 		else
 		{
-			nextCellRight = new Location(getCurLocRow(), getCurLocCol() + 1);
+			neighborCells[3] = Location.pack(row, col + 1);
 		}
 		
 		if(currentMode == INACTIVE)
 		{
 			return;
 		}
+		else if(currentMode != FRIGHTENED && calcCorridor())
+		{
+			return;
+		}
 		else if(currentMode == SCATTER)
 		{
 			calcScatter(desc);
@@ -468,6 +776,32 @@ public abstract class Ghost extends PacmanAndFriends
 		}
 	}
 
+	/**
+	 * Helper method used to follow a corridor between junctions, where the
+	 * only way on is already known and nothing needs to be evaluated
+	 * @return
+	 * 		True if the ghost is in a corridor and its next cell has been set
+	 */
+	private boolean calcCorridor()
+	{
+		Direction exit = getMaze().getJunctionGraph().getCorridorExit(getCurLocRow(), 
+				getCurLocCol(), getCurrentDirection());
+		if(exit == null)
+		{
+			return false;
+		}
+		
+		for(int i = 0; i < 4; i++)
+		{
+			if(DIRECTIONS[i] == exit && !calcCheck())
+			{
+				nextCell = neighborCells[i];
+				nextDir = exit;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Helper method used to determine the next cell while in SCATTER mode
 	 * @param desc
@@ -475,30 +809,8 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	private void calcScatter(Descriptor desc) 
 	{	
-		resetDistances();
-		
-		if(getCurrentDirection() != DOWN && !getMaze().isWall(nextCellUp.row(), nextCellUp.col()))
-		{
-			distUpToTarg = calculateDistance(nextCellUp, scatterTarget);
-			distances[0] = distUpToTarg;
-		}
-		if(getCurrentDirection() != RIGHT && !getMaze().isWall(nextCellLeft.row(), nextCellLeft.col()))
-		{
-			distLeftToTarg = calculateDistance(nextCellLeft, scatterTarget);
-			distances[1] = distLeftToTarg;
-		}
-		if(getCurrentDirection() != UP && !getMaze().isWall(nextCellDown.row(), nextCellDown.col()))
-		{
-			distDownToTarg = calculateDistance(nextCellDown, scatterTarget);
-			distances[2] = distDownToTarg;
-		}
-		if(getCurrentDirection() != LEFT && !getMaze().isWall(nextCellRight.row(), nextCellRight.col()))
-		{
-			distRightToTarg = calculateDistance(nextCellRight, scatterTarget);
-			distances[3] = distRightToTarg;			
-		}
-		
-		calcCell(scatterTarget);
+		calcDistances(scatterCell);
+		calcCell();
 	}
 	
 	
@@ -509,82 +821,79 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	private void calcChase(Descriptor desc)
 	{
-		resetDistances();
-		
-		calcTargetCell(desc);
-		
-		if(getCurrentDirection() != DOWN && !getMaze().isWall(nextCellUp.row(), nextCellUp.col()))
+		FlowField field = desc.getChaseField();
+		if(pursuit && field != null)
 		{
-			distUpToTarg = calculateDistance(nextCellUp, targetCell);
-			distances[0] = distUpToTarg;
+			targetCell = desc.getPlayerCell();
+			calcPursuit(field);
 		}
-		if(getCurrentDirection() != RIGHT && !getMaze().isWall(nextCellLeft.row(), nextCellLeft.col()))
-		{
-			distLeftToTarg =calculateDistance(nextCellLeft, targetCell);
-			distances[1] = distLeftToTarg;
-		}
-		if(getCurrentDirection() != UP && !getMaze().isWall(nextCellDown.row(), nextCellDown.col()))
+		else
 		{
-			distDownToTarg =calculateDistance(nextCellDown, targetCell);
-			distances[2] = distDownToTarg;
+			calcTargetCell(desc);
+			calcDistances(targetCell);
 		}
-		if(getCurrentDirection() != LEFT && !getMaze().isWall(nextCellRight.row(), nextCellRight.col()))
+		calcCell();
+	}
+	
+	
+	/**
+	 * Helper method used to fill in distances[] with the number of moves
+	 * from each neighboring cell to the player, read from the shared flow
+	 * field, leaving out walls and the reverse direction
+	 * @param field
+	 * 		Flow field toward the player
+	 */
+	private void calcPursuit(FlowField field)
+	{
+		for(int i = 0; i < 4; i++)
 		{
-			distRightToTarg =calculateDistance(nextCellRight, targetCell);
-			distances[3] = distRightToTarg;
+			if(getCurrentDirection() != REVERSE[i] && (moveMask & MazeMap.maskOf(DIRECTIONS[i])) != 0)
+			{
+				int cell = wrappedNeighbor(i);
+				int moves = field.getDistance(Location.packedRow(cell), Location.packedCol(cell));
+				
+				//Cells with no path to the player are picked last
+				distances[i] = moves < 0 ? NOT_LEGAL - 1 : moves;
+			}
+			else
+			{
+				distances[i] = NOT_LEGAL;
+			}
 		}
-		
-		calcCell(targetCell);
 	}
 	
 	
 	/**
-	 * Helper method used to determine the next cell while in DEAD mode
+	 * Helper method used to determine the next cell while in DEAD mode,
+	 * uses the maze's shortest paths so the ghost goes straight home
 	 * @param desc
 	 * 		Given descriptor
 	 */		
 	private void calcDead(Descriptor desc)
 	{
-		resetDistances();
+		int homeRow = Location.packedRow(getHomeCell());
+		int homeCol = Location.packedCol(getHomeCell());
 		
-		if(getCurrentDirection() != DOWN && !getMaze().isWall(nextCellUp.row(), nextCellUp.col()))
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			distUpToTarg = calculateDistance(nextCellUp, getHomeLocation());
-			distances[0] = distUpToTarg;
-		}
-		if(getCurrentDirection() != RIGHT && !getMaze().isWall(nextCellLeft.row(), nextCellLeft.col()))
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			distLeftToTarg = calculateDistance(nextCellLeft, getHomeLocation());
-			distances[1] = distLeftToTarg;
-		}
-		if(getCurrentDirection() != UP && !getMaze().isWall(nextCellDown.row(), nextCellDown.col()))
+		calcDistances(getHomeCell());
+		
+		for(int i = 0; i < 4; i++)
 		{
-			if(calcCheck())
+			if(distances[i] == NOT_LEGAL)
 			{
-				return;
+				continue;
 			}
-			distDownToTarg =calculateDistance(nextCellDown, getHomeLocation());
-			distances[2] = distDownToTarg;
-		}
-		if(getCurrentDirection() != LEFT && !getMaze().isWall(nextCellRight.row(), nextCellRight.col()))
-		{
-			if(calcCheck())
+			int cell = wrappedNeighbor(i);
+			int moves = getMaze().getPathDistance(Location.packedRow(cell), 
+					Location.packedCol(cell), homeRow, homeCol);
+			
+			//Unreachable cells keep the distance from the metric
+			if(moves >= 0)
 			{
-				return;
+				distances[i] = moves;
 			}
-			distRightToTarg = calculateDistance(nextCellRight, getHomeLocation());
-			distances[3] = distRightToTarg;
 		}
 		
-		calcCell(playerLoc);
+		calcCell();
 	}
 	
 	
@@ -599,43 +908,19 @@ public abstract class Ghost extends PacmanAndFriends
 		{
 			randNum = rand.nextInt(4);
 			
-			if(randNum == 0 && !getMaze().isWall(nextCellUp.row(), nextCellUp.col()))
+			if((moveMask & MazeMap.maskOf(DIRECTIONS[randNum])) != 0)
 			{
 				if(calcCheck())
 				{
 					return;
 				}
-				nextCell = nextCellUp;
-				nextDir = UP;
-			}
-			else if(randNum == 1 && !getMaze().isWall(nextCellLeft.row(), nextCellLeft.col()))
-			{
-				if(calcCheck())
+				nextCell = neighborCells[randNum];
+				nextDir = DIRECTIONS[randNum];
+				
+				if(nextDir == DOWN)
 				{
-					return;
+					break;
 				}
-				nextCell = nextCellLeft;
-				nextDir = LEFT;
-			}
-			else if(randNum == 2 && !getMaze().isWall(nextCellDown.row(), nextCellDown.col()))
-			{
-				if(calcCheck())
-				{
-					return;
-				}
-				nextCell = nextCellDown;
-				nextDir = DOWN;
-			
-				break;
-			}
-			else if(randNum == 3 && !getMaze().isWall(nextCellRight.row(), nextCellRight.col()))
-			{
-				if(calcCheck())
-				{
-					return;
-				}
-				nextCell = nextCellRight;
-				nextDir = RIGHT;	
 			}
 		}
 	}
@@ -656,141 +941,77 @@ public abstract class Ghost extends PacmanAndFriends
 	 */
 	private boolean calcCheck()
 	{
-		if(getRowExact() != ((int) getRowExact() + 0.5) && !nextCell.equals(getCurrentLocation()))
+		if(getRowExact() != ((int) getRowExact() + 0.5) && nextCell != getCurrentCell())
 		{
 			return true;
 		}
 		return false;
 	}
 	
-	
 	/**
-	 * Helper method used to calculate the next cell based
-	 * on the target cell
+	 * Fills in distances[] with the metric distance from each neighboring 
+	 * cell to the target, leaving out walls and the reverse direction
 	 * @param target
-	 * 		Target cell of the ghost
+	 * 		Target cell of the ghost, packed
 	 */
-	private void calcCell(Location target)
-	{	
+	private void calcDistances(int target)
+	{
+		int targetRow = Location.packedRow(target);
+		int targetCol = Location.packedCol(target);
+		
 		for(int i = 0; i < 4; i++)
 		{
-			distance = distances[i];
-			
-			if(distShort == 0 && distance != 0)
+			if(getCurrentDirection() != REVERSE[i] && (moveMask & MazeMap.maskOf(DIRECTIONS[i])) != 0)
 			{
-				distShort = distance;
+				int cell = wrappedNeighbor(i);
+				distances[i] = metric.distance(Location.packedRow(cell), 
+						Location.packedCol(cell), targetRow, targetCol);
 			}
-			else if(distance != 0 && distance < distShort)
+			else
 			{
-				distShort = distance;
+				distances[i] = NOT_LEGAL;
 			}
 		}
+	}
+	
+	/**
+	 * Returns the cell reached by one move in the given direction, where
+	 * the tunnel leads to the cell on the opposite edge rather than to the
+	 * one next to it that neighborCells[] holds
+	 * @param i
+	 * 		Index into DIRECTIONS
+	 * @return
+	 * 		The neighboring cell, packed
+	 */
+	private int wrappedNeighbor(int i)
+	{
+		int numCols = getMaze().getNumColumns();
+		int row = getCurLocRow() + (DIRECTIONS[i] == UP ? -1 : DIRECTIONS[i] == DOWN ? 1 : 0);
+		int col = (getCurLocCol() + (DIRECTIONS[i] == LEFT ? -1 : DIRECTIONS[i] == RIGHT ? 1 : 0) + numCols) % numCols;
+		return Location.pack(row, col);
+	}
+	
+	/**
+	 * Helper method used to pick the next cell with the smallest entry
+	 * in distances[], ties go to the earliest direction in DIRECTIONS
+	 */
+	private void calcCell()
+	{	
+		int best = -1;
 		
-		//Check to see if next equals the target cell, safeguards against distance
-		//being equal to zero
-		if(nextCellUp.equals(target))
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellUp;
-			nextDir = UP;
-			return;
-		}
-		else if(nextCellLeft.equals(target))
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellLeft;
-			nextDir = LEFT;
-			return;
-		}
-		else if(nextCellDown.equals(target))
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellDown;
-			nextDir = DOWN;
-			return;
-		}
-		else if(nextCellRight.equals(target))
+		for(int i = 0; i < 4; i++)
 		{
-			if(calcCheck())
+			if(distances[i] != NOT_LEGAL && (best < 0 || distances[i] < distances[best]))
 			{
-				return;
+				best = i;
 			}
-			nextCell = nextCellRight;
-			nextDir = RIGHT;
-			return;
 		}
 		
-		//Find next cell as normal
-		if(Math.abs(distUpToTarg - distShort) < getERR())
+		if(best < 0 || calcCheck())
 		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellUp;
-			nextDir = UP;
-		}
-		else if(Math.abs(distLeftToTarg - distShort) < getERR())
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellLeft;
-			nextDir = LEFT;
-		}
-		else if(Math.abs(distDownToTarg - distShort) < getERR())
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellDown;
-			nextDir = DOWN;
-		}
-		else if(Math.abs(distRightToTarg - distShort) < getERR())
-		{
-			if(calcCheck())
-			{
-				return;
-			}
-			nextCell = nextCellRight;
-			nextDir = RIGHT;
-		}
-	}	
-
-	/**
-	 * Resets the distances[]
-	 */
-	private void resetDistances()
-	{
-		for(int i = 0; i < 4; i++)
-		{
-			distances[i] = 0;
+			return;
 		}
+		nextCell = neighborCells[best];
+		nextDir = DIRECTIONS[best];
 	}	
-	
-	/**
-	 * Calculates the distance between two location
-	 * @param loc1
-	 * 		Given location
-	 * @param loc2
-	 * 		Given location
-	 * @return
-	 * 		Distance between loc1 and loc2
-	 */
-	protected double calculateDistance(Location loc1, Location loc2)
-	{
-		return Math.sqrt((Math.pow((loc1.row() - loc2.row()), 2)) + (Math.pow((loc1.col() - loc2.col()), 2)));
-	}
 }
-
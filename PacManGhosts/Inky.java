@@ -7,7 +7,7 @@ import static api.Direction.DOWN;
 import static api.Direction.LEFT;
 import static api.Direction.UP;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import api.Descriptor;
 import api.Direction;
@@ -17,14 +17,19 @@ import api.MazeMap;
 public class Inky extends Ghost
 {
 	/**
-	 * Cell two tiles in front of Pacman
+	 * Index of Blinky among the game's enemies
 	 */
-	private Location tempCell;
+	private static final int BLINKY = 0;
 	
 	/**
-	 * Exact location of the ghost Blinky
+	 * Row of the cell two tiles in front of Pacman
 	 */
-	private Location blinkyExact;
+	private int tempRow;
+	
+	/**
+	 * Col of the cell two tiles in front of Pacman
+	 */
+	private int tempCol;
 	
 	/**
 	 * Row of Inky's target cell
@@ -52,7 +57,7 @@ public class Inky extends Ghost
 	 * 		Pseudorandom generator used in frightened mode 
 	 */
 	public Inky(MazeMap maze, Location home, double baseSpeed, 
-			Direction homeDirection, Location scatterTarget, Random rand)
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand)
 	{
 		super(maze, home, baseSpeed, homeDirection, scatterTarget, rand);
 	}
@@ -60,28 +65,29 @@ public class Inky extends Ghost
 	@Override
 	protected void calcTargetCell(Descriptor desc)
 	{
+		tempRow = desc.getPlayerRow();
+		tempCol = desc.getPlayerCol();
+		
 		if(desc.getPlayerDirection() == UP)
 		{
-			tempCell = new Location((int) desc.getPlayerLocation().row() - 2, (int) desc.getPlayerLocation().col());
+			tempRow -= 2;
 		}
 		else if(desc.getPlayerDirection() == LEFT)
 		{
-			tempCell = new Location((int) desc.getPlayerLocation().row(), (int) desc.getPlayerLocation().col() - 2);
+			tempCol -= 2;
 		}
 		else if(desc.getPlayerDirection() == DOWN)
 		{
-			tempCell = new Location((int) desc.getPlayerLocation().row() + 2, (int) desc.getPlayerLocation().col());
+			tempRow += 2;
 		}
 		else
 		{
-			tempCell = new Location((int) desc.getPlayerLocation().row(), (int) desc.getPlayerLocation().col() + 2);
+			tempCol += 2;
 		}
 		
-		blinkyExact = new Location((int) desc.getBlinkyLocation().row(), (int) desc.getBlinkyLocation().col());
-		
-		targetRow = (tempCell.row() * 2) - (blinkyExact.row());
-		targetCol = (tempCell.col() * 2) - (blinkyExact.col());
+		targetRow = (tempRow * 2) - Location.packedRow(desc.getEnemyCell(BLINKY));
+		targetCol = (tempCol * 2) - Location.packedCol(desc.getEnemyCell(BLINKY));
 		
-		setTargetCell(new Location(targetRow, targetCol));
+		setTargetCell(targetRow, targetCol);
 	}
 }
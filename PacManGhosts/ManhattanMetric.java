@@ -0,0 +1,19 @@
+package hw4;
+
+/**
+ * Number of horizontal and vertical steps between two cells, ignoring walls.
+ */
+public class ManhattanMetric implements DistanceMetric
+{
+	@Override
+	public int distance(int fromRow, int fromCol, int toRow, int toCol)
+	{
+		return Math.abs(fromRow - toRow) + Math.abs(fromCol - toCol);
+	}
+	
+	@Override
+	public int radius(int cells)
+	{
+		return cells;
+	}
+}
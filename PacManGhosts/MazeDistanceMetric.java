@@ -0,0 +1,50 @@
+package hw4;
+
+import api.MazeMap;
+
+/**
+ * Number of moves along a shortest path through the maze, taken from the
+ * maze's precomputed path tables.  Targets outside the maze or inside a
+ * wall have no path, so for those the Manhattan distance is used instead.
+ */
+public class MazeDistanceMetric implements DistanceMetric
+{
+	/**
+	 * Maze whose path tables are used
+	 */
+	private MazeMap maze;
+	
+	/**
+	 * Metric used when there is no path to the target
+	 */
+	private ManhattanMetric fallback;
+	
+	/**
+	 * Constructs a metric using the given maze's path tables
+	 * @param maze
+	 * 		Maze configuration
+	 */
+	public MazeDistanceMetric(MazeMap maze)
+	{
+		this.maze = maze;
+		fallback = new ManhattanMetric();
+	}
+	
+	@Override
+	public int distance(int fromRow, int fromCol, int toRow, int toCol)
+	{
+		int moves = maze.getPathDistance(fromRow, fromCol, toRow, toCol);
+		
+		if(moves < 0)
+		{
+			return fallback.distance(fromRow, fromCol, toRow, toCol);
+		}
+		return moves;
+	}
+	
+	@Override
+	public int radius(int cells)
+	{
+		return cells;
+	}
+}
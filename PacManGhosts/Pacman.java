@@ -5,6 +5,7 @@ import static api.Direction.LEFT;
 import static api.Direction.RIGHT;
 import static api.Direction.UP;
 
+import api.ActorState;
 import api.Descriptor;
 import api.Direction;
 import api.Location;
@@ -17,6 +18,11 @@ import api.Mode;
  */
 public class Pacman extends PacmanAndFriends
 {
+  /**
+   * Directions indexed by ordinal, used when restoring a saved state.
+   */
+  private static final Direction[] ALL_DIRECTIONS = Direction.values();
+  
   /**
    * Flag indicating that the player is in "turning" mode, that is, 
    * moving on a diagonal in a new direction of travel and simultaneously in the 
@@ -61,6 +67,12 @@ public class Pacman extends PacmanAndFriends
     return new Location((int) getRowExact(), (int) getColExact());
   }
   
+  @Override
+  public int getCurrentCell()
+  {
+    return Location.pack((int) getRowExact(), (int) getColExact());
+  }
+  
   @Override
   public Mode getMode()
   {
@@ -84,6 +96,37 @@ public class Pacman extends PacmanAndFriends
   {
     //does nothing
   }
+  
+  /**
+   * Saves the turning state along with the position.
+   */
+  @Override
+  public void saveState(ActorState state)
+  {
+    super.saveState(state);
+    state.setExtra(0, turning ? 1 : 0);
+    state.setExtra(1, previousDirection == null ? -1 : previousDirection.ordinal());
+    state.setExtra(2, Double.doubleToRawLongBits(turnTarget));
+  }
+  
+  @Override
+  public void restoreState(ActorState state)
+  {
+    super.restoreState(state);
+    turning = state.getExtra(0) != 0;
+    previousDirection = state.getExtra(1) < 0 ? null : ALL_DIRECTIONS[(int) state.getExtra(1)];
+    turnTarget = Double.longBitsToDouble(state.getExtra(2));
+  }
+
+  /**
+   * Returns no frames while turning, since update() then also moves
+   * along the previous direction.
+   */
+  @Override
+  public int framesUntilEvent(int limit)
+  {
+    return turning ? 0 : super.framesUntilEvent(limit);
+  }
 
   /**
    * Attempts to set the direction to the given new direction.  This may occur
@@ -183,7 +226,24 @@ public class Pacman extends PacmanAndFriends
     }
 
 
-    if (diff >= 0 && diff < tolerance && !getMaze().isWall(newRowNum, newColNum))
+    // the turn happens in the cell we are in or are about to enter, so check
+    // that cell's move mask; a turn can't start off the edge of the grid
+    int turnRowNum = newRowNum;
+    int turnColNum = newColNum;
+    if (newDir == LEFT || newDir == RIGHT)
+    {
+      turnColNum = colNum;
+    }
+    else
+    {
+      turnRowNum = rowNum;
+    }
+    if (turnColNum < 0 || turnColNum >= getMaze().getNumColumns())
+    {
+      return;
+    }
+
+    if (diff >= 0 && diff < tolerance && getMaze().canMove(turnRowNum, turnColNum, newDir))
     {
       // after all that, we can actually decide to turn!
       setDirection(newDir);
@@ -220,6 +280,11 @@ public class Pacman extends PacmanAndFriends
     {
       return;
     }
+    if (isFixedPoint())
+    {
+      updateFixed();
+      return;
+    }
     
     // if turning, may have to continue moving along the previous direction first.
     // do this first before the forward motion, so we don't mistakenly think we're
@@ -248,6 +313,11 @@ public class Pacman extends PacmanAndFriends
         if (curColExact - increment - 0.5 < 0)
         {
           curColExact = getMaze().getNumColumns() + (curColExact - increment - 0.5);
+          if (curColExact >= getMaze().getNumColumns())
+          {
+            // a tiny negative offset rounds to the right edge itself
+            curColExact = Math.nextDown((double) getMaze().getNumColumns());
+          }
         }
         else
         {
@@ -255,7 +325,7 @@ public class Pacman extends PacmanAndFriends
           // at the center of current cell.  This only applies when
           // 'diff' is positive but small enough that we can't move a full
           // increment
-          if (diff > -getERR() && diff < increment && getMaze().isWall(rowNum, colNum - 1))
+          if (diff > -getERR() && diff < increment && !getMaze().canMove(rowNum, colNum, LEFT))
           {
             increment = diff;
           }
@@ -271,7 +341,7 @@ public class Pacman extends PacmanAndFriends
         }
         else
         {
-          if (diff > -getERR() && diff < increment && getMaze().isWall(rowNum, colNum + 1))
+          if (diff > -getERR() && diff < increment && !getMaze().canMove(rowNum, colNum, RIGHT))
           {
             increment = diff;
           }
@@ -280,7 +350,7 @@ public class Pacman extends PacmanAndFriends
         break;  
         
       case UP:
-        if (diff > -getERR() && diff < increment && getMaze().isWall(rowNum - 1, colNum))
+        if (diff > -getERR() && diff < increment && !getMaze().canMove(rowNum, colNum, UP))
         {
           increment = diff;
         }
@@ -288,7 +358,7 @@ public class Pacman extends PacmanAndFriends
         break;
         
       case DOWN:
-        if (diff > -getERR() && diff < increment && getMaze().isWall(rowNum + 1, colNum))
+        if (diff > -getERR() && diff < increment && !getMaze().canMove(rowNum, colNum, DOWN))
         {
           increment = diff;
         }
@@ -301,6 +371,115 @@ public class Pacman extends PacmanAndFriends
     setColExact(curColExact);
   }
 
+  /**
+   * Fixed-point version of update(), with the same rules on integer
+   * positions in units of 1/256 of a cell.  Since positions are exact,
+   * the error margin used with doubles is not needed: the player is at
+   * a centerline exactly when the distance to it is zero.
+   */
+  private void updateFixed()
+  {
+    if (turning)
+    {
+      handleTurnFixed();
+    }
+    
+    int increment = getIncrementFixed();
+    int row = getRowFixed();
+    int col = getColFixed();
+    int rowNum = row >> FIXED_SHIFT;
+    int colNum = col >> FIXED_SHIFT;
+    int width = getMaze().getNumColumns() << FIXED_SHIFT;
+    int diff = distanceToCenterFixed();
+
+    switch(getCurrentDirection())
+    {
+      case LEFT:
+        if (col - increment - FIXED_HALF < 0)
+        {
+          col = width + (col - increment - FIXED_HALF);
+        }
+        else
+        {
+          if (diff >= 0 && diff < increment && !getMaze().canMove(rowNum, colNum, LEFT))
+          {
+            increment = diff;
+          }
+          col -= increment;
+        }
+        break;
+        
+      case RIGHT:
+        if (col + increment + FIXED_HALF >= width)
+        {
+          col = col + increment + FIXED_HALF - width;
+        }
+        else
+        {
+          if (diff >= 0 && diff < increment && !getMaze().canMove(rowNum, colNum, RIGHT))
+          {
+            increment = diff;
+          }
+          col += increment;
+        }
+        break;
+        
+      case UP:
+        if (diff >= 0 && diff < increment && !getMaze().canMove(rowNum, colNum, UP))
+        {
+          increment = diff;
+        }
+        row -= increment;
+        break;
+        
+      case DOWN:
+        if (diff >= 0 && diff < increment && !getMaze().canMove(rowNum, colNum, DOWN))
+        {
+          increment = diff;
+        }
+        row += increment;
+        break;
+    }
+    
+    setRowFixed(row);
+    setColFixed(col);
+  }
+
+  /**
+   * Fixed-point version of handleTurn().
+   */
+  private void handleTurnFixed()
+  {
+    int increment = getIncrementFixed();
+    int row = getRowFixed();
+    int col = getColFixed();
+    int target = toFixed(turnTarget);
+    
+    if (previousDirection == UP || previousDirection == DOWN)
+    {
+      int distanceToGo = previousDirection == UP ? row - target : target - row;
+      if (increment >= distanceToGo)
+      {
+        increment = distanceToGo;
+        turning = false;
+      }
+      row += previousDirection == UP ? -increment : increment;
+    }
+    else if (previousDirection == LEFT || previousDirection == RIGHT)
+    {
+      int distanceToGo = previousDirection == LEFT ? col - target : target - col;
+      if (increment >= distanceToGo)
+      {
+        increment = distanceToGo;
+        turning = false;
+      }
+      col += previousDirection == LEFT ? -increment : increment;
+    }
+    
+    setRowFixed(row);
+    setColFixed(col);
+  }
+
   /**
    * When in "turning" mode, we need to update along the previous
    * direction of travel until lined up with the new row or column.
@@ -4,6 +4,7 @@
 package hw4;
 
 import api.Actor;
+import api.ActorState;
 import api.Direction;
 import api.Location;
 import api.MazeMap;
@@ -17,6 +18,34 @@ public abstract class PacmanAndFriends implements Actor
 	 */
 	private static final double ERR = .001;
 	
+	/**
+	 * Distance kept from every boundary when working out how many frames
+	 * can be glided over, so that rounding in the repeated additions can
+	 * never carry the actor across one sooner than predicted.
+	 */
+	private static final double GLIDE_MARGIN = 1e-9;
+	
+	/**
+	 * Number of fractional bits in a fixed-point position, so positions
+	 * are kept in units of 1/256 of a cell.
+	 */
+	protected static final int FIXED_SHIFT = 8;
+	
+	/**
+	 * One cell, in fixed-point units.
+	 */
+	protected static final int FIXED_ONE = 1 << FIXED_SHIFT;
+	
+	/**
+	 * Half a cell, the offset of a cell's centerline, in fixed-point units.
+	 */
+	protected static final int FIXED_HALF = FIXED_ONE / 2;
+	
+	/**
+	 * Size of a fixed-point unit, in cells.
+	 */
+	private static final double FIXED_UNIT = 1.0 / FIXED_ONE;
+	
 	/**
 	 * Maze configuration.
 	 */
@@ -27,6 +56,11 @@ public abstract class PacmanAndFriends implements Actor
 	 */
 	private Location home;
 	
+	/**
+	 * Initial location on reset(), packed.
+	 */
+	private int homeCell;
+	
 	/**
 	 * Initial direction on reset().
 	 */
@@ -59,6 +93,28 @@ public abstract class PacmanAndFriends implements Actor
 	 */
 	private double colExact;
 	
+	/**
+	 * Whether the position and speed are kept in fixed point, in which
+	 * case rowFixed, colFixed and incrementFixed hold them, instead of 
+	 * rowExact, colExact and currentIncrement
+	 */
+	private boolean fixedPoint;
+	
+	/**
+	 * Row coordinate in fixed-point mode, in units of 1/256 of a cell
+	 */
+	private int rowFixed;
+	
+	/**
+	 * Column coordinate in fixed-point mode, in units of 1/256 of a cell
+	 */
+	private int colFixed;
+	
+	/**
+	 * Current speed in fixed-point mode, in units of 1/256 of a cell
+	 */
+	private int incrementFixed;
+	
 	/**
 	 * Position of row used in distanceToCenter()
 	 */
@@ -95,6 +151,11 @@ public abstract class PacmanAndFriends implements Actor
 		return home;
 	}
 	
+	public int getHomeCell()
+	{
+		return homeCell;
+	}
+	
 	public Direction getHomeDirection()
 	{
 		return homeDirection;
@@ -112,17 +173,57 @@ public abstract class PacmanAndFriends implements Actor
 	
 	public double getCurrentIncrement()
 	{
-		return currentIncrement;
+		return fixedPoint ? incrementFixed * FIXED_UNIT : currentIncrement;
 	}
 	
 	public double getRowExact()
 	{
-		return rowExact;
+		return fixedPoint ? rowFixed * FIXED_UNIT : rowExact;
 	}
 	
 	public double getColExact()
 	{
-		return colExact;
+		return fixedPoint ? colFixed * FIXED_UNIT : colExact;
+	}
+	
+	/**
+	 * 
+	 * @return
+	 * 		True if the position is kept in fixed point
+	 */
+	public boolean isFixedPoint()
+	{
+		return fixedPoint;
+	}
+	
+	/**
+	 * Accessor for the row coordinate in fixed-point mode
+	 * @return
+	 * 		Row coordinate, in units of 1/256 of a cell
+	 */
+	protected int getRowFixed()
+	{
+		return rowFixed;
+	}
+	
+	/**
+	 * Accessor for the column coordinate in fixed-point mode
+	 * @return
+	 * 		Column coordinate, in units of 1/256 of a cell
+	 */
+	protected int getColFixed()
+	{
+		return colFixed;
+	}
+	
+	/**
+	 * Accessor for the current speed in fixed-point mode
+	 * @return
+	 * 		Speed, in units of 1/256 of a cell per frame
+	 */
+	protected int getIncrementFixed()
+	{
+		return incrementFixed;
 	}
 	
 	
@@ -145,6 +246,7 @@ public abstract class PacmanAndFriends implements Actor
 	protected void setHome(Location h)
 	{
 		home = h;
+		homeCell = h.pack();
 	}
 	
 	/**
@@ -180,21 +282,333 @@ public abstract class PacmanAndFriends implements Actor
 	protected void setCurrentIncrement(double i)
 	{
 		currentIncrement = i;
+		
+		//A moving actor never rounds down to standing still
+		incrementFixed = i > 0 ? Math.max(1, toFixed(i)) : toFixed(i);
 	}
 	
 	public void setRowExact(double r)
 	{
-		rowExact = r;
+		if(fixedPoint)
+		{
+			rowFixed = toFixed(r);
+		}
+		else
+		{
+			rowExact = r;
+		}
 	}
 	
 	public void setColExact(double c)
 	{
-		colExact = c;
+		if(fixedPoint)
+		{
+			colFixed = toFixed(c);
+		}
+		else
+		{
+			colExact = c;
+		}
+	}
+	
+	/**
+	 * Sets the row coordinate in fixed-point mode
+	 * @param r
+	 * 		Row coordinate, in units of 1/256 of a cell
+	 */
+	protected void setRowFixed(int r)
+	{
+		rowFixed = r;
+	}
+	
+	/**
+	 * Sets the column coordinate in fixed-point mode
+	 * @param c
+	 * 		Column coordinate, in units of 1/256 of a cell
+	 */
+	protected void setColFixed(int c)
+	{
+		colFixed = c;
+	}
+	
+	/**
+	 * Sets whether the position and speed are kept as integers in units
+	 * of 1/256 of a cell instead of as doubles.  In fixed point, update()
+	 * runs on integer arithmetic and every position is exactly 
+	 * representable, so centerlines are hit exactly and runs are the same
+	 * bit for bit however they are computed.  The current position and 
+	 * speed are rounded to the nearest unit when switching to fixed point,
+	 * so the mode should be chosen before the first frame
+	 * @param fixed
+	 * 		True for fixed point, false for doubles
+	 */
+	public void setFixedPoint(boolean fixed)
+	{
+		if(fixed == fixedPoint)
+		{
+			return;
+		}
+		if(fixed)
+		{
+			rowFixed = toFixed(rowExact);
+			colFixed = toFixed(colExact);
+		}
+		else
+		{
+			rowExact = rowFixed * FIXED_UNIT;
+			colExact = colFixed * FIXED_UNIT;
+			currentIncrement = incrementFixed * FIXED_UNIT;
+		}
+		fixedPoint = fixed;
 	}
 	
 	//Methods
+	public void saveState(ActorState state)
+	{
+		state.setRowExact(getRowExact());
+		state.setColExact(getColExact());
+		state.setCurrentIncrement(getCurrentIncrement());
+		state.setDirection(currentDirection);
+		state.setMode(getMode());
+	}
+	
+	public void restoreState(ActorState state)
+	{
+		setRowExact(state.getRowExact());
+		setColExact(state.getColExact());
+		setCurrentIncrement(state.getCurrentIncrement());
+		currentDirection = state.getDirection();
+	}
+	
+	/**
+	 * Returns the number of upcoming frames, up to the given limit, in
+	 * which update() would do nothing but add the current increment to the
+	 * position: the actor stays in its cell, does not reach the center of
+	 * a cell it cannot leave, and does not wrap through the tunnel.  An
+	 * actor with no direction, or resting against a wall at the center of
+	 * its cell, does not move at all, so any number of frames qualify.
+	 * Those frames can be skipped with glide().  Subclasses whose update()
+	 * does more than move return fewer.
+	 * @param limit
+	 * 		Largest number of frames of interest
+	 * @return
+	 * 		Number of frames that can be glided over, from 0 to limit
+	 */
+	public int framesUntilEvent(int limit)
+	{
+		Direction dir = getCurrentDirection();
+		if(dir == null || isResting())
+		{
+			return limit;
+		}
+		if(fixedPoint)
+		{
+			return framesUntilEventFixed(dir, limit);
+		}
+		
+		int row = (int) rowExact;
+		int col = (int) colExact;
+		double room;
+		switch(dir)
+		{
+			case LEFT:
+				if(col == 0)
+				{
+					return 0;
+				}
+				room = colExact - col;
+				break;
+			case RIGHT:
+				if(col == maze.getNumColumns() - 1)
+				{
+					return 0;
+				}
+				room = col + 1 - colExact;
+				break;
+			case UP:
+				room = rowExact - row;
+				break;
+			default:
+				room = row + 1 - rowExact;
+				break;
+		}
+		
+		//Short of a wall, update() stops at the center instead
+		if(!maze.canMove(row, col, dir))
+		{
+			double diff = distanceToCenter();
+			if(diff > -ERR - GLIDE_MARGIN)
+			{
+				room = Math.min(room, diff);
+			}
+		}
+		
+		double frames = (room - GLIDE_MARGIN) / currentIncrement;
+		if(frames <= 0)
+		{
+			return 0;
+		}
+		return frames >= limit ? limit : (int) frames;
+	}
+	
+	/**
+	 * Fixed-point version of framesUntilEvent(), where the room left in
+	 * the cell is exact, so no margin is needed
+	 * @param dir
+	 * 		Current direction
+	 * @param limit
+	 * 		Largest number of frames of interest
+	 * @return
+	 * 		Number of frames that can be glided over, from 0 to limit
+	 */
+	private int framesUntilEventFixed(Direction dir, int limit)
+	{
+		int row = rowFixed >> FIXED_SHIFT;
+		int col = colFixed >> FIXED_SHIFT;
+		int room;
+		switch(dir)
+		{
+			case LEFT:
+				if(col == 0)
+				{
+					return 0;
+				}
+				room = colFixed - (col << FIXED_SHIFT);
+				break;
+			case RIGHT:
+				if(col == maze.getNumColumns() - 1)
+				{
+					return 0;
+				}
+				//Reaching the next cell's edge exactly already puts the 
+				//actor in it
+				room = ((col + 1) << FIXED_SHIFT) - colFixed - 1;
+				break;
+			case UP:
+				room = rowFixed - (row << FIXED_SHIFT);
+				break;
+			default:
+				room = ((row + 1) << FIXED_SHIFT) - rowFixed - 1;
+				break;
+		}
+		
+		if(!maze.canMove(row, col, dir))
+		{
+			int diff = distanceToCenterFixed();
+			if(diff >= 0)
+			{
+				room = Math.min(room, diff);
+			}
+		}
+		
+		if(incrementFixed <= 0)
+		{
+			return limit;
+		}
+		return Math.min(limit, room / incrementFixed);
+	}
+	
+	/**
+	 * Advances the position by the given number of frames, each adding the
+	 * current increment in the direction of travel exactly as update()
+	 * does.  The number of frames must be at most framesUntilEvent() of
+	 * them, so that update() would have done nothing else.
+	 * @param frames
+	 * 		Number of frames to advance
+	 */
+	public void glide(int frames)
+	{
+		Direction dir = getCurrentDirection();
+		if(dir == null || isResting())
+		{
+			return;
+		}
+		
+		if(fixedPoint)
+		{
+			//Integer steps add up exactly, so they can be multiplied out
+			int distance = frames * incrementFixed;
+			switch(dir)
+			{
+				case LEFT:
+					colFixed -= distance;
+					break;
+				case RIGHT:
+					colFixed += distance;
+					break;
+				case UP:
+					rowFixed -= distance;
+					break;
+				default:
+					rowFixed += distance;
+					break;
+			}
+			return;
+		}
+		
+		double increment = currentIncrement;
+		switch(dir)
+		{
+			case LEFT:
+				for(int i = 0; i < frames; i++)
+				{
+					colExact -= increment;
+				}
+				break;
+			case RIGHT:
+				for(int i = 0; i < frames; i++)
+				{
+					colExact += increment;
+				}
+				break;
+			case UP:
+				for(int i = 0; i < frames; i++)
+				{
+					rowExact -= increment;
+				}
+				break;
+			default:
+				for(int i = 0; i < frames; i++)
+				{
+					rowExact += increment;
+				}
+				break;
+		}
+	}
+	
+	/**
+	 * Determines whether the actor is exactly at the center of its cell
+	 * facing a wall, where update() moves it by nothing
+	 * @return
+	 * 		True if the actor is resting against a wall
+	 */
+	private boolean isResting()
+	{
+		if(fixedPoint)
+		{
+			return !maze.canMove(rowFixed >> FIXED_SHIFT, colFixed >> FIXED_SHIFT, getCurrentDirection()) 
+					&& distanceToCenterFixed() == 0;
+		}
+		return !maze.canMove((int) rowExact, (int) colExact, getCurrentDirection()) && distanceToCenter() == 0;
+	}
+	
+	/**
+	 * Converts a coordinate or speed in cells to the nearest number of
+	 * fixed-point units
+	 * @param x
+	 * 		Value in cells
+	 * @return
+	 * 		Value in units of 1/256 of a cell
+	 */
+	protected static int toFixed(double x)
+	{
+		return (int) Math.round(x * FIXED_ONE);
+	}
+	
 	public abstract Location getCurrentLocation();
 	
+	public abstract int getCurrentCell();
+	
 	/**
 	 * Determines the difference between current position and center of 
 	 * current cell, in the direction of travel.
@@ -217,4 +631,24 @@ public abstract class PacmanAndFriends implements Actor
 	    }  
 		return 0;
 	}	
+	
+	/**
+	 * Fixed-point version of distanceToCenter(), in units of 1/256 of
+	 * a cell.
+	 */
+	protected int distanceToCenterFixed()
+	{
+		switch (getCurrentDirection())
+		{
+			case LEFT:
+				return (colFixed & (FIXED_ONE - 1)) - FIXED_HALF;
+			case RIGHT:
+				return FIXED_HALF - (colFixed & (FIXED_ONE - 1));
+			case UP:
+				return (rowFixed & (FIXED_ONE - 1)) - FIXED_HALF;
+			case DOWN:
+				return FIXED_HALF - (rowFixed & (FIXED_ONE - 1));
+		}
+		return 0;
+	}
 }
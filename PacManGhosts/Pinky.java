@@ -7,7 +7,7 @@ import static api.Direction.DOWN;
 import static api.Direction.LEFT;
 import static api.Direction.UP;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import api.Descriptor;
 import api.Direction;
@@ -32,7 +32,7 @@ public class Pinky extends Ghost
 	 * 		Pseudorandom generator used in frightened mode 
 	 */
 	public Pinky(MazeMap maze, Location home, double baseSpeed, 
-			Direction homeDirection, Location scatterTarget, Random rand)
+			Direction homeDirection, Location scatterTarget, RandomGenerator rand)
 	{
 		super(maze, home, baseSpeed, homeDirection, scatterTarget, rand);
 	}
@@ -40,21 +40,24 @@ public class Pinky extends Ghost
 	@Override
 	protected void calcTargetCell(Descriptor desc)
 	{
+		int playerRow = desc.getPlayerRow();
+		int playerCol = desc.getPlayerCol();
+		
 		if(desc.getPlayerDirection() == UP)
 		{
-			setTargetCell(new Location(desc.getPlayerLocation().row() - 4, desc.getPlayerLocation().col()));
+			setTargetCell(playerRow - 4, playerCol);
 		}
 		else if(desc.getPlayerDirection() == LEFT)
 		{
-			setTargetCell(new Location(desc.getPlayerLocation().row(), desc.getPlayerLocation().col() - 4));
+			setTargetCell(playerRow, playerCol - 4);
 		}
 		else if(desc.getPlayerDirection() ==  DOWN)
 		{
-			setTargetCell(new Location(desc.getPlayerLocation().row() + 4, desc.getPlayerLocation().col()));
+			setTargetCell(playerRow + 4, playerCol);
 		}
 		else
 		{
-			setTargetCell(new Location(desc.getPlayerLocation().row(), desc.getPlayerLocation().col() + 4));
+			setTargetCell(playerRow, playerCol + 4);
 		}
 	}
 }
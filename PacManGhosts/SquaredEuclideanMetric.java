@@ -0,0 +1,22 @@
+package hw4;
+
+/**
+ * Straight-line distance, squared so it can be computed exactly in integers.
+ * Orders cells the same way as the usual Euclidean distance.
+ */
+public class SquaredEuclideanMetric implements DistanceMetric
+{
+	@Override
+	public int distance(int fromRow, int fromCol, int toRow, int toCol)
+	{
+		int rowDiff = fromRow - toRow;
+		int colDiff = fromCol - toCol;
+		return rowDiff * rowDiff + colDiff * colDiff;
+	}
+	
+	@Override
+	public int radius(int cells)
+	{
+		return cells * cells;
+	}
+}
@@ -41,6 +41,15 @@ public interface Actor
    */
   Location getCurrentLocation();
 
+  /**
+   * Returns the cell currently occupied by the actor's center, in the
+   * packed form described by Location.pack().  This is always equal to
+   * getCurrentLocation().pack(), but does not allocate.
+   * @return
+   *   current cell, packed
+   */
+  int getCurrentCell();
+
   /**
    * Returns the actor's current direction.
    * @return
@@ -64,6 +73,14 @@ public interface Actor
    */
   Location getHomeLocation();
 
+  /**
+   * Returns the actor's initial cell in the packed form described by
+   * Location.pack().  This is always equal to getHomeLocation().pack().
+   * @return
+   *   actor's initial cell, packed
+   */
+  int getHomeCell();
+
   /**
    * Returns the actor's current mode.  This value is always null
    * for the player.
@@ -85,6 +102,22 @@ public interface Actor
    */
   void reset();
 
+  /**
+   * Copies everything about this actor that can change from frame to
+   * frame into the given holder.
+   * @param state
+   *   holder to fill in
+   */
+  void saveState(ActorState state);
+
+  /**
+   * Restores state previously saved by saveState() on this actor or on
+   * one of the same kind in the same maze.
+   * @param state
+   *   holder filled in by saveState()
+   */
+  void restoreState(ActorState state);
+
   /**
    * Sets the column (x) coordinate of this actor's center within the maze grid,
    * in units of cells.
@@ -0,0 +1,149 @@
+package api;
+
+/**
+ * Mutable holder for the dynamic state of one actor, filled in by
+ * Actor.saveState() and read back by Actor.restoreState().  Besides the
+ * position, direction, speed and mode that every actor has, there are a
+ * few extra slots that implementations may use for any other state they
+ * need to carry between frames, such as a pending turn or the state of a
+ * random generator.  An ActorState is only meaningful to the kind of actor
+ * that filled it in.
+ */
+public final class ActorState
+{
+  /**
+   * Number of implementation-specific slots.
+   */
+  public static final int EXTRA_SLOTS = 4;
+
+  private double rowExact;
+  private double colExact;
+  private double currentIncrement;
+  private Direction direction;
+  private Mode mode;
+  private final long[] extra = new long[EXTRA_SLOTS];
+
+  /**
+   * Returns the saved row coordinate.
+   * @return
+   *   exact row coordinate
+   */
+  public double getRowExact()
+  {
+    return rowExact;
+  }
+
+  /**
+   * Sets the saved row coordinate.
+   * @param r
+   *   exact row coordinate
+   */
+  public void setRowExact(double r)
+  {
+    rowExact = r;
+  }
+
+  /**
+   * Returns the saved column coordinate.
+   * @return
+   *   exact column coordinate
+   */
+  public double getColExact()
+  {
+    return colExact;
+  }
+
+  /**
+   * Sets the saved column coordinate.
+   * @param c
+   *   exact column coordinate
+   */
+  public void setColExact(double c)
+  {
+    colExact = c;
+  }
+
+  /**
+   * Returns the saved speed.
+   * @return
+   *   current increment
+   */
+  public double getCurrentIncrement()
+  {
+    return currentIncrement;
+  }
+
+  /**
+   * Sets the saved speed.
+   * @param increment
+   *   current increment
+   */
+  public void setCurrentIncrement(double increment)
+  {
+    currentIncrement = increment;
+  }
+
+  /**
+   * Returns the saved direction.
+   * @return
+   *   current direction, possibly null
+   */
+  public Direction getDirection()
+  {
+    return direction;
+  }
+
+  /**
+   * Sets the saved direction.
+   * @param dir
+   *   current direction
+   */
+  public void setDirection(Direction dir)
+  {
+    direction = dir;
+  }
+
+  /**
+   * Returns the saved mode.
+   * @return
+   *   current mode, possibly null
+   */
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * Sets the saved mode.
+   * @param m
+   *   current mode
+   */
+  public void setMode(Mode m)
+  {
+    mode = m;
+  }
+
+  /**
+   * Returns the value in an implementation-specific slot.
+   * @param slot
+   *   index less than EXTRA_SLOTS
+   * @return
+   *   saved value
+   */
+  public long getExtra(int slot)
+  {
+    return extra[slot];
+  }
+
+  /**
+   * Sets the value in an implementation-specific slot.
+   * @param slot
+   *   index less than EXTRA_SLOTS
+   * @param value
+   *   value to save
+   */
+  public void setExtra(int slot, long value)
+  {
+    extra[slot] = value;
+  }
+}
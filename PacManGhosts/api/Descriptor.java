@@ -1,37 +1,159 @@
 package api;
 
 /**
- * Data container for aspects of the Pacman game state that are
- * relevant for enemy move calculation.
+ * View of the Pacman game state that is relevant for enemy move 
+ * calculation.  A game reuses a single descriptor, refreshing it at the
+ * start of each frame before anyone moves, so every enemy sees the same
+ * world during a frame no matter in what order the enemies are updated.
+ * The frame number identifies the refresh, so an enemy can cache values
+ * derived from the descriptor and recompute them only when the frame
+ * changes.  Enemies should not hold on to the descriptor itself between
+ * frames.
+ * <p>
+ * Besides the player, the descriptor records the cell, direction and
+ * mode of every enemy, indexed as in PacmanGame.getEnemies(), so that any
+ * enemy can read the state of any other without allocation.  Locations 
+ * are available both as Location objects and, without allocation, as 
+ * cells packed by Location.pack().
  */
 public class Descriptor
 {
+  private static final Direction[] ALL_DIRECTIONS = Direction.values();
+  private static final Mode[] ALL_MODES = Mode.values();
+  
+  /**
+   * Frame at which this descriptor was last refreshed.
+   */
+  private int frame;
+  
+  /**
+   * Current player cell, packed.
+   */
+  private int playerCell;
+  
   /**
-   * Current player location.
+   * Current player row and column.
    */
-  private final Location playerLocation;
+  private int playerRow;
+  private int playerCol;
   
   /**
    * Current player direction.
    */
-  private final Direction playerDirection;
+  private Direction playerDirection;
+  
+  /**
+   * Number of enemies recorded.
+   */
+  private int enemyCount;
+  
+  /**
+   * Current cell of each enemy, packed.
+   */
+  private int[] enemyCells;
   
   /**
-   * Current location of the 0th enemy ("Blinky").
+   * Ordinal of the current direction of each enemy, or -1 if none.
    */
-  private final Location blinkyLocation;
+  private byte[] enemyDirections;
+  
+  /**
+   * Ordinal of the current mode of each enemy, or -1 if none.
+   */
+  private byte[] enemyModes;
+
+  /**
+   * Flow field toward the player's cell, or null if none.
+   */
+  private FlowField chaseField;
 
   /**
-   * Constructs a descriptor with the given parameters.
+   * Constructs a descriptor with the given parameters.  The 0th enemy,
+   * if any, has no direction or mode.
    * @param playerLocation
    * @param playerDirection
    * @param blinkyLocation
    */
   public Descriptor(Location playerLocation, Direction playerDirection, Location blinkyLocation)
   {
-    this.playerLocation = playerLocation;
-    this.playerDirection = playerDirection;
-    this.blinkyLocation = blinkyLocation;
+    setPlayer(playerLocation.pack(), playerDirection);
+    enemyCount = blinkyLocation != null ? 1 : 0;
+    enemyCells = new int[] {blinkyLocation != null ? blinkyLocation.pack() : 0};
+    enemyDirections = new byte[] {-1};
+    enemyModes = new byte[] {-1};
+  }
+  
+  /**
+   * Constructs a descriptor with room for the given number of enemies,
+   * to be filled in later by the game.
+   */
+  Descriptor(int numEnemies)
+  {
+    enemyCells = new int[numEnemies];
+    enemyDirections = new byte[numEnemies];
+    enemyModes = new byte[numEnemies];
+  }
+  
+  /**
+   * Refreshes this descriptor from the current state of the actors.
+   * @param frame
+   *   current frame number
+   * @param player
+   *   the player
+   * @param enemies
+   *   all enemies
+   */
+  void update(int frame, Actor player, Actor[] enemies)
+  {
+    this.frame = frame;
+    setPlayer(player.getCurrentCell(), player.getCurrentDirection());
+    if (chaseField != null)
+    {
+      chaseField.setTarget(playerRow, playerCol);
+    }
+    if (enemies.length > enemyCells.length)
+    {
+      enemyCells = new int[enemies.length];
+      enemyDirections = new byte[enemies.length];
+      enemyModes = new byte[enemies.length];
+    }
+    enemyCount = enemies.length;
+    for (int i = 0; i < enemyCount; ++i)
+    {
+      Actor a = enemies[i];
+      Direction dir = a.getCurrentDirection();
+      Mode mode = a.getMode();
+      enemyCells[i] = a.getCurrentCell();
+      enemyDirections[i] = (byte) (dir == null ? -1 : dir.ordinal());
+      enemyModes[i] = (byte) (mode == null ? -1 : mode.ordinal());
+    }
+  }
+  
+  /**
+   * Sets the flow field that update() keeps targeted at the player.
+   */
+  void setChaseField(FlowField field)
+  {
+    chaseField = field;
+  }
+  
+  private void setPlayer(int cell, Direction dir)
+  {
+    playerCell = cell;
+    playerRow = Location.packedRow(cell);
+    playerCol = Location.packedCol(cell);
+    playerDirection = dir;
+  }
+  
+  /**
+   * Returns the frame number at which this descriptor was last refreshed,
+   * the same as PacmanGame.getFrameCount() during that frame.
+   * @return
+   *   frame number
+   */
+  public int getFrame()
+  {
+    return frame;
   }
   
   /**
@@ -41,7 +163,37 @@ public class Descriptor
    */
   public Location getPlayerLocation()
   {
-    return playerLocation;
+    return Location.unpack(playerCell);
+  }
+  
+  /**
+   * Returns the player cell, packed.
+   * @return
+   *   packed player cell
+   */
+  public int getPlayerCell()
+  {
+    return playerCell;
+  }
+  
+  /**
+   * Returns the row of the player cell.
+   * @return
+   *   player row
+   */
+  public int getPlayerRow()
+  {
+    return playerRow;
+  }
+  
+  /**
+   * Returns the column of the player cell.
+   * @return
+   *   player column
+   */
+  public int getPlayerCol()
+  {
+    return playerCol;
   }
   
   /**
@@ -54,14 +206,94 @@ public class Descriptor
     return playerDirection;
   }
   
+  /**
+   * Returns the number of enemies.
+   * @return
+   *   number of enemies
+   */
+  public int getEnemyCount()
+  {
+    return enemyCount;
+  }
+  
+  /**
+   * Returns the cell of the given enemy, packed.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   packed cell of the enemy
+   */
+  public int getEnemyCell(int i)
+  {
+    checkEnemy(i);
+    return enemyCells[i];
+  }
+  
+  /**
+   * Returns the direction of the given enemy.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   direction of the enemy, possibly null
+   */
+  public Direction getEnemyDirection(int i)
+  {
+    checkEnemy(i);
+    return enemyDirections[i] < 0 ? null : ALL_DIRECTIONS[enemyDirections[i]];
+  }
+  
+  /**
+   * Returns the mode of the given enemy.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   mode of the enemy, possibly null
+   */
+  public Mode getEnemyMode(int i)
+  {
+    checkEnemy(i);
+    return enemyModes[i] < 0 ? null : ALL_MODES[enemyModes[i]];
+  }
+  
   /**
    * Returns the location of the 0th ghost ("Blinky").
    * @return
-   *   blinky's location
+   *   blinky's location, or null if there are no ghosts
    */
   public Location getBlinkyLocation()
   {
-    return blinkyLocation;
+    return enemyCount > 0 ? Location.unpack(enemyCells[0]) : null;
+  }
+
+  /**
+   * Returns the cell of the 0th ghost ("Blinky"), packed.  The result
+   * is meaningless if there are no ghosts.
+   * @return
+   *   blinky's packed cell
+   */
+  public int getBlinkyCell()
+  {
+    return enemyCount > 0 ? enemyCells[0] : 0;
   }
 
+  /**
+   * Returns a flow field toward the player's current cell, shared by all
+   * enemies, or null if the game does not provide one.  The field is
+   * rebuilt at most once each time the player enters a new cell, however
+   * many enemies read it.
+   * @return
+   *   flow field toward the player, or null
+   */
+  public FlowField getChaseField()
+  {
+    return chaseField;
+  }
+  
+  private void checkEnemy(int i)
+  {
+    if (i < 0 || i >= enemyCount)
+    {
+      throw new IndexOutOfBoundsException("No enemy " + i);
+    }
+  }
 }
@@ -0,0 +1,175 @@
+package api;
+
+/**
+ * Shortest-path distances from every open cell of a maze to a single
+ * target cell, together with the first move toward it.  Unlike the
+ * tables in MazeMap, which are built once per target and kept, a flow
+ * field is a single table for a target that keeps changing, such as the
+ * player's cell: setting a new target is free, and the table is rebuilt
+ * by one breadth-first search the next time it is queried.  Any number
+ * of enemies can then read their moves from the same table, so pursuit
+ * costs one search per change of target rather than one per decision.
+ * Paths take the tunnel wraparound on the left and right edges into
+ * account.
+ * <p>
+ * A game keeps a flow field toward the player's cell, available to the
+ * enemies through Descriptor.getChaseField().  Rebuilding does not
+ * allocate.
+ */
+public class FlowField
+{
+  /**
+   * Maze in which paths are found.
+   */
+  private final MazeMap maze;
+
+  /**
+   * Distance to the target for each open cell, or -1 if unreachable.
+   */
+  private final int[] distance;
+
+  /**
+   * Index into the maze's direction order of the first move toward the
+   * target for each open cell, or -1 if there is none.
+   */
+  private final byte[] nextHop;
+
+  /**
+   * Scratch space for the search.
+   */
+  private final int[] queue;
+
+  /**
+   * Target cell, packed, or -1 if none has been set.
+   */
+  private int targetCell = -1;
+
+  /**
+   * True if the target has changed since the table was built.
+   */
+  private boolean stale;
+
+  /**
+   * Number of times the table has been built.
+   */
+  private int searches;
+
+  /**
+   * Constructs a flow field for the given maze, with no target.
+   * @param maze
+   *   maze in which paths are found
+   */
+  public FlowField(MazeMap maze)
+  {
+    this.maze = maze;
+    int size = maze.getOpenCellCount();
+    distance = new int[size];
+    nextHop = new byte[size];
+    queue = new int[size];
+  }
+
+  /**
+   * Sets the target cell.  The table is rebuilt when next queried, and
+   * only if the target actually changed.
+   * @param row
+   *   target row
+   * @param col
+   *   target column
+   */
+  public void setTarget(int row, int col)
+  {
+    int cell = Location.pack(row, col);
+    if (cell != targetCell)
+    {
+      targetCell = cell;
+      stale = true;
+    }
+  }
+
+  /**
+   * Returns the target cell.
+   * @return
+   *   target cell, packed by Location.pack(), or -1 if none is set
+   */
+  public int getTargetCell()
+  {
+    return targetCell;
+  }
+
+  /**
+   * Returns the number of moves along a shortest path from the given cell
+   * to the target.  Returns -1 if the cell is outside the maze or is a
+   * wall, if the target is not an open cell, or if there is no path.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   distance to the target, or -1
+   */
+  public int getDistance(int row, int col)
+  {
+    int from = maze.getOpenIndex(row, col);
+    if (from < 0 || !refresh())
+    {
+      return -1;
+    }
+    return distance[from];
+  }
+
+  /**
+   * Returns the direction of the first move along a shortest path from
+   * the given cell to the target.  Returns null in the same cases as
+   * getDistance(), and if the cell is the target.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   direction of the first move, or null
+   */
+  public Direction getDirection(int row, int col)
+  {
+    int from = maze.getOpenIndex(row, col);
+    if (from < 0 || !refresh() || nextHop[from] < 0)
+    {
+      return null;
+    }
+    return MazeMap.directionAt(nextHop[from]);
+  }
+
+  /**
+   * Returns the number of times the table has been rebuilt, for
+   * measuring how often pursuit actually costs a search.
+   * @return
+   *   number of searches
+   */
+  public int getSearchCount()
+  {
+    return searches;
+  }
+
+  /**
+   * Rebuilds the table if the target has changed.  Returns false if the
+   * target is not an open cell.
+   */
+  private boolean refresh()
+  {
+    if (targetCell == -1)
+    {
+      return false;
+    }
+    int target = maze.getOpenIndex(Location.packedRow(targetCell), Location.packedCol(targetCell));
+    if (target < 0)
+    {
+      return false;
+    }
+    if (stale)
+    {
+      maze.search(target, distance, nextHop, queue);
+      searches += 1;
+      stale = false;
+    }
+    return true;
+  }
+}
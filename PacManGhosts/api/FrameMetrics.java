@@ -0,0 +1,89 @@
+package api;
+
+import java.io.PrintStream;
+
+/**
+ * Timing histograms for the phases of PacmanGame.updateAll(), one per
+ * FramePhase.  Set an instance on a game with PacmanGame.setMetrics() to
+ * start timing; the histograms can be read or printed from any thread
+ * while the game runs.
+ */
+public class FrameMetrics
+{
+  private static final FramePhase[] PHASES = FramePhase.values();
+  private static final double[] REPORT_PERCENTILES = {50, 90, 99, 99.9};
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+  /**
+   * Constructs metrics with empty histograms.
+   */
+  public FrameMetrics()
+  {
+    for (int i = 0; i < histograms.length; ++i)
+    {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Records the duration of one execution of a phase.
+   * @param phase
+   *   the phase
+   * @param nanos
+   *   duration in nanoseconds
+   */
+  public void record(FramePhase phase, long nanos)
+  {
+    histograms[phase.ordinal()].record(nanos);
+  }
+
+  /**
+   * Returns the histogram for the given phase.
+   * @param phase
+   *   the phase
+   * @return
+   *   histogram of durations in nanoseconds
+   */
+  public LatencyHistogram getHistogram(FramePhase phase)
+  {
+    return histograms[phase.ordinal()];
+  }
+
+  /**
+   * Discards all recorded durations.
+   */
+  public void reset()
+  {
+    for (LatencyHistogram h : histograms)
+    {
+      h.reset();
+    }
+  }
+
+  /**
+   * Prints a table with the count, mean, percentiles and maximum of each
+   * phase, in microseconds.
+   * @param out
+   *   destination for the table
+   */
+  public void printReport(PrintStream out)
+  {
+    out.printf("%-16s %10s %9s", "phase (us)", "count", "mean");
+    for (double p : REPORT_PERCENTILES)
+    {
+      out.printf(" %9s", "p" + (p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p)));
+    }
+    out.printf(" %9s%n", "max");
+    for (FramePhase phase : PHASES)
+    {
+      LatencyHistogram h = getHistogram(phase);
+      out.printf("%-16s %10d %9.2f", phase, h.getCount(), h.getMean() / 1e3);
+      for (double p : REPORT_PERCENTILES)
+      {
+        out.printf(" %9.2f", h.getPercentile(p) / 1e3);
+      }
+      out.printf(" %9.2f%n", h.getMax() / 1e3);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package api;
+
+/**
+ * Phases of PacmanGame.updateAll() that are timed separately when the
+ * game has FrameMetrics set.
+ */
+public enum FramePhase
+{
+  /**
+   * Counting down the timers that release inactive enemies.
+   */
+  INACTIVE_TIMERS,
+  
+  /**
+   * Counting down the frightened time or the global mode time, and
+   * switching enemy modes when either expires.
+   */
+  MODE_COUNTDOWN,
+  
+  /**
+   * Moving the player.
+   */
+  PLAYER_UPDATE,
+  
+  /**
+   * Moving the enemies and recording their new cells.
+   */
+  GHOST_UPDATES,
+  
+  /**
+   * Eating the pellet or energizer in the player's cell.
+   */
+  PELLETS,
+  
+  /**
+   * Checking for enemies in the player's cell.
+   */
+  COLLISIONS,
+  
+  /**
+   * Returning dead enemies that have reached home to inactive mode.
+   */
+  DEAD_GHOSTS,
+  
+  /**
+   * The whole call to updateAll(), including frames in which the player
+   * is dead and nothing moves.
+   */
+  FRAME
+}
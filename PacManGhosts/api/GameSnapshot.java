@@ -0,0 +1,174 @@
+package api;
+
+/**
+ * Copy of the complete dynamic state of a PacmanGame, taken by
+ * PacmanGame.snapshot() and applied by PacmanGame.restore().  The eaten
+ * pellets are not copied; the snapshot shares the game's pellet bitset,
+ * which the game copies the next time a pellet is eaten.  Taking a
+ * snapshot therefore costs time proportional to the number of actors
+ * rather than the number of cells.
+ * <p>
+ * A snapshot can be restored into the game it was taken from or into any
+ * other game built from the same maze with the same enemies, and can be
+ * restored any number of times.  A snapshot that is not passed back to
+ * snapshot(GameSnapshot) for reuse never changes, so it can be handed to
+ * other threads, for example to be drawn.
+ */
+public final class GameSnapshot
+{
+  final long mazeHash;
+  final int numCols;
+  long[] eaten;
+  int frameCount;
+  int score;
+  int lives;
+  int pelletCount;
+  int globalModeIndex;
+  int modeCountdown;
+  int frightenedCountdown;
+  boolean playerDead;
+  int deathCountdown;
+  int currentGhostPoints;
+  final int[] inactiveTimer;
+  final ActorState player = new ActorState();
+  final ActorState[] enemies;
+
+  /**
+   * Constructs an empty snapshot for a game with the given maze
+   * and number of enemies.
+   */
+  GameSnapshot(long mazeHash, int numCols, int numEnemies)
+  {
+    this.mazeHash = mazeHash;
+    this.numCols = numCols;
+    inactiveTimer = new int[numEnemies];
+    enemies = new ActorState[numEnemies];
+    for (int i = 0; i < numEnemies; ++i)
+    {
+      enemies[i] = new ActorState();
+    }
+  }
+
+  /**
+   * Returns the frame count at the time of the snapshot.
+   * @return
+   *   number of frames simulated
+   */
+  public int getFrameCount()
+  {
+    return frameCount;
+  }
+
+  /**
+   * Returns the score at the time of the snapshot.
+   * @return
+   *   score
+   */
+  public int getScore()
+  {
+    return score;
+  }
+
+  /**
+   * Returns the number of lives at the time of the snapshot.
+   * @return
+   *   number of lives
+   */
+  public int getLives()
+  {
+    return lives;
+  }
+
+  /**
+   * Returns the number of pellets eaten at the time of the snapshot.
+   * @return
+   *   number of pellets eaten
+   */
+  public int getPelletsEaten()
+  {
+    return pelletCount;
+  }
+
+  /**
+   * Returns true if the player was dead at the time of the snapshot.
+   * @return
+   *   true if the player was dead
+   */
+  public boolean isPlayerDead()
+  {
+    return playerDead;
+  }
+
+  /**
+   * Returns the frightened countdown at the time of the snapshot.
+   * @return
+   *   frames of frightened mode remaining
+   */
+  public int getFrightenedCount()
+  {
+    return frightenedCountdown;
+  }
+
+  /**
+   * Returns true if the pellet or energizer in the given cell had been
+   * eaten at the time of the snapshot.
+   * @param row
+   *   row of the cell
+   * @param col
+   *   column of the cell
+   * @return
+   *   true if the cell's pellet had been eaten
+   */
+  public boolean isEaten(int row, int col)
+  {
+    int index = row * numCols + col;
+    return (eaten[index >> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Returns the saved state of the player.  The result belongs to this
+   * snapshot and must not be modified.
+   * @return
+   *   player state
+   */
+  public ActorState getPlayerState()
+  {
+    return player;
+  }
+
+  /**
+   * Returns the number of enemies in the snapshot.
+   * @return
+   *   number of enemies
+   */
+  public int getEnemyCount()
+  {
+    return enemies.length;
+  }
+
+  /**
+   * Returns the saved state of an enemy, indexed as in 
+   * PacmanGame.getEnemies().  The result belongs to this snapshot and 
+   * must not be modified.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   enemy state
+   */
+  public ActorState getEnemyState(int i)
+  {
+    return enemies[i];
+  }
+
+  /**
+   * Returns true if this snapshot can be restored into the given game.
+   * @param game
+   *   game to check
+   * @return
+   *   true if the game has the same maze and number of enemies
+   */
+  public boolean isCompatible(PacmanGame game)
+  {
+    return game.getMazeHash() == mazeHash && game.getEnemies().length == enemies.length;
+  }
+}
@@ -0,0 +1,887 @@
+package api;
+
+import static api.Mode.CHASE;
+import static api.Mode.DEAD;
+import static api.Mode.FRIGHTENED;
+import static api.Mode.INACTIVE;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for large numbers of enemies.  Rather than
+ * one object per enemy, the position, direction, mode and speed of every
+ * enemy are kept in parallel primitive arrays, and updateAll() moves all of
+ * them in a single loop.  Each enemy can still be used as an Actor through
+ * a lightweight view returned by getView().
+ * <p>
+ * Enemies in a store follow the classic targeting rules for the four
+ * ghost kinds, but make their decisions more simply than the ghosts in
+ * hw4: a new direction is chosen each time an enemy reaches the center of a
+ * cell, from the legal moves that do not reverse its direction, by
+ * straight-line distance to its target.  Frightened enemies choose at
+ * random, and dead enemies follow the maze's shortest path home.
+ */
+public class GhostStore
+{
+  /**
+   * Kind of enemy that targets the player directly.
+   */
+  public static final int BLINKY = 0;
+
+  /**
+   * Kind of enemy that targets four cells ahead of the player.
+   */
+  public static final int PINKY = 1;
+
+  /**
+   * Kind of enemy that targets the reflection of Blinky about the cell
+   * two ahead of the player.
+   */
+  public static final int INKY = 2;
+
+  /**
+   * Kind of enemy that targets the player until within eight cells,
+   * then retreats to its scatter target.
+   */
+  public static final int CLYDE = 3;
+
+  private static final Direction[] DIRECTIONS = {Direction.UP, Direction.LEFT, Direction.DOWN, Direction.RIGHT};
+  private static final Direction[] ALL_DIRECTIONS = Direction.values();
+  private static final Mode[] ALL_MODES = Mode.values();
+  private static final int CLYDE_RADIUS_SQUARED = 64;
+
+  /**
+   * Distance kept from the center and edges of a cell when working out
+   * how many frames can be glided over, so that rounding in the repeated
+   * additions cannot carry an enemy across one sooner than predicted.
+   */
+  private static final double GLIDE_MARGIN = 1e-9;
+
+  /**
+   * Maze in which the enemies move.
+   */
+  private final MazeMap maze;
+
+  /**
+   * Number of enemies in the store.
+   */
+  private int size;
+
+  private double[] rowExact;
+  private double[] colExact;
+  private double[] baseSpeed;
+  private double[] speed;
+  private byte[] direction;
+  private byte[] homeDirection;
+  private byte[] mode;
+  private byte[] kind;
+  private int[] homeCell;
+  private int[] scatterCell;
+
+  /**
+   * State of a SplitMix64 random sequence for each enemy, used
+   * in frightened mode.
+   */
+  private long[] randomState;
+
+  /**
+   * Actor views, created on demand.
+   */
+  private View[] views;
+
+  /**
+   * True if enemies in CHASE mode follow shortest paths to the player.
+   */
+  private boolean pursuit;
+
+  /**
+   * Grid kept up to date as enemies change cells, or null.
+   */
+  private OccupancyGrid occupancy;
+
+  /**
+   * Index in the occupancy grid of each enemy, or null if the grid
+   * is not set.
+   */
+  private int[] gridIndex;
+
+  /**
+   * Constructs an empty store for enemies in the given maze.
+   * @param maze
+   *   maze in which the enemies move
+   * @param capacity
+   *   expected number of enemies
+   */
+  public GhostStore(MazeMap maze, int capacity)
+  {
+    this.maze = maze;
+    capacity = Math.max(capacity, 1);
+    rowExact = new double[capacity];
+    colExact = new double[capacity];
+    baseSpeed = new double[capacity];
+    speed = new double[capacity];
+    direction = new byte[capacity];
+    homeDirection = new byte[capacity];
+    mode = new byte[capacity];
+    kind = new byte[capacity];
+    homeCell = new int[capacity];
+    scatterCell = new int[capacity];
+    randomState = new long[capacity];
+    views = new View[capacity];
+  }
+
+  /**
+   * Sets whether enemies in CHASE mode pursue the player along shortest
+   * paths through the maze, read from the descriptor's chase field,
+   * instead of heading for the target cell of their kind.
+   * @param p
+   *   true for pursuit, false for the usual targeting
+   */
+  public void setPursuit(boolean p)
+  {
+    pursuit = p;
+  }
+
+  /**
+   * Returns whether enemies in CHASE mode pursue the player along
+   * shortest paths.
+   * @return
+   *   true if pursuit is on
+   */
+  public boolean isPursuit()
+  {
+    return pursuit;
+  }
+
+  /**
+   * Adds an enemy to this store and resets it to its home position
+   * in INACTIVE mode.
+   * @param ghostKind
+   *   one of BLINKY, PINKY, INKY or CLYDE
+   * @param home
+   *   initial location
+   * @param baseIncrement
+   *   base speed, in cells per frame
+   * @param homeDir
+   *   initial direction
+   * @param scatterTarget
+   *   target location in SCATTER mode
+   * @param seed
+   *   seed for the enemy's random choices in FRIGHTENED mode
+   * @return
+   *   index of the new enemy
+   * @throws IllegalStateException
+   *   if an occupancy grid has been set
+   */
+  public int add(int ghostKind, Location home, double baseIncrement, Direction homeDir, Location scatterTarget, long seed)
+  {
+    if (occupancy != null)
+    {
+      throw new IllegalStateException("Enemies cannot be added once an occupancy grid is set");
+    }
+    if (size == rowExact.length)
+    {
+      grow();
+    }
+    int i = size;
+    size += 1;
+    kind[i] = (byte) ghostKind;
+    homeCell[i] = home.pack();
+    homeDirection[i] = (byte) homeDir.ordinal();
+    scatterCell[i] = scatterTarget.pack();
+    baseSpeed[i] = baseIncrement;
+    randomState[i] = seed;
+    mode[i] = (byte) INACTIVE.ordinal();
+    reset(i);
+    return i;
+  }
+
+  /**
+   * Returns the number of enemies in this store.
+   * @return
+   *   number of enemies
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Sets an occupancy grid that is to be told whenever an enemy moves to
+   * another cell, so that the grid need not be refreshed by looking at
+   * every enemy.  Enemies are recorded in the grid at their current cells
+   * at once, and no more enemies may be added afterwards.
+   * @param grid
+   *   grid to keep up to date
+   * @param indices
+   *   index in the grid of each enemy in this store
+   */
+  void setOccupancy(OccupancyGrid grid, int[] indices)
+  {
+    occupancy = grid;
+    gridIndex = indices;
+    for (int i = 0; i < size; ++i)
+    {
+      cellChanged(i);
+    }
+  }
+
+  /**
+   * Returns the index in this store of the enemy behind the given view.
+   * @param view
+   *   a view returned by getView()
+   * @return
+   *   index of the enemy
+   */
+  int indexOf(Actor view)
+  {
+    return ((View) view).index;
+  }
+
+  /**
+   * Returns an Actor view of the enemy with the given index.  Views
+   * hold no state of their own, so all views of the same enemy are
+   * equivalent.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   view of the enemy
+   */
+  public Actor getView(int i)
+  {
+    if (views[i] == null)
+    {
+      views[i] = new View(i);
+    }
+    return views[i];
+  }
+
+  /**
+   * Updates the positions of all enemies in this store.  This has the
+   * same effect as calling update() on every view in index order.
+   * @param desc
+   *   current game descriptor
+   */
+  public void updateAll(Descriptor desc)
+  {
+    for (int i = 0; i < size; ++i)
+    {
+      update(i, desc);
+    }
+  }
+
+  /**
+   * Returns the number of upcoming frames, up to the given limit, in
+   * which updateAll() would do nothing but move each enemy along its
+   * direction: no enemy reaches the center of a cell, where it makes a
+   * decision, or leaves its cell.  Those frames can be skipped with
+   * glide().
+   * @param limit
+   *   largest number of frames of interest
+   * @return
+   *   number of frames that can be glided over, from 0 to limit
+   */
+  public int framesUntilEvent(int limit)
+  {
+    int frames = limit;
+    for (int i = 0; i < size && frames > 0; ++i)
+    {
+      if (mode[i] == INACTIVE.ordinal())
+      {
+        continue;
+      }
+      double row = rowExact[i];
+      double col = colExact[i];
+      int dir = direction[i];
+
+      // distance to the center if it is still ahead, otherwise to the
+      // edge of the cell
+      double room;
+      if (dir == Direction.LEFT.ordinal())
+      {
+        room = col - (int) col;
+      }
+      else if (dir == Direction.RIGHT.ordinal())
+      {
+        room = 1 - (col - (int) col);
+      }
+      else if (dir == Direction.UP.ordinal())
+      {
+        room = row - (int) row;
+      }
+      else
+      {
+        room = 1 - (row - (int) row);
+      }
+      if (room >= 0.5)
+      {
+        room -= 0.5;
+      }
+
+      double fit = (room - GLIDE_MARGIN) / speed[i];
+      frames = fit <= 0 ? 0 : (int) Math.min(frames, fit);
+    }
+    return frames;
+  }
+
+  /**
+   * Moves every enemy along its direction for the given number of frames,
+   * adding its speed each frame exactly as updateAll() does.  The number
+   * of frames must be at most framesUntilEvent() of them.
+   * @param frames
+   *   number of frames to advance
+   */
+  public void glide(int frames)
+  {
+    for (int i = 0; i < size; ++i)
+    {
+      if (mode[i] == INACTIVE.ordinal())
+      {
+        continue;
+      }
+      double increment = speed[i];
+      int dir = direction[i];
+      if (dir == Direction.LEFT.ordinal() || dir == Direction.UP.ordinal())
+      {
+        increment = -increment;
+      }
+      if (dir == Direction.LEFT.ordinal() || dir == Direction.RIGHT.ordinal())
+      {
+        double col = colExact[i];
+        for (int k = 0; k < frames; ++k)
+        {
+          col += increment;
+        }
+        colExact[i] = col;
+      }
+      else
+      {
+        double row = rowExact[i];
+        for (int k = 0; k < frames; ++k)
+        {
+          row += increment;
+        }
+        rowExact[i] = row;
+      }
+    }
+  }
+
+  /**
+   * Returns the packed cell containing the center of the given enemy.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   packed current cell
+   */
+  public int getCurrentCell(int i)
+  {
+    return Location.pack((int) rowExact[i], (int) colExact[i]);
+  }
+
+  /**
+   * Returns the packed home cell of the given enemy.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   packed home cell
+   */
+  public int getHomeCell(int i)
+  {
+    return homeCell[i];
+  }
+
+  /**
+   * Returns the current mode of the given enemy.
+   * @param i
+   *   index of the enemy
+   * @return
+   *   current mode
+   */
+  public Mode getMode(int i)
+  {
+    return ALL_MODES[mode[i]];
+  }
+
+  /**
+   * Sets the mode of the given enemy and adjusts its speed to match.
+   * @param i
+   *   index of the enemy
+   * @param newMode
+   *   new mode
+   */
+  public void setMode(int i, Mode newMode)
+  {
+    mode[i] = (byte) newMode.ordinal();
+    if (newMode == FRIGHTENED)
+    {
+      speed[i] = baseSpeed[i] * (2.0 / 3.0);
+    }
+    else if (newMode == DEAD)
+    {
+      speed[i] = baseSpeed[i] * 2;
+    }
+    else
+    {
+      speed[i] = baseSpeed[i];
+    }
+  }
+
+  /**
+   * Resets the given enemy to its home position, direction and base speed.
+   * The mode is not changed.
+   * @param i
+   *   index of the enemy
+   */
+  public void reset(int i)
+  {
+    rowExact[i] = Location.packedRow(homeCell[i]) + 0.5;
+    colExact[i] = Location.packedCol(homeCell[i]) + 0.5;
+    direction[i] = homeDirection[i];
+    speed[i] = baseSpeed[i];
+    cellChanged(i);
+  }
+
+  /**
+   * Records the current cell of the given enemy in the occupancy grid,
+   * if there is one.
+   */
+  private void cellChanged(int i)
+  {
+    if (occupancy != null)
+    {
+      occupancy.move(gridIndex[i], getCurrentCell(i));
+    }
+  }
+
+  /**
+   * Moves the given enemy for one frame, choosing a new direction if it
+   * reaches the center of a cell.
+   */
+  private void update(int i, Descriptor desc)
+  {
+    if (mode[i] == INACTIVE.ordinal())
+    {
+      return;
+    }
+    double increment = speed[i];
+    double row = rowExact[i];
+    double col = colExact[i];
+    int dir = direction[i];
+
+    // distance to the center of the current cell along the direction of travel
+    double diff;
+    if (dir == Direction.LEFT.ordinal())
+    {
+      diff = col - (int) col - 0.5;
+    }
+    else if (dir == Direction.RIGHT.ordinal())
+    {
+      diff = 0.5 - (col - (int) col);
+    }
+    else if (dir == Direction.UP.ordinal())
+    {
+      diff = row - (int) row - 0.5;
+    }
+    else
+    {
+      diff = 0.5 - (row - (int) row);
+    }
+
+    if (diff >= 0 && diff < increment)
+    {
+      // reach the center, turn, and use up the rest of the increment
+      // in the new direction
+      row = (int) row + 0.5;
+      col = (int) col + 0.5;
+      dir = chooseDirection(i, (int) row, (int) col, dir, desc);
+      direction[i] = (byte) dir;
+      increment -= diff;
+    }
+
+    if (dir == Direction.LEFT.ordinal())
+    {
+      col -= increment;
+      if (col < 0)
+      {
+        // a tiny negative column rounds to the right edge itself
+        col = Math.min(col + maze.getNumColumns(), Math.nextDown((double) maze.getNumColumns()));
+      }
+    }
+    else if (dir == Direction.RIGHT.ordinal())
+    {
+      col += increment;
+      if (col >= maze.getNumColumns())
+      {
+        col -= maze.getNumColumns();
+      }
+    }
+    else if (dir == Direction.UP.ordinal())
+    {
+      row -= increment;
+    }
+    else
+    {
+      row += increment;
+    }
+    boolean moved = (int) row != (int) rowExact[i] || (int) col != (int) colExact[i];
+    rowExact[i] = row;
+    colExact[i] = col;
+    if (moved)
+    {
+      cellChanged(i);
+    }
+  }
+
+  /**
+   * Returns the ordinal of the direction the given enemy should take
+   * from the center of the given cell.
+   */
+  private int chooseDirection(int i, int row, int col, int dir, Descriptor desc)
+  {
+    int mask = maze.getMoveMask(row, col);
+    int reverse = reverseOrdinal(dir);
+    int allowed = mask & ~(1 << reverse);
+    if (allowed == 0)
+    {
+      // dead end, or walled in entirely
+      return mask == 0 ? dir : reverse;
+    }
+
+    Mode m = ALL_MODES[mode[i]];
+    if (m != FRIGHTENED)
+    {
+      // between junctions there is nothing to decide
+      Direction exit = maze.getJunctionGraph().getCorridorExit(row, col, ALL_DIRECTIONS[dir]);
+      if (exit != null)
+      {
+        return exit.ordinal();
+      }
+    }
+    else
+    {
+      int choice = (int) ((nextRandom(i) >>> 33) % Integer.bitCount(allowed));
+      for (int d = 0; d < ALL_DIRECTIONS.length; ++d)
+      {
+        if ((allowed & (1 << d)) != 0)
+        {
+          if (choice == 0)
+          {
+            return d;
+          }
+          choice -= 1;
+        }
+      }
+    }
+    if (m == DEAD)
+    {
+      Direction hop = maze.getNextHop(row, col, Location.packedRow(homeCell[i]), Location.packedCol(homeCell[i]));
+      if (hop != null && (allowed & MazeMap.maskOf(hop)) != 0)
+      {
+        return hop.ordinal();
+      }
+    }
+
+    FlowField field = desc.getChaseField();
+    if (pursuit && m == CHASE && field != null)
+    {
+      int best = pursue(row, col, allowed, field);
+      if (best >= 0)
+      {
+        return best;
+      }
+    }
+
+    int target = findTarget(i, row, col, m, desc);
+    int targetRow = Location.packedRow(target);
+    int targetCol = Location.packedCol(target);
+    int best = -1;
+    int bestDistance = Integer.MAX_VALUE;
+    for (Direction d : DIRECTIONS)
+    {
+      if ((allowed & MazeMap.maskOf(d)) == 0)
+      {
+        continue;
+      }
+      int nextRow = row;
+      int nextCol = col;
+      switch (d)
+      {
+        case UP:
+          nextRow -= 1;
+          break;
+        case DOWN:
+          nextRow += 1;
+          break;
+        case LEFT:
+          nextCol -= 1;
+          break;
+        case RIGHT:
+          nextCol += 1;
+          break;
+      }
+      int rowDiff = nextRow - targetRow;
+      int colDiff = nextCol - targetCol;
+      int distance = rowDiff * rowDiff + colDiff * colDiff;
+      if (distance < bestDistance)
+      {
+        best = d.ordinal();
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the ordinal of the allowed direction from the given cell whose
+   * neighbor is nearest to the player in the given flow field, or -1 if
+   * none of them has a path to the player.  Ties go to the earliest
+   * direction in DIRECTIONS.
+   */
+  private int pursue(int row, int col, int allowed, FlowField field)
+  {
+    int numCols = maze.getNumColumns();
+    int best = -1;
+    int bestDistance = Integer.MAX_VALUE;
+    for (Direction d : DIRECTIONS)
+    {
+      if ((allowed & MazeMap.maskOf(d)) == 0)
+      {
+        continue;
+      }
+      int nextRow = row + rowStep(d);
+      int nextCol = (col + colStep(d) + numCols) % numCols;
+      int distance = field.getDistance(nextRow, nextCol);
+      if (distance >= 0 && distance < bestDistance)
+      {
+        best = d.ordinal();
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns the packed target cell for the given enemy in the given mode.
+   */
+  private int findTarget(int i, int row, int col, Mode m, Descriptor desc)
+  {
+    if (m == DEAD)
+    {
+      return homeCell[i];
+    }
+    if (m != CHASE)
+    {
+      return scatterCell[i];
+    }
+    int player = desc.getPlayerCell();
+    int playerRow = Location.packedRow(player);
+    int playerCol = Location.packedCol(player);
+    Direction playerDir = desc.getPlayerDirection();
+    switch (kind[i])
+    {
+      case PINKY:
+        return Location.pack(playerRow + 4 * rowStep(playerDir), playerCol + 4 * colStep(playerDir));
+      case INKY:
+        int aheadRow = playerRow + 2 * rowStep(playerDir);
+        int aheadCol = playerCol + 2 * colStep(playerDir);
+        int blinky = desc.getBlinkyCell();
+        return Location.pack(2 * aheadRow - Location.packedRow(blinky), 2 * aheadCol - Location.packedCol(blinky));
+      case CLYDE:
+        int rowDiff = row - playerRow;
+        int colDiff = col - playerCol;
+        return rowDiff * rowDiff + colDiff * colDiff > CLYDE_RADIUS_SQUARED ? player : scatterCell[i];
+      default:
+        return player;
+    }
+  }
+
+  /**
+   * Returns the next value of the given enemy's SplitMix64 sequence.
+   */
+  private long nextRandom(int i)
+  {
+    long z = randomState[i] += 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private static int reverseOrdinal(int dir)
+  {
+    // LEFT, RIGHT, UP, DOWN pair up as 0/1 and 2/3
+    return dir ^ 1;
+  }
+
+  private static int rowStep(Direction dir)
+  {
+    return dir == Direction.UP ? -1 : (dir == Direction.DOWN ? 1 : 0);
+  }
+
+  private static int colStep(Direction dir)
+  {
+    return dir == Direction.LEFT ? -1 : (dir == Direction.RIGHT ? 1 : 0);
+  }
+
+  /**
+   * Doubles the capacity of all the arrays.
+   */
+  private void grow()
+  {
+    int capacity = rowExact.length * 2;
+    rowExact = Arrays.copyOf(rowExact, capacity);
+    colExact = Arrays.copyOf(colExact, capacity);
+    baseSpeed = Arrays.copyOf(baseSpeed, capacity);
+    speed = Arrays.copyOf(speed, capacity);
+    direction = Arrays.copyOf(direction, capacity);
+    homeDirection = Arrays.copyOf(homeDirection, capacity);
+    mode = Arrays.copyOf(mode, capacity);
+    kind = Arrays.copyOf(kind, capacity);
+    homeCell = Arrays.copyOf(homeCell, capacity);
+    scatterCell = Arrays.copyOf(scatterCell, capacity);
+    randomState = Arrays.copyOf(randomState, capacity);
+    views = Arrays.copyOf(views, capacity);
+  }
+
+  /**
+   * Actor view of a single enemy in the store.
+   */
+  private class View implements Actor
+  {
+    /**
+     * Index of the enemy in the store.
+     */
+    private final int index;
+
+    private View(int index)
+    {
+      this.index = index;
+    }
+
+    @Override
+    public double getBaseIncrement()
+    {
+      return baseSpeed[index];
+    }
+
+    @Override
+    public double getColExact()
+    {
+      return colExact[index];
+    }
+
+    @Override
+    public double getCurrentIncrement()
+    {
+      return speed[index];
+    }
+
+    @Override
+    public Location getCurrentLocation()
+    {
+      return Location.unpack(getCurrentCell());
+    }
+
+    @Override
+    public int getCurrentCell()
+    {
+      return GhostStore.this.getCurrentCell(index);
+    }
+
+    @Override
+    public Direction getCurrentDirection()
+    {
+      return ALL_DIRECTIONS[direction[index]];
+    }
+
+    @Override
+    public Direction getHomeDirection()
+    {
+      return ALL_DIRECTIONS[homeDirection[index]];
+    }
+
+    @Override
+    public Location getHomeLocation()
+    {
+      return Location.unpack(homeCell[index]);
+    }
+
+    @Override
+    public int getHomeCell()
+    {
+      return homeCell[index];
+    }
+
+    @Override
+    public Mode getMode()
+    {
+      return GhostStore.this.getMode(index);
+    }
+
+    @Override
+    public double getRowExact()
+    {
+      return rowExact[index];
+    }
+
+    @Override
+    public void reset()
+    {
+      GhostStore.this.reset(index);
+    }
+
+    @Override
+    public void saveState(ActorState state)
+    {
+      state.setRowExact(rowExact[index]);
+      state.setColExact(colExact[index]);
+      state.setCurrentIncrement(speed[index]);
+      state.setDirection(ALL_DIRECTIONS[direction[index]]);
+      state.setMode(ALL_MODES[mode[index]]);
+      state.setExtra(0, randomState[index]);
+    }
+
+    @Override
+    public void restoreState(ActorState state)
+    {
+      rowExact[index] = state.getRowExact();
+      colExact[index] = state.getColExact();
+      speed[index] = state.getCurrentIncrement();
+      direction[index] = (byte) state.getDirection().ordinal();
+      mode[index] = (byte) state.getMode().ordinal();
+      randomState[index] = state.getExtra(0);
+      cellChanged(index);
+    }
+
+    @Override
+    public void setColExact(double c)
+    {
+      colExact[index] = c;
+      cellChanged(index);
+    }
+
+    @Override
+    public void setDirection(Direction dir)
+    {
+      direction[index] = (byte) dir.ordinal();
+    }
+
+    @Override
+    public void setMode(Mode newMode, Descriptor desc)
+    {
+      GhostStore.this.setMode(index, newMode);
+    }
+
+    @Override
+    public void setRowExact(double r)
+    {
+      rowExact[index] = r;
+      cellChanged(index);
+    }
+
+    @Override
+    public void update(Descriptor desc)
+    {
+      GhostStore.this.update(index, desc);
+    }
+  }
+}
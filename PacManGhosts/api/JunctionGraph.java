@@ -0,0 +1,634 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * The maze of a MazeMap compressed into a weighted graph whose nodes are
+ * the junctions and whose edges are the corridors between them.  Every
+ * open cell with other than two legal moves is a junction, as is one cell
+ * of any corridor that loops back on itself without meeting a junction;
+ * every other open cell lies on exactly one corridor, and an actor that
+ * enters it has only one way to go on without turning back.  The weight
+ * of a corridor is the number of moves from one end to the other.
+ * <p>
+ * Edges are stored in compressed sparse row form, once in each direction,
+ * so the corridors leaving a junction are a contiguous range of arrays.
+ * Shortest paths are found with A* over the junctions, using the
+ * Manhattan distance with the tunnel wraparound as the heuristic, and
+ * distances from a cell to all junctions with Dijkstra's algorithm.  Both
+ * visit only junctions, so they cost time proportional to the number of
+ * corridors explored rather than the number of cells.  Searches reuse
+ * the graph's own arrays and do not allocate, so a graph must not be
+ * searched from more than one thread at a time.
+ * <p>
+ * A map builds its graph when it is constructed, in time proportional to
+ * the number of open cells.
+ */
+public class JunctionGraph
+{
+  /**
+   * All directions, indexed by ordinal.
+   */
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  private final MazeMap map;
+  private final int numCols;
+
+  /**
+   * Number of junctions.
+   */
+  private int numNodes;
+
+  /**
+   * Number of edges, counting each corridor once in each direction.
+   */
+  private int numEdges;
+
+  /**
+   * Row-major index of each junction's cell.
+   */
+  private int[] nodeCell;
+
+  /**
+   * For each junction, the index of its first outgoing edge; the edges
+   * of junction n are firstEdge[n] up to firstEdge[n + 1].
+   */
+  private int[] firstEdge;
+
+  /**
+   * Junction at which each edge starts.
+   */
+  private int[] origin;
+
+  /**
+   * Junction at which each edge ends.
+   */
+  private int[] target;
+
+  /**
+   * Number of moves along each edge.
+   */
+  private int[] length;
+
+  /**
+   * Ordinal of the first move along each edge.
+   */
+  private byte[] exitDir;
+
+  /**
+   * Ordinal of the last move along each edge, into its end junction.
+   */
+  private byte[] entryDir;
+
+  /**
+   * The same corridor as each edge, in the other direction.
+   */
+  private int[] reverse;
+
+  /**
+   * Junction in each open cell, or -1 for corridor cells.
+   */
+  private final int[] nodeOf;
+
+  /**
+   * Edge on which each corridor cell lies, or -1 for junctions.  Each
+   * corridor cell belongs to the first of the corridor's two edges that
+   * was walked.
+   */
+  private final int[] edgeOf;
+
+  /**
+   * Number of moves from the start of edgeOf[] to each corridor cell.
+   */
+  private final int[] offset;
+
+  /**
+   * Ordinal of the move from each corridor cell toward the end of
+   * edgeOf[].
+   */
+  private final byte[] toward;
+
+  // state of the current search; a junction's cost and first move are
+  // valid only if its mark equals the search number, and it is settled
+  // only if its settled mark does
+  private final int[] cost;
+  private final byte[] firstMove;
+  private final int[] mark;
+  private final int[] settled;
+  private final long[] heap;
+  private int heapSize;
+  private int searchNumber;
+
+  /**
+   * First move of the path found by the last call to route().
+   */
+  private int routeFirst;
+
+  /**
+   * Constructs the graph for the given map.
+   */
+  JunctionGraph(MazeMap map)
+  {
+    this.map = map;
+    numCols = map.getNumColumns();
+    int open = map.getOpenCellCount();
+    nodeOf = new int[open];
+    edgeOf = new int[open];
+    offset = new int[open];
+    toward = new byte[open];
+    Arrays.fill(nodeOf, -1);
+    Arrays.fill(edgeOf, -1);
+
+    nodeCell = new int[64];
+    for (int i = 0; i < open; ++i)
+    {
+      if (Integer.bitCount(maskAt(map.getOpenCell(i))) != 2)
+      {
+        addNode(i);
+      }
+    }
+
+    int capacity = 4 * Math.max(numNodes, 16);
+    origin = new int[capacity];
+    target = new int[capacity];
+    length = new int[capacity];
+    exitDir = new byte[capacity];
+    entryDir = new byte[capacity];
+    firstEdge = new int[nodeCell.length + 1];
+
+    // any corridor cell not reached from a junction lies on a loop with
+    // no junction, so one cell of the loop is made a junction
+    int n = 0;
+    int scan = 0;
+    while (true)
+    {
+      for (; n < numNodes; ++n)
+      {
+        addEdges(n);
+      }
+      while (scan < open && (nodeOf[scan] >= 0 || edgeOf[scan] >= 0))
+      {
+        scan += 1;
+      }
+      if (scan == open)
+      {
+        break;
+      }
+      addNode(scan);
+    }
+    firstEdge[numNodes] = numEdges;
+
+    reverse = new int[numEdges];
+    for (int e = 0; e < numEdges; ++e)
+    {
+      int v = target[e];
+      int back = entryDir[e] ^ 1;
+      for (int f = firstEdge[v]; f < firstEdge[v + 1]; ++f)
+      {
+        if (exitDir[f] == back)
+        {
+          reverse[e] = f;
+        }
+      }
+    }
+
+    cost = new int[numNodes];
+    firstMove = new byte[numNodes];
+    mark = new int[numNodes];
+    settled = new int[numNodes];
+    heap = new long[numEdges + 2];
+  }
+
+  /**
+   * Returns the number of junctions.
+   * @return
+   *   number of junctions
+   */
+  public int getJunctionCount()
+  {
+    return numNodes;
+  }
+
+  /**
+   * Returns the number of corridors between junctions.
+   * @return
+   *   number of corridors
+   */
+  public int getCorridorCount()
+  {
+    return numEdges / 2;
+  }
+
+  /**
+   * Returns the cell of the given junction.
+   * @param node
+   *   index of a junction, from 0 to getJunctionCount() - 1
+   * @return
+   *   cell of the junction, packed by Location.pack()
+   */
+  public int getJunctionCell(int node)
+  {
+    return Location.pack(nodeCell[node] / numCols, nodeCell[node] % numCols);
+  }
+
+  /**
+   * Returns the index of the junction in the given cell, or -1 if the
+   * cell is outside the maze, is a wall, or lies on a corridor.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   index of the junction, or -1
+   */
+  public int getJunction(int row, int col)
+  {
+    int i = map.getOpenIndex(row, col);
+    return i < 0 ? -1 : nodeOf[i];
+  }
+
+  /**
+   * Returns the direction in which an actor moving in the given
+   * direction leaves the given corridor cell, which is the only legal
+   * move other than turning back.  Returns null if the cell is a
+   * junction, a wall or outside the maze, if the direction is null, or
+   * if the actor did not arrive along the corridor, so that the caller
+   * has a real choice to make.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @param dir
+   *   direction in which the actor is moving
+   * @return
+   *   direction of the way on, or null
+   */
+  public Direction getCorridorExit(int row, int col, Direction dir)
+  {
+    int i = map.getOpenIndex(row, col);
+    if (i < 0 || dir == null || nodeOf[i] >= 0)
+    {
+      return null;
+    }
+    int back = 1 << (dir.ordinal() ^ 1);
+    int mask = map.getMoveMask(row, col);
+    if ((mask & back) == 0)
+    {
+      return null;
+    }
+    return DIRECTIONS[Integer.numberOfTrailingZeros(mask & ~back)];
+  }
+
+  /**
+   * Returns the number of moves along a shortest path from the first
+   * given cell to the second, found by A* over the junctions.  Returns
+   * -1 if either cell is outside the maze or is a wall, or if there is
+   * no path.
+   * @param row
+   *   row of starting cell
+   * @param col
+   *   column of starting cell
+   * @param targetRow
+   *   row of target cell
+   * @param targetCol
+   *   column of target cell
+   * @return
+   *   length of a shortest path, or -1
+   */
+  public int getPathDistance(int row, int col, int targetRow, int targetCol)
+  {
+    int from = map.getOpenIndex(row, col);
+    int to = map.getOpenIndex(targetRow, targetCol);
+    if (from < 0 || to < 0)
+    {
+      return -1;
+    }
+    return route(from, to);
+  }
+
+  /**
+   * Returns the direction of the first move along a shortest path from
+   * the first given cell to the second, found by A* over the junctions.
+   * Returns null if the cells are the same, if either cell is outside the
+   * maze or is a wall, or if there is no path.
+   * @param row
+   *   row of starting cell
+   * @param col
+   *   column of starting cell
+   * @param targetRow
+   *   row of target cell
+   * @param targetCol
+   *   column of target cell
+   * @return
+   *   direction of first move, or null
+   */
+  public Direction getNextHop(int row, int col, int targetRow, int targetCol)
+  {
+    int from = map.getOpenIndex(row, col);
+    int to = map.getOpenIndex(targetRow, targetCol);
+    if (from < 0 || to < 0 || route(from, to) <= 0)
+    {
+      return null;
+    }
+    return DIRECTIONS[routeFirst];
+  }
+
+  /**
+   * Fills in the number of moves along a shortest path from the given
+   * cell to every junction, found by Dijkstra's algorithm.  Junctions
+   * that cannot be reached, or all of them if the cell is outside the
+   * maze or is a wall, get -1.
+   * @param row
+   *   row of starting cell
+   * @param col
+   *   column of starting cell
+   * @param distances
+   *   receives the distance to each junction, indexed like
+   *   getJunctionCell(); must have room for getJunctionCount() entries
+   */
+  public void getJunctionDistances(int row, int col, int[] distances)
+  {
+    int from = map.getOpenIndex(row, col);
+    if (from < 0)
+    {
+      Arrays.fill(distances, 0, numNodes, -1);
+      return;
+    }
+    route(from, -1);
+    for (int n = 0; n < numNodes; ++n)
+    {
+      distances[n] = mark[n] == searchNumber ? cost[n] : -1;
+    }
+  }
+
+  /**
+   * Finds a shortest path between the given open cells, leaving its
+   * first move in routeFirst, and returns its length, or -1 if there is
+   * none.  If the target is -1, runs until every reachable junction is
+   * settled and returns -1.
+   */
+  private int route(int from, int to)
+  {
+    if (from == to)
+    {
+      routeFirst = -1;
+      return 0;
+    }
+    searchNumber += 1;
+    if (searchNumber == 0)
+    {
+      Arrays.fill(mark, 0);
+      Arrays.fill(settled, 0);
+      searchNumber = 1;
+    }
+    heapSize = 0;
+
+    // the target is reached from a junction, either by being one or by
+    // walking into its corridor from one of the corridor's ends
+    int goal = -1;
+    int goalEdge = -1;
+    int goalOffset = 0;
+    int targetRow = 0;
+    int targetCol = 0;
+    if (to >= 0)
+    {
+      goal = nodeOf[to];
+      goalEdge = edgeOf[to];
+      goalOffset = offset[to];
+      int cell = map.getOpenCell(to);
+      targetRow = cell / numCols;
+      targetCol = cell % numCols;
+    }
+    int best = Integer.MAX_VALUE;
+    int bestFirst = -1;
+
+    int start = nodeOf[from];
+    if (start >= 0)
+    {
+      offer(start, 0, -1, targetRow, targetCol, to >= 0);
+    }
+    else
+    {
+      int e = edgeOf[from];
+      int k = offset[from];
+      int ahead = toward[from];
+      int behind = Integer.numberOfTrailingZeros(maskAt(map.getOpenCell(from)) & ~(1 << ahead));
+      offer(origin[e], k, behind, targetRow, targetCol, to >= 0);
+      offer(target[e], length[e] - k, ahead, targetRow, targetCol, to >= 0);
+      if (e == goalEdge)
+      {
+        // along the corridor without reaching either end
+        best = Math.abs(goalOffset - k);
+        bestFirst = goalOffset > k ? ahead : behind;
+      }
+    }
+
+    while (heapSize > 0)
+    {
+      long top = poll();
+      int n = (int) top;
+      if (settled[n] == searchNumber)
+      {
+        continue;
+      }
+      if ((int) (top >>> 32) >= best)
+      {
+        break;
+      }
+      settled[n] = searchNumber;
+      int g = cost[n];
+      int first = firstMove[n];
+
+      if (n == goal)
+      {
+        best = g;
+        bestFirst = first;
+      }
+      else if (goalEdge >= 0)
+      {
+        if (n == origin[goalEdge] && g + goalOffset < best)
+        {
+          best = g + goalOffset;
+          bestFirst = first >= 0 ? first : exitDir[goalEdge];
+        }
+        if (n == target[goalEdge] && g + length[goalEdge] - goalOffset < best)
+        {
+          best = g + length[goalEdge] - goalOffset;
+          bestFirst = first >= 0 ? first : exitDir[reverse[goalEdge]];
+        }
+      }
+
+      for (int e = firstEdge[n]; e < firstEdge[n + 1]; ++e)
+      {
+        offer(target[e], g + length[e], first >= 0 ? first : exitDir[e], targetRow, targetCol, to >= 0);
+      }
+    }
+
+    routeFirst = bestFirst;
+    return best == Integer.MAX_VALUE ? -1 : best;
+  }
+
+  /**
+   * Records a path of the given cost to the given junction if it is the
+   * shortest so far, and adds the junction to the heap.
+   */
+  private void offer(int n, int g, int first, int targetRow, int targetCol, boolean guided)
+  {
+    if (mark[n] == searchNumber && g >= cost[n])
+    {
+      return;
+    }
+    mark[n] = searchNumber;
+    cost[n] = g;
+    firstMove[n] = (byte) first;
+    int f = g;
+    if (guided)
+    {
+      int rowDiff = Math.abs(nodeCell[n] / numCols - targetRow);
+      int colDiff = Math.abs(nodeCell[n] % numCols - targetCol);
+      f += rowDiff + Math.min(colDiff, numCols - colDiff);
+    }
+    push(((long) f << 32) | n);
+  }
+
+  private void push(long key)
+  {
+    int i = heapSize++;
+    while (i > 0)
+    {
+      int parent = (i - 1) >> 1;
+      if (heap[parent] <= key)
+      {
+        break;
+      }
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = key;
+  }
+
+  private long poll()
+  {
+    long top = heap[0];
+    long last = heap[--heapSize];
+    int i = 0;
+    while (true)
+    {
+      int child = 2 * i + 1;
+      if (child >= heapSize)
+      {
+        break;
+      }
+      if (child + 1 < heapSize && heap[child + 1] < heap[child])
+      {
+        child += 1;
+      }
+      if (last <= heap[child])
+      {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    if (heapSize > 0)
+    {
+      heap[i] = last;
+    }
+    return top;
+  }
+
+  /**
+   * Makes the given open cell a junction.
+   */
+  private void addNode(int i)
+  {
+    if (numNodes == nodeCell.length)
+    {
+      nodeCell = Arrays.copyOf(nodeCell, 2 * numNodes);
+    }
+    nodeOf[i] = numNodes;
+    nodeCell[numNodes] = map.getOpenCell(i);
+    numNodes += 1;
+  }
+
+  /**
+   * Walks every corridor leaving the given junction, adding an edge for
+   * each and assigning the corridor cells not yet assigned to it.
+   */
+  private void addEdges(int n)
+  {
+    if (n + 1 >= firstEdge.length)
+    {
+      firstEdge = Arrays.copyOf(firstEdge, 2 * firstEdge.length);
+    }
+    firstEdge[n] = numEdges;
+    int mask = maskAt(nodeCell[n]);
+    for (int d = 0; d < DIRECTIONS.length; ++d)
+    {
+      if ((mask & (1 << d)) == 0)
+      {
+        continue;
+      }
+      if (numEdges == origin.length)
+      {
+        int capacity = 2 * numEdges;
+        origin = Arrays.copyOf(origin, capacity);
+        target = Arrays.copyOf(target, capacity);
+        length = Arrays.copyOf(length, capacity);
+        exitDir = Arrays.copyOf(exitDir, capacity);
+        entryDir = Arrays.copyOf(entryDir, capacity);
+      }
+      int e = numEdges++;
+      int dir = d;
+      int cell = neighbor(nodeCell[n], dir);
+      int steps = 1;
+      int i = map.getOpenIndex(cell / numCols, cell % numCols);
+      while (nodeOf[i] < 0)
+      {
+        dir = Integer.numberOfTrailingZeros(maskAt(cell) & ~(1 << (dir ^ 1)));
+        if (edgeOf[i] < 0)
+        {
+          edgeOf[i] = e;
+          offset[i] = steps;
+          toward[i] = (byte) dir;
+        }
+        cell = neighbor(cell, dir);
+        steps += 1;
+        i = map.getOpenIndex(cell / numCols, cell % numCols);
+      }
+      origin[e] = n;
+      target[e] = nodeOf[i];
+      length[e] = steps;
+      exitDir[e] = (byte) d;
+      entryDir[e] = (byte) dir;
+    }
+  }
+
+  /**
+   * Returns the move mask of the cell with the given row-major index.
+   */
+  private int maskAt(int cell)
+  {
+    return map.getMoveMask(cell / numCols, cell % numCols);
+  }
+
+  /**
+   * Returns the row-major index of the neighbor of the given open cell
+   * in the direction with the given ordinal, wrapping around the left
+   * and right edges.  The move must be legal.
+   */
+  private int neighbor(int cell, int d)
+  {
+    switch (DIRECTIONS[d])
+    {
+      case LEFT:
+        return cell % numCols > 0 ? cell - 1 : cell + numCols - 1;
+      case RIGHT:
+        return cell % numCols < numCols - 1 ? cell + 1 : cell - numCols + 1;
+      case UP:
+        return cell - numCols;
+      default:
+        return cell + numCols;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative durations in nanoseconds.  Values
+ * are counted in logarithmic buckets, each power of two being split into
+ * eight sub-buckets, so percentiles are reported with a relative error of
+ * at most 12.5% while the whole histogram is a fixed array of a few
+ * hundred counters.  Recording never blocks or allocates and may be done
+ * from any number of threads; the histogram may be read at any time,
+ * though a read that overlaps recording may not include the newest values.
+ */
+public final class LatencyHistogram
+{
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records one value.  Negative values are recorded as zero.
+   * @param nanos
+   *   value to record
+   */
+  public void record(long nanos)
+  {
+    long v = Math.max(nanos, 0);
+    counts.incrementAndGet(bucketOf(v));
+    total.addAndGet(v);
+    long m = max.get();
+    while (v > m && !max.compareAndSet(m, v))
+    {
+      m = max.get();
+    }
+  }
+
+  /**
+   * Returns the number of values recorded.
+   * @return
+   *   number of values
+   */
+  public long getCount()
+  {
+    long n = 0;
+    for (int i = 0; i < BUCKETS; ++i)
+    {
+      n += counts.get(i);
+    }
+    return n;
+  }
+
+  /**
+   * Returns the mean of the values recorded, or zero if there are none.
+   * @return
+   *   mean value
+   */
+  public double getMean()
+  {
+    long n = getCount();
+    return n == 0 ? 0 : (double) total.get() / n;
+  }
+
+  /**
+   * Returns the largest value recorded, or zero if there are none.
+   * @return
+   *   largest value
+   */
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * Returns an upper bound for the given percentile of the values
+   * recorded, accurate to within the width of one bucket.
+   * @param percentile
+   *   percentile between 0 and 100
+   * @return
+   *   value at the percentile, or zero if there are no values
+   */
+  public long getPercentile(double percentile)
+  {
+    long[] snapshot = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; ++i)
+    {
+      snapshot[i] = counts.get(i);
+      n += snapshot[i];
+    }
+    if (n == 0)
+    {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; ++i)
+    {
+      seen += snapshot[i];
+      if (seen >= rank)
+      {
+        return Math.min(upperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Discards all recorded values.  Values recorded concurrently with a
+   * reset may be partly discarded.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; ++i)
+    {
+      counts.set(i, 0);
+    }
+    total.set(0);
+    max.set(0);
+  }
+
+  /**
+   * Returns the bucket for the given non-negative value.
+   */
+  private static int bucketOf(long v)
+  {
+    if (v < SUB_COUNT)
+    {
+      return (int) v;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+    return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+  }
+
+  /**
+   * Returns the largest value that falls in the given bucket.
+   */
+  private static long upperBound(int bucket)
+  {
+    if (bucket < SUB_COUNT)
+    {
+      return bucket;
+    }
+    int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+    int sub = bucket % SUB_COUNT;
+    long width = 1L << (exp - SUB_BITS);
+    return (1L << exp) + sub * width + width - 1;
+  }
+}
@@ -2,6 +2,11 @@ package api;
 
 /**
  * Immutable container for a pair of two-dimensional coordinates.
+ * The static methods pack(), packedRow() and packedCol() provide an
+ * allocation-free alternative in which a row and column are stored
+ * together in a single int.  Rows and columns in the range -32768 to
+ * 32767 can be packed, and two packed cells are equal exactly when the 
+ * corresponding Locations are equal.
  */
 public class Location
 {
@@ -48,6 +53,66 @@ public class Location
     return col;
   }
 
+  /**
+   * Returns this location packed into a single int.
+   * @return
+   *   packed form of this location
+   */
+  public int pack()
+  {
+    return pack(row, col);
+  }
+  
+  /**
+   * Packs the given row and column into a single int.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   packed cell
+   */
+  public static int pack(int row, int col)
+  {
+    return (row << 16) | (col & 0xFFFF);
+  }
+  
+  /**
+   * Returns the row of the given packed cell.
+   * @param cell
+   *   packed cell
+   * @return
+   *   the row
+   */
+  public static int packedRow(int cell)
+  {
+    return cell >> 16;
+  }
+  
+  /**
+   * Returns the column of the given packed cell.
+   * @param cell
+   *   packed cell
+   * @return
+   *   the column
+   */
+  public static int packedCol(int cell)
+  {
+    return (short) cell;
+  }
+  
+  /**
+   * Returns a new Location for the given packed cell.
+   * @param cell
+   *   packed cell
+   * @return
+   *   location with the same row and column
+   */
+  public static Location unpack(int cell)
+  {
+    return new Location(packedRow(cell), packedCol(cell));
+  }
+  
   /**
    * Determines whether this Location is equal to the given object.
    * @return
@@ -63,6 +128,15 @@ public class Location
     return row == other.row && col == other.col;
   }
   
+  /**
+   * Returns a hash code consistent with equals().
+   */
+  @Override
+  public int hashCode()
+  {
+    return pack();
+  }
+  
   /**
    * Returns a string representation of this object in the form (row, column).
    */
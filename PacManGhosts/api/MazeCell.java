@@ -17,6 +17,17 @@ public class MazeCell
    */
   private boolean eaten;
   
+  /**
+   * Game whose pellet bitset holds the eaten flag for this cell, or
+   * null if the flag is kept in this cell.
+   */
+  private PacmanGame owner;
+  
+  /**
+   * Index of this cell in the owner's pellet bitset.
+   */
+  private int index;
+  
   /**
    * Constructs a maze cell with type empty.
    */
@@ -35,6 +46,17 @@ public class MazeCell
     eaten = false;
   }
   
+  /**
+   * Constructs a maze cell with given type whose eaten flag is kept
+   * in the given game's pellet bitset.
+   */
+  MazeCell(CellType givenType, PacmanGame owner, int index)
+  {
+    type = givenType;
+    this.owner = owner;
+    this.index = index;
+  }
+  
   /**
    * Returns true if this cell is a wall.
    * @return
@@ -52,7 +74,7 @@ public class MazeCell
    */
   public boolean canEat()
   {
-    return !eaten && (type == DOT || type == ENERGIZER);
+    return !isEaten() && (type == DOT || type == ENERGIZER);
   }
   
   /**
@@ -72,7 +94,7 @@ public class MazeCell
   {
     if (type == DOT || type == ENERGIZER)
     {
-      eaten = true;
+      setEaten(true);
     }
   }
   
@@ -81,7 +103,24 @@ public class MazeCell
    */
   public void reset()
   {
-    eaten = false;
+    setEaten(false);
+  }
+  
+  private boolean isEaten()
+  {
+    return owner == null ? eaten : owner.isEaten(index);
+  }
+  
+  private void setEaten(boolean value)
+  {
+    if (owner == null)
+    {
+      eaten = value;
+    }
+    else
+    {
+      owner.setEaten(index, value);
+    }
   }
 
   
@@ -0,0 +1,154 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * The characters of a maze, one byte per cell, from which a PacmanGame
+ * can be constructed.  The characters have the same meaning as in the
+ * rows passed to the PacmanGame constructors.  Cells are stored in a
+ * single row-major array, and the cells holding the player and ghost
+ * markers are listed separately, so building a game from a layout needs
+ * only one pass over the cells plus a pass over the markers.
+ * <p>
+ * A layout is created either from an array of rows, via fromRows(), or
+ * by a MazeLoader reading a maze file.  Layouts are immutable.
+ */
+public final class MazeLayout
+{
+  /**
+   * Number of rows.
+   */
+  final int numRows;
+
+  /**
+   * Number of columns.
+   */
+  final int numCols;
+
+  /**
+   * Character of each cell in row-major order.
+   */
+  final byte[] cells;
+
+  /**
+   * Row-major indices of the cells holding S, B, P, I or C markers,
+   * in increasing order.
+   */
+  final int[] markers;
+
+  /**
+   * Hash of the maze text, as computed by PacmanGame.hashMaze().
+   */
+  final long hash;
+
+  /**
+   * Constructs a layout from the given arrays, which are not copied.
+   */
+  MazeLayout(int numRows, int numCols, byte[] cells, int[] markers, long hash)
+  {
+    this.numRows = numRows;
+    this.numCols = numCols;
+    this.cells = cells;
+    this.markers = markers;
+    this.hash = hash;
+  }
+
+  /**
+   * Returns a layout for the given rows, which are interpreted as
+   * described for the PacmanGame constructors.  No validation is done
+   * beyond what the constructors have always done: the width is taken
+   * from the first row, and characters without a special meaning are
+   * treated as empty cells.
+   * @param rows
+   *   array of strings, one per row of the maze
+   * @return
+   *   layout of the given maze
+   */
+  public static MazeLayout fromRows(String[] rows)
+  {
+    int height = rows.length;
+    int width = rows[0].length();
+    byte[] cells = new byte[height * width];
+    int[] markers = new int[16];
+    int numMarkers = 0;
+    for (int row = 0; row < height; ++row)
+    {
+      String s = rows[row];
+      for (int col = 0; col < width; ++col)
+      {
+        char c = s.charAt(col);
+        int index = row * width + col;
+        cells[index] = c < 128 ? (byte) c : (byte) ' ';
+        if (isMarker(c))
+        {
+          if (numMarkers == markers.length)
+          {
+            markers = Arrays.copyOf(markers, 2 * numMarkers);
+          }
+          markers[numMarkers++] = index;
+        }
+      }
+    }
+    return new MazeLayout(height, width, cells, Arrays.copyOf(markers, numMarkers), PacmanGame.hashMaze(rows));
+  }
+
+  /**
+   * Returns true if the given character marks the starting cell of the
+   * player or of a ghost.
+   * @param c
+   *   maze character
+   * @return
+   *   true if c is one of S, B, P, I or C
+   */
+  public static boolean isMarker(int c)
+  {
+    return c == 'S' || c == 'B' || c == 'P' || c == 'I' || c == 'C';
+  }
+
+  /**
+   * Returns the number of rows.
+   * @return
+   *   number of rows
+   */
+  public int getNumRows()
+  {
+    return numRows;
+  }
+
+  /**
+   * Returns the number of columns.
+   * @return
+   *   number of columns
+   */
+  public int getNumColumns()
+  {
+    return numCols;
+  }
+
+  /**
+   * Returns the character of the given cell.  No bounds checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   maze character of the cell
+   */
+  public char getChar(int row, int col)
+  {
+    return (char) cells[row * numCols + col];
+  }
+
+  /**
+   * Returns the hash of the maze text.  This is the same value that
+   * PacmanGame.hashMaze() returns for the rows of the maze, so a game
+   * built from a loaded file is compatible with snapshots and input
+   * logs recorded from the same maze given as rows.
+   * @return
+   *   hash of the maze
+   */
+  public long getHash()
+  {
+    return hash;
+  }
+}
@@ -0,0 +1,273 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads maze files into MazeLayouts.  A maze file is plain ASCII text
+ * with one line per row of the maze, using the characters described for
+ * the PacmanGame constructors: '#' for walls, '.' for dots, '*' for
+ * energizers, ' ' for empty cells, 'S' for the player's starting cell and
+ * 'B', 'P', 'I' and 'C' for the ghosts.  Lines may end with either "\n"
+ * or "\r\n", and blank lines at the end of the file are ignored.
+ * <p>
+ * The text is parsed in a single pass, one byte at a time, straight into
+ * the layout's cell array; it is never held in memory as strings, so
+ * mazes with millions of cells can be loaded cheaply.  Files are read
+ * through a memory mapping, and any other source can be read as a
+ * stream.  The maze is validated as it is read: every line must have the
+ * same length, only the characters above may appear, and there must be
+ * exactly one starting cell.  Errors are reported as an
+ * IllegalArgumentException giving the line and column.
+ */
+public final class MazeLoader
+{
+  /**
+   * Largest region of a file mapped at once.
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+
+  /**
+   * Size of the buffer used when reading a stream.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Largest number of cells in a maze.
+   */
+  private static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+  /**
+   * Characters allowed in a maze, indexed by character code.
+   */
+  private static final boolean[] VALID = new boolean[128];
+
+  static
+  {
+    for (char c : "#.* SBPIC".toCharArray())
+    {
+      VALID[c] = true;
+    }
+  }
+
+  private MazeLoader()
+  {
+  }
+
+  /**
+   * Loads the maze in the given file.
+   * @param file
+   *   path of the maze file
+   * @return
+   *   layout of the maze
+   * @throws IOException
+   *   if the file cannot be read
+   * @throws IllegalArgumentException
+   *   if the file does not contain a valid maze
+   */
+  public static MazeLayout load(Path file) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+    {
+      // the file size is an upper bound on the number of cells
+      long size = channel.size();
+      Parser parser = new Parser((int) Math.max(1, Math.min(MAX_CELLS, size)));
+      for (long start = 0; start < size; start += WINDOW_SIZE)
+      {
+        parser.accept(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start)));
+      }
+      return parser.finish();
+    }
+  }
+
+  /**
+   * Reads a maze from the given stream, up to the end of the stream.
+   * The stream is not closed.
+   * @param in
+   *   stream containing the maze text
+   * @return
+   *   layout of the maze
+   * @throws IOException
+   *   if the stream cannot be read
+   * @throws IllegalArgumentException
+   *   if the stream does not contain a valid maze
+   */
+  public static MazeLayout read(InputStream in) throws IOException
+  {
+    Parser parser = new Parser(BUFFER_SIZE);
+    byte[] buf = new byte[BUFFER_SIZE];
+    int n;
+    while ((n = in.read(buf)) >= 0)
+    {
+      parser.accept(ByteBuffer.wrap(buf, 0, n));
+    }
+    return parser.finish();
+  }
+
+  /**
+   * State of a parse in progress.  Cells are appended to the cell array
+   * in the order they are read, which is row-major order; the width is
+   * fixed by the first line.
+   */
+  private static class Parser
+  {
+    private byte[] cells;
+    private int size;
+    private int[] markers = new int[16];
+    private int numMarkers;
+    private int numPlayers;
+    private int width = -1;
+    private int numRows;
+
+    /**
+     * Number of lines of the file finished so far, including blank ones,
+     * for error messages.
+     */
+    private int numLines;
+    private int col;
+    private int blankLines;
+    private boolean pendingReturn;
+
+    // FNV-1a, as in PacmanGame.hashMaze()
+    private long hash = 0xcbf29ce484222325L;
+
+    private Parser(int capacity)
+    {
+      cells = new byte[capacity];
+    }
+
+    /**
+     * Parses the remaining bytes of the given buffer.
+     */
+    private void accept(ByteBuffer buf)
+    {
+      while (buf.hasRemaining())
+      {
+        int c = buf.get();
+        if (pendingReturn && c != '\n')
+        {
+          throw error("carriage return not followed by a newline");
+        }
+        if (c == '\r')
+        {
+          pendingReturn = true;
+        }
+        else if (c == '\n')
+        {
+          pendingReturn = false;
+          endLine();
+        }
+        else
+        {
+          addCell(c);
+        }
+      }
+    }
+
+    /**
+     * Appends a cell with the given character to the current row.
+     */
+    private void addCell(int c)
+    {
+      if (blankLines > 0)
+      {
+        // point at the first of the blank lines, not at this one
+        throw new IllegalArgumentException("Maze line " + (numLines - blankLines + 1) + ": blank line inside the maze");
+      }
+      if (c < 0 || !VALID[c])
+      {
+        throw error("invalid character " + (c < 0 ? "0x" + Integer.toHexString(c & 0xff) : "'" + (char) c + "'"));
+      }
+      if (col == width)
+      {
+        throw error("line is longer than the first line (" + width + " cells)");
+      }
+      if (size == cells.length)
+      {
+        if (size == MAX_CELLS)
+        {
+          throw error("maze is too large");
+        }
+        cells = Arrays.copyOf(cells, (int) Math.min(MAX_CELLS, 2L * size));
+      }
+      if (MazeLayout.isMarker(c))
+      {
+        if (numMarkers == markers.length)
+        {
+          markers = Arrays.copyOf(markers, 2 * numMarkers);
+        }
+        markers[numMarkers++] = size;
+        if (c == 'S')
+        {
+          numPlayers += 1;
+        }
+      }
+      cells[size++] = (byte) c;
+      hash = (hash ^ c) * 0x100000001b3L;
+      col += 1;
+    }
+
+    /**
+     * Finishes the current line.
+     */
+    private void endLine()
+    {
+      if (col == 0)
+      {
+        blankLines += 1;
+        numLines += 1;
+        return;
+      }
+      if (width < 0)
+      {
+        width = col;
+      }
+      else if (col < width)
+      {
+        throw error("line is shorter than the first line (" + width + " cells)");
+      }
+      hash = (hash ^ '\n') * 0x100000001b3L;
+      numRows += 1;
+      numLines += 1;
+      col = 0;
+    }
+
+    /**
+     * Finishes a last line without a newline and checks the maze as a
+     * whole.
+     */
+    private MazeLayout finish()
+    {
+      if (col > 0 || pendingReturn)
+      {
+        endLine();
+      }
+      if (numRows == 0)
+      {
+        throw new IllegalArgumentException("Maze is empty");
+      }
+      if (numPlayers != 1)
+      {
+        throw new IllegalArgumentException("Maze must have exactly one starting cell 'S', found " + numPlayers);
+      }
+      if (cells.length != size)
+      {
+        cells = Arrays.copyOf(cells, size);
+      }
+      return new MazeLayout(numRows, width, cells, Arrays.copyOf(markers, numMarkers), hash);
+    }
+
+    /**
+     * Returns an exception for an error at the current position.
+     */
+    private IllegalArgumentException error(String message)
+    {
+      return new IllegalArgumentException("Maze line " + (numLines + 1) + ", column " + (col + 1) + ": " + message);
+    }
+  }
+}
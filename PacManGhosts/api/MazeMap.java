@@ -1,26 +1,218 @@
 package api;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Provides a limited read-only view of the cell layout in a Pacman game.
+ * The wall layout is copied into a bitset when the map is constructed,
+ * along with a mask of legal moves for each cell, so queries do not need
+ * to go back to the game's cells.  Bit <code>1 &lt;&lt; d.ordinal()</code>
+ * of a move mask is set if an actor in the cell can move in direction
+ * <code>d</code> without entering a wall; moves off the left and right
+ * edges wrap around through the tunnel.
+ * <p>
+ * In addition to the wall layout, a MazeMap can answer shortest-path
+ * questions: the number of moves between two open cells and the direction
+ * of the first move along a shortest path.  Paths take the tunnel
+ * wraparound on the left and right edges into account.
+ * <p>
+ * Path information is stored as one table per target cell.  For small
+ * mazes all tables are built when the map is constructed, so every query
+ * is a simple array lookup; since the tables never change once built,
+ * maps of the same wall layout share them, so many games of one maze cost
+ * one set of tables.  For large mazes the tables are built on demand
+ * and only a bounded number of them are retained.  For searches that
+ * should not touch every cell, the maze is also available compressed
+ * into a graph of junctions and corridors through getJunctionGraph().
  * @author smkautz
  */
 public class MazeMap
 {
   /**
-   * The underlying game instance
+   * Largest number of open cells for which all path tables are
+   * built when the map is constructed.
+   */
+  private static final int EAGER_LIMIT = 1024;
+
+  /**
+   * Default number of path tables retained in lazy mode.
+   */
+  private static final int DEFAULT_CACHE_SIZE = 64;
+
+  /**
+   * Directions in the order they are explored when building path tables.
+   */
+  private static final Direction[] DIRECTIONS = {Direction.UP, Direction.LEFT, Direction.DOWN, Direction.RIGHT};
+
+  /**
+   * Eager path tables of the maps currently in use, keyed by wall layout.
+   * The maps hold their tables strongly and this map only weakly, so the
+   * tables are kept exactly as long as some map uses them; entries whose
+   * tables have been collected are purged whenever tables are added.
+   * Guarded by its own lock.
+   */
+  private static final Map<Layout, WeakReference<PathTable[]>> SHARED_TABLES = new HashMap<>();
+
+  /**
+   * Number of rows in the maze.
+   */
+  private int numRows;
+
+  /**
+   * Number of columns in the maze.
+   */
+  private int numCols;
+
+  /**
+   * Wall cells in row-major order, 64 cells per word.
+   */
+  private long[] walls;
+
+  /**
+   * Mask of legal move directions for each cell, in row-major order.
+   */
+  private byte[] moveMasks;
+
+  /**
+   * For each cell, in row-major order, its index among the open cells,
+   * or -1 if the cell is a wall.
+   */
+  private int[] openIndex;
+
+  /**
+   * For each open cell index, the row-major index of the cell.
+   */
+  private int[] openCells;
+
+  /**
+   * Path tables indexed by target open cell when all tables are
+   * built up front, otherwise null.
+   */
+  private PathTable[] eagerTables;
+
+  /**
+   * Most recently used path tables, keyed by target open cell, when
+   * tables are built on demand, otherwise null.
    */
-  private PacmanGame game;
-  
+  private Map<Integer, PathTable> lazyTables;
+
   /**
-   * Constructs a MazeMap from the given game.
+   * Junctions and corridors of the maze.
+   */
+  private JunctionGraph junctions;
+
+  /**
+   * Constructs a MazeMap from the given game.  The game's cells must
+   * already be initialized.
    * @param game
    *   given game instance
    */
   public MazeMap(PacmanGame game)
   {
-    this.game = game;
+    numRows = game.getNumRows();
+    numCols = game.getNumColumns();
+
+    walls = new long[(numRows * numCols + 63) / 64];
+    for (int row = 0; row < numRows; ++row)
+    {
+      for (int col = 0; col < numCols; ++col)
+      {
+        if (game.getCell(row, col).isWall())
+        {
+          int index = row * numCols + col;
+          walls[index >> 6] |= 1L << index;
+        }
+      }
+    }
+
+    // neighbors are computed inline rather than with neighbor(), since
+    // this loop visits every cell of what may be a very large maze
+    int up = maskOf(Direction.UP);
+    int down = maskOf(Direction.DOWN);
+    int left = maskOf(Direction.LEFT);
+    int right = maskOf(Direction.RIGHT);
+    moveMasks = new byte[numRows * numCols];
+    for (int row = 0; row < numRows; ++row)
+    {
+      int rowStart = row * numCols;
+      for (int col = 0; col < numCols; ++col)
+      {
+        int cell = rowStart + col;
+        int mask = 0;
+        if (row > 0 && !isWallIndex(cell - numCols))
+        {
+          mask |= up;
+        }
+        if (row < numRows - 1 && !isWallIndex(cell + numCols))
+        {
+          mask |= down;
+        }
+        if (!isWallIndex(col > 0 ? cell - 1 : rowStart + numCols - 1))
+        {
+          mask |= left;
+        }
+        if (!isWallIndex(col < numCols - 1 ? cell + 1 : rowStart))
+        {
+          mask |= right;
+        }
+        moveMasks[cell] = (byte) mask;
+      }
+    }
+
+    int count = 0;
+    openIndex = new int[numRows * numCols];
+    for (int row = 0; row < numRows; ++row)
+    {
+      for (int col = 0; col < numCols; ++col)
+      {
+        if (isWall(row, col))
+        {
+          openIndex[row * numCols + col] = -1;
+        }
+        else
+        {
+          openIndex[row * numCols + col] = count;
+          count += 1;
+        }
+      }
+    }
+    openCells = new int[count];
+    for (int i = 0; i < openIndex.length; ++i)
+    {
+      if (openIndex[i] >= 0)
+      {
+        openCells[openIndex[i]] = i;
+      }
+    }
+
+    if (count <= EAGER_LIMIT)
+    {
+      Layout layout = new Layout(numRows, numCols, walls);
+      eagerTables = sharedTables(layout);
+      if (eagerTables == null)
+      {
+        PathTable[] tables = new PathTable[count];
+        for (int i = 0; i < count; ++i)
+        {
+          tables[i] = buildTable(i);
+        }
+        eagerTables = shareTables(layout, tables);
+      }
+    }
+    else
+    {
+      setLazyPathTables(DEFAULT_CACHE_SIZE);
+    }
+
+    // every enemy decision consults the graph, so it is built up front
+    // rather than during the first frame
+    junctions = new JunctionGraph(this);
   }
-  
+
   /**
    * Returns true if the cell at given row and column is a wall.
    * No bounds checking is done.
@@ -33,9 +225,53 @@ public class MazeMap
    */
   public boolean isWall(int row, int col)
   {
-    return game.getCell(row, col).isWall();
+    return isWallIndex(row * numCols + col);
   }
-  
+
+  /**
+   * Returns the mask of directions in which an actor in the given cell
+   * can move without entering a wall.  No bounds checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   mask of legal directions
+   */
+  public int getMoveMask(int row, int col)
+  {
+    return moveMasks[row * numCols + col];
+  }
+
+  /**
+   * Returns true if an actor in the given cell can move in the given
+   * direction without entering a wall.  No bounds checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @param dir
+   *   direction of the move
+   * @return
+   *   true if the move is legal
+   */
+  public boolean canMove(int row, int col, Direction dir)
+  {
+    return (moveMasks[row * numCols + col] & maskOf(dir)) != 0;
+  }
+
+  /**
+   * Returns the bit representing the given direction in a move mask.
+   * @param dir
+   *   given direction
+   * @return
+   *   mask with only the bit for the given direction set
+   */
+  public static int maskOf(Direction dir)
+  {
+    return 1 << dir.ordinal();
+  }
+
   /**
    * Returns the number of rows in the game.
    * @return
@@ -43,16 +279,367 @@ public class MazeMap
    */
   public int getNumRows()
   {
-    return game.getNumRows();
+    return numRows;
   }
-  
+
   /**
    * Returns the number of columns in the game.
    * @return
    *   number of columns in the game
-   */  
+   */
   public int getNumColumns()
   {
-    return game.getNumColumns();
+    return numCols;
+  }
+
+  /**
+   * Switches this map to building path tables on demand, retaining at
+   * most the given number of tables.  This keeps memory bounded on large
+   * mazes at the cost of a breadth-first search the first time each
+   * target is queried.
+   * @param cacheSize
+   *   maximum number of path tables to retain
+   */
+  public void setLazyPathTables(final int cacheSize)
+  {
+    eagerTables = null;
+    lazyTables = new LinkedHashMap<Integer, PathTable>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, PathTable> eldest)
+      {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Returns true if path tables are built on demand rather than
+   * when the map is constructed.
+   * @return
+   *   true if path tables are built lazily
+   */
+  public boolean hasLazyPathTables()
+  {
+    return lazyTables != null;
+  }
+
+  /**
+   * Returns the number of moves along a shortest path from the first
+   * given cell to the second.  Returns -1 if either cell is outside the
+   * maze or is a wall, or if there is no path.
+   * @param row
+   *   row of starting cell
+   * @param col
+   *   column of starting cell
+   * @param targetRow
+   *   row of target cell
+   * @param targetCol
+   *   column of target cell
+   * @return
+   *   length of a shortest path, or -1
+   */
+  public int getPathDistance(int row, int col, int targetRow, int targetCol)
+  {
+    int from = findOpenIndex(row, col);
+    PathTable table = findTable(targetRow, targetCol);
+    if (from < 0 || table == null)
+    {
+      return -1;
+    }
+    return table.distance[from];
+  }
+
+  /**
+   * Returns the direction of the first move along a shortest path from
+   * the first given cell to the second.  Returns null if the cells are the
+   * same, if either cell is outside the maze or is a wall, or if there is
+   * no path.
+   * @param row
+   *   row of starting cell
+   * @param col
+   *   column of starting cell
+   * @param targetRow
+   *   row of target cell
+   * @param targetCol
+   *   column of target cell
+   * @return
+   *   direction of first move, or null
+   */
+  public Direction getNextHop(int row, int col, int targetRow, int targetCol)
+  {
+    int from = findOpenIndex(row, col);
+    PathTable table = findTable(targetRow, targetCol);
+    if (from < 0 || table == null || table.nextHop[from] < 0)
+    {
+      return null;
+    }
+    return DIRECTIONS[table.nextHop[from]];
+  }
+
+  /**
+   * Returns the maze compressed into a graph of junctions and the
+   * corridors between them.
+   * @return
+   *   junction graph of the maze
+   */
+  public JunctionGraph getJunctionGraph()
+  {
+    return junctions;
+  }
+
+  /**
+   * Returns true if the cell with the given row-major index is a wall.
+   */
+  private boolean isWallIndex(int index)
+  {
+    return (walls[index >> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Returns the open cell index for the given position, or -1 if it is
+   * outside the maze or is a wall.
+   */
+  private int findOpenIndex(int row, int col)
+  {
+    if (row < 0 || row >= numRows || col < 0 || col >= numCols)
+    {
+      return -1;
+    }
+    return openIndex[row * numCols + col];
+  }
+
+  /**
+   * Returns the path table for the given target, building it if
+   * necessary, or null if the target is not an open cell.
+   */
+  private PathTable findTable(int targetRow, int targetCol)
+  {
+    int target = findOpenIndex(targetRow, targetCol);
+    if (target < 0)
+    {
+      return null;
+    }
+    if (eagerTables != null)
+    {
+      return eagerTables[target];
+    }
+    PathTable table = lazyTables.get(target);
+    if (table == null)
+    {
+      table = buildTable(target);
+      lazyTables.put(target, table);
+    }
+    return table;
+  }
+
+  /**
+   * Returns the row-major index of the neighbor of the given cell in the
+   * given direction, wrapping around the left and right edges, or -1
+   * if the neighbor is outside the maze.
+   */
+  private int neighbor(int cell, Direction dir)
+  {
+    int row = cell / numCols;
+    int col = cell % numCols;
+    switch (dir)
+    {
+      case UP:
+        return row > 0 ? cell - numCols : -1;
+      case DOWN:
+        return row < numRows - 1 ? cell + numCols : -1;
+      case LEFT:
+        return col > 0 ? cell - 1 : cell + numCols - 1;
+      case RIGHT:
+        return col < numCols - 1 ? cell + 1 : cell - numCols + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Builds the path table for the given target using a breadth-first
+   * search outward from the target.
+   */
+  private PathTable buildTable(int target)
+  {
+    PathTable table = new PathTable(openCells.length);
+    search(target, table.distance, table.nextHop, new int[openCells.length]);
+    return table;
+  }
+
+  /**
+   * Returns the number of open cells, which is the size of the arrays
+   * filled in by search().
+   */
+  int getOpenCellCount()
+  {
+    return openCells.length;
+  }
+
+  /**
+   * Returns the index among the open cells of the given position, or -1
+   * if it is outside the maze or is a wall.
+   */
+  int getOpenIndex(int row, int col)
+  {
+    return findOpenIndex(row, col);
+  }
+
+  /**
+   * Returns the row-major index of the open cell with the given index.
+   */
+  int getOpenCell(int index)
+  {
+    return openCells[index];
+  }
+
+  /**
+   * Fills in the distance to the given target and the first move toward
+   * it for every open cell, by a breadth-first search outward from the
+   * target.  All arrays are indexed by open cell and must have room for
+   * every open cell; the distance and move of cells that cannot reach the
+   * target are -1.
+   * @param target
+   *   open cell index of the target
+   * @param distance
+   *   receives the distance from each open cell
+   * @param nextHop
+   *   receives the index into DIRECTIONS of the first move from each
+   *   open cell, or -1
+   * @param queue
+   *   scratch space for the search
+   */
+  void search(int target, int[] distance, byte[] nextHop, int[] queue)
+  {
+    Arrays.fill(distance, 0, openCells.length, -1);
+    Arrays.fill(nextHop, 0, openCells.length, (byte) -1);
+    int head = 0;
+    int tail = 0;
+    distance[target] = 0;
+    queue[tail++] = target;
+    while (head < tail)
+    {
+      int current = queue[head++];
+      int mask = moveMasks[openCells[current]];
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        if ((mask & maskOf(DIRECTIONS[d])) == 0)
+        {
+          continue;
+        }
+        int cell = neighbor(openCells[current], DIRECTIONS[d]);
+        if (distance[openIndex[cell]] < 0)
+        {
+          int next = openIndex[cell];
+          distance[next] = distance[current] + 1;
+
+          // the first move from the neighbor goes back the way we came
+          nextHop[next] = (byte) ((d + 2) % DIRECTIONS.length);
+          queue[tail++] = next;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the shared eager tables of the given layout, or null if no
+   * map in use has them.
+   */
+  private static PathTable[] sharedTables(Layout layout)
+  {
+    synchronized (SHARED_TABLES)
+    {
+      WeakReference<PathTable[]> ref = SHARED_TABLES.get(layout);
+      return ref != null ? ref.get() : null;
+    }
+  }
+
+  /**
+   * Shares the given eager tables of the given layout, unless another map
+   * has shared tables for it meanwhile, and returns the tables to use.
+   */
+  private static PathTable[] shareTables(Layout layout, PathTable[] tables)
+  {
+    synchronized (SHARED_TABLES)
+    {
+      PathTable[] existing = sharedTables(layout);
+      if (existing != null)
+      {
+        return existing;
+      }
+      SHARED_TABLES.values().removeIf(ref -> ref.get() == null);
+      SHARED_TABLES.put(layout, new WeakReference<>(tables));
+      return tables;
+    }
+  }
+
+  /**
+   * Returns the direction with the given index into DIRECTIONS, as
+   * stored by search().
+   */
+  static Direction directionAt(int hop)
+  {
+    return DIRECTIONS[hop];
+  }
+
+  /**
+   * Shortest-path distances and first moves from every open cell
+   * to a single target cell.
+   */
+  private static class PathTable
+  {
+    /**
+     * Distance to the target for each open cell, or -1 if unreachable.
+     */
+    private final int[] distance;
+
+    /**
+     * Index into DIRECTIONS of the first move toward the target for
+     * each open cell, or -1 if there is none.
+     */
+    private final byte[] nextHop;
+
+    private PathTable(int size)
+    {
+      distance = new int[size];
+      nextHop = new byte[size];
+    }
+  }
+
+  /**
+   * Dimensions and walls of a maze, which are all that its path tables
+   * depend on.
+   */
+  private static final class Layout
+  {
+    private final int numRows;
+    private final int numCols;
+    private final long[] walls;
+    private final int hash;
+
+    private Layout(int numRows, int numCols, long[] walls)
+    {
+      this.numRows = numRows;
+      this.numCols = numCols;
+      this.walls = walls;
+      hash = 31 * (31 * numRows + numCols) + Arrays.hashCode(walls);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Layout))
+      {
+        return false;
+      }
+      Layout other = (Layout) obj;
+      return numRows == other.numRows && numCols == other.numCols && Arrays.equals(walls, other.walls);
+    }
   }
 }
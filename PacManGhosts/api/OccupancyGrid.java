@@ -0,0 +1,194 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * Records which actors occupy each cell of a maze, so that finding the
+ * actors in a given cell does not require looking at every actor.  Actors
+ * are identified by index, and the actors in each cell are kept in an
+ * intrusive doubly-linked list, so moving an actor from one cell to another
+ * takes constant time and does not allocate.  The grid must be told when
+ * an actor's cell changes, via move().
+ */
+public class OccupancyGrid
+{
+  /**
+   * Number of columns, used to compute cell indices.
+   */
+  private final int numCols;
+
+  /**
+   * First actor in each cell, in row-major order, or -1 if empty.
+   */
+  private final int[] head;
+
+  /**
+   * Number of actors in each cell, in row-major order.
+   */
+  private final int[] count;
+
+  /**
+   * Next actor in the same cell, or -1.
+   */
+  private int[] next;
+
+  /**
+   * Previous actor in the same cell, or -1.
+   */
+  private int[] prev;
+
+  /**
+   * Row-major index of each actor's cell, or -1 if it is not in the grid.
+   */
+  private int[] cellOf;
+
+  /**
+   * Constructs an empty grid for a maze of the given size.
+   * @param numRows
+   *   number of rows in the maze
+   * @param numCols
+   *   number of columns in the maze
+   * @param numActors
+   *   number of actors, which are identified by index from 0 to numActors - 1
+   */
+  public OccupancyGrid(int numRows, int numCols, int numActors)
+  {
+    this.numCols = numCols;
+    head = new int[numRows * numCols];
+    count = new int[numRows * numCols];
+    Arrays.fill(head, -1);
+    next = new int[numActors];
+    prev = new int[numActors];
+    cellOf = new int[numActors];
+    Arrays.fill(cellOf, -1);
+  }
+
+  /**
+   * Records that the given actor now occupies the given cell.  Does nothing
+   * if the actor is already recorded in that cell.  No bounds checking is done.
+   * @param actor
+   *   index of the actor
+   * @param cell
+   *   new cell, packed as by Location.pack()
+   */
+  public void move(int actor, int cell)
+  {
+    int index = Location.packedRow(cell) * numCols + Location.packedCol(cell);
+    if (cellOf[actor] == index)
+    {
+      return;
+    }
+    remove(actor);
+    cellOf[actor] = index;
+    prev[actor] = -1;
+    next[actor] = head[index];
+    if (head[index] >= 0)
+    {
+      prev[head[index]] = actor;
+    }
+    head[index] = actor;
+    count[index] += 1;
+  }
+
+  /**
+   * Removes the given actor from the grid.  Does nothing if the actor
+   * is not in the grid.
+   * @param actor
+   *   index of the actor
+   */
+  public void remove(int actor)
+  {
+    int index = cellOf[actor];
+    if (index < 0)
+    {
+      return;
+    }
+    if (prev[actor] >= 0)
+    {
+      next[prev[actor]] = next[actor];
+    }
+    else
+    {
+      head[index] = next[actor];
+    }
+    if (next[actor] >= 0)
+    {
+      prev[next[actor]] = prev[actor];
+    }
+    count[index] -= 1;
+    cellOf[actor] = -1;
+  }
+
+  /**
+   * Returns the packed cell recorded for the given actor, or -1 if
+   * the actor is not in the grid.
+   * @param actor
+   *   index of the actor
+   * @return
+   *   packed cell, or -1
+   */
+  public int getCell(int actor)
+  {
+    int index = cellOf[actor];
+    return index < 0 ? -1 : Location.pack(index / numCols, index % numCols);
+  }
+
+  /**
+   * Returns true if the given actor is recorded in the given cell.
+   * @param actor
+   *   index of the actor
+   * @param cell
+   *   packed cell
+   * @return
+   *   true if the actor is in the cell
+   */
+  public boolean isIn(int actor, int cell)
+  {
+    return cellOf[actor] == Location.packedRow(cell) * numCols + Location.packedCol(cell);
+  }
+
+  /**
+   * Returns the number of actors in the given cell.  No bounds checking
+   * is done.
+   * @param row
+   *   row of the cell
+   * @param col
+   *   column of the cell
+   * @return
+   *   number of actors in the cell
+   */
+  public int getCount(int row, int col)
+  {
+    return count[row * numCols + col];
+  }
+
+  /**
+   * Returns the first actor in the given cell, or -1 if there are none.
+   * Together with next(), this can be used to visit every actor in a cell:
+   * <pre>
+   * for (int i = grid.first(cell); i >= 0; i = grid.next(i))
+   * </pre>
+   * The order of the actors is unspecified.  No bounds checking is done.
+   * @param cell
+   *   packed cell
+   * @return
+   *   index of an actor in the cell, or -1
+   */
+  public int first(int cell)
+  {
+    return head[Location.packedRow(cell) * numCols + Location.packedCol(cell)];
+  }
+
+  /**
+   * Returns the actor after the given one in the same cell, or -1 if
+   * there are no more.
+   * @param actor
+   *   index of an actor
+   * @return
+   *   index of the next actor in the same cell, or -1
+   */
+  public int next(int actor)
+  {
+    return next[actor];
+  }
+}
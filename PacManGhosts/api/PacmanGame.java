@@ -16,12 +16,15 @@ import static api.Mode.SCATTER;
 
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import hw4.Blinky;
 import hw4.Clyde;
+import hw4.Ghost;
 import hw4.Inky;
 import hw4.Pacman;
+import hw4.PacmanAndFriends;
 import hw4.Pinky;
 
 
@@ -39,6 +42,7 @@ public class PacmanGame
   private static final double PLAYER_SPEED_FACTOR = 0.4;
   private static final int INACTIVE_TIME = 4; // seconds
   private static final int FRIGHTENED_TIME = 6; // seconds
+  private static final int DEATH_TIME = 4; // seconds
 
   /**
    * Number of points for each dot.
@@ -56,11 +60,39 @@ public class PacmanGame
    */
   private static final int BASE_GHOST_POINTS = 200; 
   
+  /**
+   * Largest number of points for catching a ghost.  With the usual
+   * four ghosts this is never reached, but it keeps the score from 
+   * overflowing when there are many more.
+   */
+  private static final int MAX_GHOST_POINTS = 1600;
+  
+  /**
+   * Seed used when none is given to the constructor.
+   */
+  private static final long DEFAULT_SEED = 42;
+  
   /**
    * The cells for this game.
    */
   private MazeCell[][] cells;
 
+  /**
+   * Eaten flags for all cells, in row-major order, 64 cells per word.
+   */
+  private long[] eaten;
+
+  /**
+   * True if the eaten array is shared with a snapshot and must be
+   * copied before it is modified.
+   */
+  private boolean eatenShared;
+
+  /**
+   * Read-only view of the cell layout shared with the actors.
+   */
+  private MazeMap maze;
+
   /**
    * Player controlled by UI.
    */
@@ -76,6 +108,36 @@ public class PacmanGame
    */
   private Color[] colorHints;
 
+  /**
+   * Storage for the enemies when they are kept in a structure of arrays,
+   * otherwise null.
+   */
+  private GhostStore ghostStore;
+
+  /**
+   * Cells occupied by the enemies, indexed the same as the enemies array.
+   */
+  private OccupancyGrid occupancy;
+
+  /**
+   * Indices of the enemies eaten by the player that may not be back home
+   * yet, in no particular order, so that finding the ones that have
+   * arrived does not require looking at every enemy.  Entries for enemies
+   * that are no longer DEAD are dropped when next looked at.
+   */
+  private int[] deadEnemies;
+
+  /**
+   * Number of entries in deadEnemies.
+   */
+  private int deadCount;
+
+  /**
+   * Determines when each enemy first leaves INACTIVE mode, enemies in group
+   * n are released n * INACTIVE_TIME seconds after a reset.
+   */
+  private int[] releaseGroup;
+
   /**
    * Countdowns for number of frames each ghost remains in INACTIVE mode, on
    * startup and on dying.
@@ -113,6 +175,17 @@ public class PacmanGame
    */
   private boolean playerDead = false;
   
+  /**
+   * Countdown for number of frames to remain in the "player dead" state
+   * before everyone is reset.
+   */
+  private int deathCountdown;
+  
+  /**
+   * Number of times updateAll() has been invoked since the game was created.
+   */
+  private int frameCount;
+  
   /**
    * Number of lives for the player.
    */
@@ -134,6 +207,51 @@ public class PacmanGame
    * energizer is eaten.
    */
   private int currentGhostPoints;
+  
+  /**
+   * Seed from which the enemies' random streams were derived.
+   */
+  private long seed;
+  
+  /**
+   * Hash of the maze rows this game was constructed from.
+   */
+  private long mazeHash;
+  
+  /**
+   * Number of stored enemies per ghost marker, or zero for the usual ghosts.
+   */
+  private int ghostsPerMarker;
+  
+  /**
+   * Whether enemies in CHASE mode pursue the player along shortest paths.
+   */
+  private boolean pursuit;
+  
+  /**
+   * Whether actor positions are kept in fixed point.
+   */
+  private boolean fixedPoint;
+  
+  /**
+   * Listener notified of calls to turnPlayer(), possibly null.
+   */
+  private TurnListener turnListener;
+  
+  /**
+   * Timing histograms for the phases of updateAll(), possibly null.
+   */
+  private FrameMetrics metrics;
+  
+  /**
+   * Descriptor passed to the actors, reused every frame.
+   */
+  private Descriptor descriptor;
+
+  /**
+   * Distances to the nearest uneaten pellet, created on first request.
+   */
+  private PelletField pelletField;
 
   /**
    * Constructs a maze based on a 2D grid.  The given strings
@@ -144,109 +262,224 @@ public class PacmanGame
    *   array of strings, one per row of the maze
    */
   public PacmanGame(String[] rows, int frameRate)
+  {
+    this(rows, frameRate, DEFAULT_SEED);
+  }
+
+  /**
+   * Constructs a maze based on a 2D grid, as described for the two-argument
+   * constructor.  Each enemy gets its own random stream derived from the given
+   * seed, so games with the same seed and the same player input always play out
+   * the same way, independent of any other games running at the same time.
+   * @param rows
+   *   array of strings, one per row of the maze
+   * @param frameRate
+   *   frames per second
+   * @param seed
+   *   seed for the enemies' random streams
+   */
+  public PacmanGame(String[] rows, int frameRate, long seed)
+  {
+    this(rows, frameRate, seed, 0);
+  }
+
+  /**
+   * Constructs a maze based on a 2D grid, as described for the two-argument
+   * constructor, optionally with many enemies per ghost marker for stress
+   * testing.  If ghostsPerMarker is positive, each B, P, I or C marker
+   * produces that many enemies of the corresponding kind, all kept in a 
+   * single GhostStore and updated together; otherwise the usual hw4 ghosts
+   * are created, one per marker.  Stored enemies are released from their
+   * inactive state in groups by kind rather than one at a time.
+   * @param rows
+   *   array of strings, one per row of the maze
+   * @param frameRate
+   *   frames per second
+   * @param seed
+   *   seed for the enemies' random streams
+   * @param ghostsPerMarker
+   *   number of stored enemies per marker, or zero for the usual ghosts
+   */
+  public PacmanGame(String[] rows, int frameRate, long seed, int ghostsPerMarker)
+  {
+    this(MazeLayout.fromRows(rows), frameRate, seed, ghostsPerMarker);
+  }
+
+  /**
+   * Constructs a game from the given maze layout, such as one read from a
+   * file by a MazeLoader, with the default seed and the usual ghosts.
+   * @param layout
+   *   layout of the maze
+   * @param frameRate
+   *   frames per second
+   */
+  public PacmanGame(MazeLayout layout, int frameRate)
+  {
+    this(layout, frameRate, DEFAULT_SEED, 0);
+  }
+
+  /**
+   * Constructs a game from the given maze layout, as described for the 
+   * four-argument constructor taking rows.  A game constructed from a
+   * layout is identical to one constructed from the rows of the same maze.
+   * @param layout
+   *   layout of the maze
+   * @param frameRate
+   *   frames per second
+   * @param seed
+   *   seed for the enemies' random streams
+   * @param ghostsPerMarker
+   *   number of stored enemies per marker, or zero for the usual ghosts
+   */
+  public PacmanGame(MazeLayout layout, int frameRate, long seed, int ghostsPerMarker)
   {
     this.frameRate = frameRate;
+    this.seed = seed;
+    this.ghostsPerMarker = ghostsPerMarker;
+    mazeHash = layout.hash;
     double enemyBaseSpeed = MAX_CELLS_PER_SECOND * ENEMY_SPEED_FACTOR / frameRate;
     double playerBaseSpeed = MAX_CELLS_PER_SECOND * PLAYER_SPEED_FACTOR / frameRate;
     ArrayList<Actor> enemyList = new ArrayList<>();
     ArrayList<Color> colorList= new ArrayList<>();
-    Random rand = new Random(42);
-    MazeMap maze = new MazeMap(this);
+    ArrayList<Integer> groupList = new ArrayList<>();
+    SplittableRandom seeds = new SplittableRandom(seed);
     
-    int width = rows[0].length();
-    int height = rows.length;
+    int width = layout.numCols;
+    int height = layout.numRows;
+    byte[] chars = layout.cells;
     cells = new MazeCell[height][width];
+    eaten = new long[(height * width + 63) / 64];
+    
+    // walls and empty cells can never be eaten, so each kind can share
+    // one cell; on large mazes this saves millions of objects
+    MazeCell wall = null;
+    MazeCell empty = null;
     for (int row = 0; row < height; ++row)
     {
-      String s = rows[row];
       for (int col = 0; col < width; ++col)
       {
         MazeCell current; // = new MazeCell();
-        char c = s.charAt(col);
+        int index = row * width + col;
+        char c = (char) chars[index];
         if (c == '#')
         {
-          current = new MazeCell(WALL);
+          if (wall == null)
+          {
+            wall = new MazeCell(WALL, this, index);
+          }
+          current = wall;
         }
         else if (c == '.')
         {
-          current = new MazeCell(DOT);
+          current = new MazeCell(DOT, this, index);
           totalPellets += 1;
         }
         else if (c == '*')
         {
-          current = new MazeCell(ENERGIZER);
+          current = new MazeCell(ENERGIZER, this, index);
         }
         else
         {
-          current = new MazeCell(EMPTY);
+          if (empty == null)
+          {
+            empty = new MazeCell(EMPTY, this, index);
+          }
+          current = empty;
         }
         cells[row][col] = current;
       }
     }
+    
+    // path tables in the map are built from the cells, so they must exist first
+    maze = new MazeMap(this);
+    if (ghostsPerMarker > 0)
+    {
+      ghostStore = new GhostStore(maze, 4 * ghostsPerMarker);
+    }
           
-    for (int row = 0; row < height; ++row)
+    // only the marker cells can hold an actor's starting position
+    for (int index : layout.markers)
     {
-      String s = rows[row];
-      for (int col = 0; col < width; ++col)
+      int row = index / width;
+      int col = index % width;
+      char c = (char) chars[index];
+
+      // check for player initial position
+      if (c == 'S')
       {
-        char c = s.charAt(col);
-      
-          // check for player initial position
-          if (c == 'S')
-          {
-            //public Pacman(TwoDMaze maze, Location home, double baseSpeed, Direction initialDirection)
-            Direction playerDir = findInitialDirection(row, col);
-            Location playerHome = new Location(row, col);
-            player = new Pacman(maze, playerHome, playerBaseSpeed, playerDir);
+        //public Pacman(TwoDMaze maze, Location home, double baseSpeed, Direction initialDirection)
+        Direction playerDir = findInitialDirection(row, col);
+        Location playerHome = new Location(row, col);
+        player = new Pacman(maze, playerHome, playerBaseSpeed, playerDir);
 
-          }
-          else
-          {
-            // check for ghost initial positions
-            
+      }
+      else if (ghostStore != null)
+      {
+        addStoredGhosts(c, row, col, ghostsPerMarker, enemyBaseSpeed, seeds, enemyList, colorList, groupList);
+      }
+      else
+      {
+        // check for ghost initial positions
+        
 // TODO: UNCOMMENT THESE LINES AS YOU GET THE GHOSTS IMPLEMENTED...
-            
-            if (c == 'B')
-            {
-              Location home = new Location(row, col);
-              Direction dir = findInitialDirection(row, col);
-              Location scatterTarget = new Location(-3, width - 3);
-              Actor a = new Blinky(maze, home, enemyBaseSpeed, dir, scatterTarget, rand);
-              enemyList.add(0, a);
-              colorList.add(0, Color.RED);
-            }
-            else if (c == 'P')
-            {
-              Location home = new Location(row, col);
-              Direction dir = findInitialDirection(row, col);
-              Location scatterTarget = new Location(-3, 2);
-              Actor a = new Pinky(maze, home, enemyBaseSpeed, dir, scatterTarget, rand);
-              enemyList.add(a);
-              colorList.add(Color.PINK);
-            }
-            else if (c == 'I')
-            {
-              Location home = new Location(row, col);
-              Direction dir = findInitialDirection(row, col);
-              Location scatterTarget = new Location(height + 1, width - 1);
-              Actor a = new Inky(maze, home, enemyBaseSpeed, dir, scatterTarget, rand);
-              enemyList.add(a);
-              colorList.add(Color.CYAN);
-            }
-            else if (c == 'C')
-            {
-              Location home = new Location(row, col);
-              Direction dir = findInitialDirection(row, col);
-              Location scatterTarget = new Location(height + 1, 0);
-              Actor a = new Clyde(maze, home, enemyBaseSpeed, dir, scatterTarget, rand);
-              enemyList.add(a);
-              colorList.add(Color.ORANGE);
-            }
-          }
-       }
+        
+        if (c == 'B')
+        {
+          Location home = new Location(row, col);
+          Direction dir = findInitialDirection(row, col);
+          Location scatterTarget = new Location(-3, width - 3);
+          Actor a = new Blinky(maze, home, enemyBaseSpeed, dir, scatterTarget, new SplitMixRandom(seeds.nextLong()));
+          enemyList.add(0, a);
+          colorList.add(0, Color.RED);
+        }
+        else if (c == 'P')
+        {
+          Location home = new Location(row, col);
+          Direction dir = findInitialDirection(row, col);
+          Location scatterTarget = new Location(-3, 2);
+          Actor a = new Pinky(maze, home, enemyBaseSpeed, dir, scatterTarget, new SplitMixRandom(seeds.nextLong()));
+          enemyList.add(a);
+          colorList.add(Color.PINK);
+        }
+        else if (c == 'I')
+        {
+          Location home = new Location(row, col);
+          Direction dir = findInitialDirection(row, col);
+          Location scatterTarget = new Location(height + 1, width - 1);
+          Actor a = new Inky(maze, home, enemyBaseSpeed, dir, scatterTarget, new SplitMixRandom(seeds.nextLong()));
+          enemyList.add(a);
+          colorList.add(Color.CYAN);
+        }
+        else if (c == 'C')
+        {
+          Location home = new Location(row, col);
+          Direction dir = findInitialDirection(row, col);
+          Location scatterTarget = new Location(height + 1, 0);
+          Actor a = new Clyde(maze, home, enemyBaseSpeed, dir, scatterTarget, new SplitMixRandom(seeds.nextLong()));
+          enemyList.add(a);
+          colorList.add(Color.ORANGE);
+        }
+      }
     }
     enemies = enemyList.toArray(new Actor[] {}); 
     colorHints = colorList.toArray(new Color[] {});
+    occupancy = new OccupancyGrid(height, width, enemies.length);
+    if (ghostStore != null)
+    {
+      int[] gridIndex = new int[enemies.length];
+      for (int i = 0; i < enemies.length; ++i)
+      {
+        gridIndex[ghostStore.indexOf(enemies[i])] = i;
+      }
+      ghostStore.setOccupancy(occupancy, gridIndex);
+    }
+    deadEnemies = new int[enemies.length];
+    descriptor = new Descriptor(enemies.length);
+    releaseGroup = new int[enemies.length];
+    for (int i = 0; i < enemies.length; ++i)
+    {
+      releaseGroup[i] = ghostStore != null ? groupList.get(i) : i;
+    }
     resetAll();
   }
   
@@ -271,6 +504,117 @@ public class PacmanGame
     return score;
   }
   
+  /**
+   * Returns the number of pellets eaten so far.  Energizers are not counted.
+   * @return
+   *   number of pellets eaten
+   */
+  public int getPelletsEaten()
+  {
+    return pelletCount;
+  }
+  
+  /**
+   * Returns the seed from which the enemies' random streams were derived.
+   * @return
+   *   seed for this game
+   */
+  public long getSeed()
+  {
+    return seed;
+  }
+  
+  /**
+   * Returns the number of stored enemies per ghost marker this game was
+   * constructed with, or zero if it has the usual ghosts.
+   * @return
+   *   enemies per marker
+   */
+  public int getGhostsPerMarker()
+  {
+    return ghostsPerMarker;
+  }
+  
+  /**
+   * Returns a hash of the maze rows this game was constructed from.
+   * @return
+   *   maze hash
+   */
+  public long getMazeHash()
+  {
+    return mazeHash;
+  }
+  
+  /**
+   * Sets a listener to be notified of every call to turnPlayer().
+   * @param listener
+   *   the listener, or null to remove it
+   */
+  public void setTurnListener(TurnListener listener)
+  {
+    turnListener = listener;
+  }
+  
+  /**
+   * Returns the listener notified of calls to turnPlayer(), if any.
+   * @return
+   *   the listener, or null
+   */
+  public TurnListener getTurnListener()
+  {
+    return turnListener;
+  }
+  
+  /**
+   * Returns a 64-bit checksum of the dynamic state of this game: counters,
+   * score, lives, and the position, direction and mode of every actor.
+   * Two games constructed from the same maze and seed that receive the
+   * same input on the same frames have the same checksum.
+   * @return
+   *   checksum of the game state
+   */
+  public long getStateChecksum()
+  {
+    long h = mix(0, frameCount);
+    h = mix(h, score);
+    h = mix(h, lives);
+    h = mix(h, pelletCount);
+    h = mix(h, globalModeIndex);
+    h = mix(h, modeCountdown);
+    h = mix(h, frightenedCountdown);
+    h = mix(h, deathCountdown);
+    h = mix(h, currentGhostPoints);
+    h = mix(h, checksum(player));
+    for (int i = 0; i < enemies.length; ++i)
+    {
+      h = mix(h, checksum(enemies[i]));
+      h = mix(h, inactiveTimer[i]);
+    }
+    return h;
+  }
+  
+  /**
+   * Returns a 64-bit hash of the given maze rows.
+   * @param rows
+   *   maze rows
+   * @return
+   *   hash of the rows
+   */
+  public static long hashMaze(String[] rows)
+  {
+    // FNV-1a
+    long h = 0xcbf29ce484222325L;
+    for (String row : rows)
+    {
+      for (int i = 0; i < row.length(); ++i)
+      {
+        h = (h ^ row.charAt(i)) * 0x100000001b3L;
+      }
+      h = (h ^ '\n') * 0x100000001b3L;
+    }
+    return h;
+  }
+  
   /**
    * Returns the number of frames per second assumed in this game instance.
    * @return
@@ -304,6 +648,79 @@ public class PacmanGame
     return cells[row][col];
   }
 
+  /**
+   * Returns the read-only view of the cell layout that is shared
+   * with the player and enemies.
+   * @return
+   *   maze map for this game
+   */
+  public MazeMap getMazeMap()
+  {
+    return maze;
+  }
+
+  /**
+   * Returns the grid recording which cells the enemies occupy.  Enemy
+   * indices in the grid are the same as in the array returned by 
+   * getEnemies().  The grid is brought up to date during each call to
+   * updateAll() and resetAll().
+   * @return
+   *   occupancy grid for the enemies
+   */
+  public OccupancyGrid getOccupancy()
+  {
+    return occupancy;
+  }
+
+  /**
+   * Returns the flow field toward the player's cell shared by the
+   * enemies, creating it on the first call.  From then on it is retargeted
+   * on every frame and rebuilt only when queried after the player has
+   * changed cells.  It is created by setPursuit() when pursuit is turned
+   * on, and is otherwise not needed by the game.
+   * @return
+   *   flow field toward the player
+   */
+  public FlowField getChaseField()
+  {
+    FlowField field = descriptor.getChaseField();
+    if (field == null)
+    {
+      field = new FlowField(maze);
+      int cell = descriptor.getPlayerCell();
+      field.setTarget(Location.packedRow(cell), Location.packedCol(cell));
+      descriptor.setChaseField(field);
+    }
+    return field;
+  }
+
+  /**
+   * Returns the distance field to the nearest uneaten pellet, creating
+   * it on the first call.  From then on the field is updated as pellets
+   * are eaten, so it should only be requested by code that uses it.
+   * @return
+   *   pellet distance field for this game
+   */
+  public PelletField getPelletField()
+  {
+    if (pelletField == null)
+    {
+      pelletField = new PelletField(this);
+    }
+    return pelletField;
+  }
+
+  /**
+   * Returns the structure-of-arrays storage for the enemies, or null
+   * if the enemies are ordinary objects.
+   * @return
+   *   storage for the enemies, or null
+   */
+  public GhostStore getGhostStore()
+  {
+    return ghostStore;
+  }
+
   /**
    * Returns the number of rows in the grid for this maze.
    * @return
@@ -375,6 +792,28 @@ public class PacmanGame
     return lives;
   }
   
+  /**
+   * Returns the number of frames that have been simulated so far, that is,
+   * the number of times updateAll() has been invoked.
+   * @return
+   *   number of frames simulated
+   */
+  public int getFrameCount()
+  {
+    return frameCount;
+  }
+  
+  /**
+   * Returns the number of frames remaining before the game is reset
+   * following the player's death, or zero if the player is alive.
+   * @return
+   *   frames remaining in the death pause
+   */
+  public int getDeathCountdown()
+  {
+    return deathCountdown;
+  }
+  
   /**
    * Attempt to turn the player in response to user control.
    * @param newDir
@@ -382,6 +821,10 @@ public class PacmanGame
    */
   public void turnPlayer(Direction newDir)
   {
+    if (turnListener != null)
+    {
+      turnListener.playerTurned(frameCount, newDir);
+    }
     if (!playerDead && !levelOver())
     {
       player.tryTurn(newDir);
@@ -409,39 +852,417 @@ public class PacmanGame
   {
     // reset everyone to home position and revive the player
     playerDead = false;
+    deathCountdown = 0;
     currentGhostPoints = BASE_GHOST_POINTS;
     player.reset();
     for (int i = 0; i < enemies.length; ++i)
     {
       Actor g = enemies[i];
       g.reset();
+      occupancy.move(i, g.getCurrentCell());
     }
 
     // restart counters for mode and activity
     globalModeIndex = 0;    
     modeCountdown = MODE_TIMES[0] * frameRate;
-    inactiveTimer = new int[enemies.length];    
+    if (inactiveTimer == null || inactiveTimer.length != enemies.length)
+    {
+      inactiveTimer = new int[enemies.length];
+    }
     for (int i = 0; i < enemies.length; ++i)
     {
-      if (i == 0)
+      if (releaseGroup[i] == 0)
       {
         inactiveTimer[i] = 1;  // should not be less than or equal to zero
       }
       else
       {
-        inactiveTimer[i] = i * INACTIVE_TIME * frameRate;  // 4 seconds each?
+        inactiveTimer[i] = releaseGroup[i] * INACTIVE_TIME * frameRate;  // 4 seconds each?
       }
     }
   }
   
+  /**
+   * Returns a snapshot of the complete dynamic state of this game,
+   * including the eaten pellets, the position, mode and random state of
+   * every actor, all timers, the score and the number of lives.
+   * @return
+   *   new snapshot of this game
+   */
+  public GameSnapshot snapshot()
+  {
+    return snapshot(null);
+  }
+
+  /**
+   * Takes a snapshot of this game into the given snapshot if it is
+   * compatible with this game, otherwise into a new one.  Reusing a
+   * snapshot avoids allocation when many are taken, as in a search.
+   * @param reuse
+   *   snapshot to overwrite, or null
+   * @return
+   *   the snapshot taken
+   */
+  public GameSnapshot snapshot(GameSnapshot reuse)
+  {
+    GameSnapshot s = reuse;
+    if (s == null || !s.isCompatible(this))
+    {
+      s = new GameSnapshot(mazeHash, getNumColumns(), enemies.length);
+    }
+    s.eaten = eaten;
+    eatenShared = true;
+    s.frameCount = frameCount;
+    s.score = score;
+    s.lives = lives;
+    s.pelletCount = pelletCount;
+    s.globalModeIndex = globalModeIndex;
+    s.modeCountdown = modeCountdown;
+    s.frightenedCountdown = frightenedCountdown;
+    s.playerDead = playerDead;
+    s.deathCountdown = deathCountdown;
+    s.currentGhostPoints = currentGhostPoints;
+    System.arraycopy(inactiveTimer, 0, s.inactiveTimer, 0, inactiveTimer.length);
+    player.saveState(s.player);
+    for (int i = 0; i < enemies.length; ++i)
+    {
+      enemies[i].saveState(s.enemies[i]);
+    }
+    return s;
+  }
+
+  /**
+   * Restores this game to the state recorded in the given snapshot,
+   * which may have been taken from this game or from another game built
+   * from the same maze.  The snapshot is unchanged and can be restored
+   * again.
+   * @param s
+   *   snapshot to restore
+   * @throws IllegalArgumentException
+   *   if the snapshot was taken from an incompatible game
+   */
+  public void restore(GameSnapshot s)
+  {
+    if (!s.isCompatible(this))
+    {
+      throw new IllegalArgumentException("Snapshot is from a different maze");
+    }
+    if (pelletField != null && eaten != s.eaten)
+    {
+      pelletField.invalidate();
+    }
+    eaten = s.eaten;
+    eatenShared = true;
+    frameCount = s.frameCount;
+    score = s.score;
+    lives = s.lives;
+    pelletCount = s.pelletCount;
+    globalModeIndex = s.globalModeIndex;
+    modeCountdown = s.modeCountdown;
+    frightenedCountdown = s.frightenedCountdown;
+    playerDead = s.playerDead;
+    deathCountdown = s.deathCountdown;
+    currentGhostPoints = s.currentGhostPoints;
+    System.arraycopy(s.inactiveTimer, 0, inactiveTimer, 0, inactiveTimer.length);
+    player.restoreState(s.player);
+    deadCount = 0;
+    for (int i = 0; i < enemies.length; ++i)
+    {
+      enemies[i].restoreState(s.enemies[i]);
+      occupancy.move(i, enemies[i].getCurrentCell());
+      if (enemies[i].getMode() == DEAD)
+      {
+        addDead(i);
+      }
+    }
+  }
+
+  /**
+   * Sets whether the enemies in CHASE mode pursue the player along
+   * shortest paths through the maze instead of heading for the target
+   * cell of their kind.  All pursuing enemies read their moves from the
+   * same flow field toward the player, which is rebuilt at most once per
+   * change of the player's cell.  Pursuit is off by default.
+   * @param p
+   *   true for pursuit, false for the usual targeting
+   */
+  public void setPursuit(boolean p)
+  {
+    pursuit = p;
+    if (p)
+    {
+      getChaseField();
+    }
+    if (ghostStore != null)
+    {
+      ghostStore.setPursuit(p);
+    }
+    for (Actor a : enemies)
+    {
+      if (a instanceof Ghost)
+      {
+        ((Ghost) a).setPursuit(p);
+      }
+    }
+  }
+
+  /**
+   * Sets whether the player and the enemies keep their positions in fixed
+   * point, in units of 1/256 of a cell, instead of in doubles.  Movement
+   * is then exact integer arithmetic, so actors land on cell centers and
+   * edges exactly; speeds are rounded to the nearest 1/256 of a cell per
+   * frame, so a game in fixed point does not play out the same as one in
+   * doubles.  The mode should be set before the first frame.  Enemies in
+   * a ghost store keep using doubles.  Fixed point is off by default.
+   * @param f
+   *   true for fixed point, false for doubles
+   */
+  public void setFixedPoint(boolean f)
+  {
+    fixedPoint = f;
+    player.setFixedPoint(f);
+    for (Actor a : enemies)
+    {
+      if (a instanceof PacmanAndFriends)
+      {
+        ((PacmanAndFriends) a).setFixedPoint(f);
+      }
+    }
+  }
+
+  /**
+   * Returns true if enemies in CHASE mode pursue the player.
+   * @return
+   *   true if pursuit is on
+   */
+  public boolean isPursuit()
+  {
+    return pursuit;
+  }
+
+  /**
+   * Returns true if actor positions are kept in fixed point.
+   * @return
+   *   true if fixed point is on
+   */
+  public boolean isFixedPoint()
+  {
+    return fixedPoint;
+  }
+
+  /**
+   * Sets the metrics in which the duration of each phase of updateAll()
+   * is recorded.  Timing is off, and costs nothing, when no metrics are set.
+   * @param m
+   *   metrics to record into, or null to stop timing
+   */
+  public void setMetrics(FrameMetrics m)
+  {
+    metrics = m;
+  }
+
+  /**
+   * Returns the metrics in which phase durations are being recorded.
+   * @return
+   *   metrics, or null if timing is off
+   */
+  public FrameMetrics getMetrics()
+  {
+    return metrics;
+  }
+
   /**
    * Method invoked once per frame to update all aspects of game, player, and enemy states.
    */
   public void updateAll()
   {
     if (levelOver()) return;
+    if (metrics == null)
+    {
+      updateFrame();
+    }
+    else
+    {
+      long start = System.nanoTime();
+      updateFrame();
+      metrics.record(FramePhase.FRAME, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Simulates up to the given number of frames with no player input,
+   * with exactly the same result as calling updateAll() that many times.
+   * Runs of frames in which nothing happens but actors moving within
+   * their cells and countdowns ticking are not simulated one by one:
+   * the game works out when the next event is due, such as an actor
+   * reaching a new cell or the center of one, a countdown expiring, a
+   * pellet being eaten or a collision, and jumps straight to it, and only
+   * the frame with the event runs through updateAll().  This makes long
+   * headless runs much cheaper, in particular while the player is dead
+   * or standing still.  Frames that are jumped over are not recorded in
+   * the metrics; frames with events are, as usual.
+   * @param maxFrames
+   *   number of frames to simulate
+   * @return
+   *   number of frames simulated, which is less than maxFrames only if
+   *   the level ends
+   */
+  public int fastForward(int maxFrames)
+  {
+    int count = 0;
+    while (count < maxFrames && !levelOver())
+    {
+      int frames = framesUntilEvent(maxFrames - count);
+      if (frames > 0)
+      {
+        glide(frames);
+        count += frames;
+      }
+      else
+      {
+        updateAll();
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the number of upcoming frames, up to the given limit, in
+   * which updateFrame() would do nothing but count down and move actors
+   * within their cells.
+   */
+  private int framesUntilEvent(int limit)
+  {
+    if (playerDead)
+    {
+      return Math.max(0, Math.min(limit, deathCountdown - 1));
+    }
+
+    int frames = limit;
+    for (int i = 0; i < inactiveTimer.length; ++i)
+    {
+      if (inactiveTimer[i] > 0)
+      {
+        frames = Math.min(frames, inactiveTimer[i] - 1);
+      }
+    }
+    if (frightenedCountdown > 0)
+    {
+      frames = Math.min(frames, frightenedCountdown - 1);
+    }
+    else if (globalModeIndex < GLOBAL_MODES.length - 1)
+    {
+      frames = Math.min(frames, modeCountdown - 1);
+    }
+    if (frames <= 0)
+    {
+      return 0;
+    }
+
+    // a pellet under the player, an enemy that can collide with it, or
+    // a dead enemy at home would be dealt with on the next frame
+    int playerCell = player.getCurrentCell();
+    MazeCell c = getCell(Location.packedRow(playerCell), Location.packedCol(playerCell));
+    if ((c.getType() == DOT || c.getType() == ENERGIZER) && c.canEat())
+    {
+      return 0;
+    }
+    for (int i = occupancy.first(playerCell); i >= 0; i = occupancy.next(i))
+    {
+      if (enemies[i].getMode() != DEAD)
+      {
+        return 0;
+      }
+    }
+    for (int k = 0; k < deadCount; ++k)
+    {
+      int i = deadEnemies[k];
+      if (enemies[i].getMode() == DEAD && occupancy.isIn(i, enemies[i].getHomeCell()))
+      {
+        return 0;
+      }
+    }
+
+    frames = player.framesUntilEvent(frames);
+    if (ghostStore != null)
+    {
+      frames = ghostStore.framesUntilEvent(frames);
+    }
+    else
+    {
+      for (int i = 0; i < enemies.length && frames > 0; ++i)
+      {
+        frames = enemies[i] instanceof PacmanAndFriends ? ((PacmanAndFriends) enemies[i]).framesUntilEvent(frames) : 0;
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * Advances the game by the given number of frames, which must be at
+   * most framesUntilEvent() of them, by applying what updateFrame()
+   * would have done in all of those frames at once.
+   */
+  private void glide(int frames)
+  {
+    frameCount += frames;
+    if (playerDead)
+    {
+      deathCountdown -= frames;
+      return;
+    }
+    for (int i = 0; i < inactiveTimer.length; ++i)
+    {
+      if (inactiveTimer[i] > 0)
+      {
+        inactiveTimer[i] -= frames;
+      }
+    }
+    if (frightenedCountdown > 0)
+    {
+      frightenedCountdown -= frames;
+    }
+    else if (globalModeIndex < GLOBAL_MODES.length - 1)
+    {
+      modeCountdown -= frames;
+    }
+    player.glide(frames);
+    if (ghostStore != null)
+    {
+      ghostStore.glide(frames);
+    }
+    else
+    {
+      for (Actor a : enemies)
+      {
+        ((PacmanAndFriends) a).glide(frames);
+      }
+    }
+  }
+
+  /**
+   * Simulates one frame, recording the duration of each phase if
+   * metrics are set.
+   */
+  private void updateFrame()
+  {
+    frameCount += 1;
+
+    // while the player is dead, everything stays frozen until the
+    // death countdown expires, then everyone goes back home
+    if (playerDead)
+    {
+      deathCountdown -= 1;
+      if (deathCountdown <= 0 && !levelOver())
+      {
+        resetAll();
+      }
+      return;
+    }
 
     Descriptor desc = makeDescriptor();
+    long t = startPhase();
     
     // decrement inactive timers and activate enemies as needed
     for (int i = 0; i < inactiveTimer.length; ++i)
@@ -456,6 +1277,8 @@ public class PacmanGame
       }
     }
 
+    t = endPhase(FramePhase.INACTIVE_TIMERS, t);
+
     // if we are currently in a frightened mode countdown, then
     // decrement the count
     if (frightenedCountdown > 0)
@@ -506,16 +1329,30 @@ public class PacmanGame
       }
     }
 
+    t = endPhase(FramePhase.MODE_COUNTDOWN, t);
+
     // update player and enemy positions
     player.update(desc);
-    for (Actor a : enemies)
+    t = endPhase(FramePhase.PLAYER_UPDATE, t);
+    if (ghostStore != null)
+    {
+      // the store tells the occupancy grid when an enemy changes cells
+      ghostStore.updateAll(desc);
+    }
+    else
     {
-      a.update(desc);
+      for (int i = 0; i < enemies.length; ++i)
+      {
+        enemies[i].update(desc);
+        occupancy.move(i, enemies[i].getCurrentCell());
+      }
     }
 
+    t = endPhase(FramePhase.GHOST_UPDATES, t);
+
     // collect pellets, adjust score
-    Location p = player.getCurrentLocation();
-    MazeCell c = getCell(p.row(), p.col());
+    int playerCell = player.getCurrentCell();
+    MazeCell c = getCell(Location.packedRow(playerCell), Location.packedCol(playerCell));
     if (c.getType() == CellType.DOT)
     {
       if (c.canEat())
@@ -543,67 +1380,213 @@ public class PacmanGame
       }
     }
 
-    // check collisions
-    for (Actor a : enemies)
+    t = endPhase(FramePhase.PELLETS, t);
+
+    // check collisions, only enemies in the player's cell can collide
+    for (int i = occupancy.first(playerCell); i >= 0; i = occupancy.next(i))
     {
-      if (a.getCurrentLocation().equals(player.getCurrentLocation()))
+      Actor a = enemies[i];
+      if (a.getMode() == FRIGHTENED)
       {
-        if (a.getMode() == FRIGHTENED)
-        {
-          a.setMode(DEAD, desc);
-          score += currentGhostPoints;
-          currentGhostPoints *= 2;
-        }
-        else if (a.getMode() != DEAD)
-        {
-          lives -= 1;
-          playerDead = true;
-          
-          // TODO - have this triggered by UI after a delay
-          try
-          {
-            Thread.sleep(4000);
-          }
-          catch (InterruptedException cantHappen)
-          {
-            // ignore
-          }
-          if (!levelOver())
-          {
-            resetAll();
-          }
-        }
+        a.setMode(DEAD, desc);
+        addDead(i);
+        score += currentGhostPoints;
+        currentGhostPoints = Math.min(currentGhostPoints * 2, MAX_GHOST_POINTS);
+      }
+      else if (a.getMode() != DEAD && !playerDead)
+      {
+        // the pause before resetting is counted down in frames by
+        // subsequent calls to updateAll(), rather than blocking here
+        lives -= 1;
+        playerDead = true;
+        deathCountdown = DEATH_TIME * frameRate;
       }
     }
 
+    t = endPhase(FramePhase.COLLISIONS, t);
+
     // check for dead ghosts back to home, restart inactive timers as needed
-    for (int i = 0; i < enemies.length; ++i)
+    int k = 0;
+    while (k < deadCount)
     {
+      int i = deadEnemies[k];
       Actor a = enemies[i];
-      if (a.getMode() == DEAD)
+      if (a.getMode() != DEAD)
       {
-        if (a.getCurrentLocation().equals(a.getHomeLocation()))
-        {
-          a.setMode(INACTIVE, desc);
-          a.reset();
-          inactiveTimer[i] = INACTIVE_TIME * frameRate;
-        }
+        deadEnemies[k] = deadEnemies[--deadCount];
+      }
+      else if (occupancy.isIn(i, a.getHomeCell()))
+      {
+        a.setMode(INACTIVE, desc);
+        a.reset();
+        occupancy.move(i, a.getCurrentCell());
+        inactiveTimer[i] = INACTIVE_TIME * frameRate;
+        deadEnemies[k] = deadEnemies[--deadCount];
+      }
+      else
+      {
+        k += 1;
       }
     }
+    endPhase(FramePhase.DEAD_GHOSTS, t);
   }
 
   /**
-   * Make a descriptor for current game state.
+   * Adds an enemy to the list of DEAD enemies.  An enemy eaten again
+   * after an energizer turned it from DEAD to FRIGHTENED may already be
+   * listed, so the list grows if needed; the second entry is dropped once
+   * the first has sent the enemy home.
+   */
+  private void addDead(int i)
+  {
+    if (deadCount == deadEnemies.length)
+    {
+      deadEnemies = Arrays.copyOf(deadEnemies, 2 * deadCount);
+    }
+    deadEnemies[deadCount++] = i;
+  }
+
+  /**
+   * Returns the start time of a phase, or zero if timing is off.
+   */
+  private long startPhase()
+  {
+    return metrics == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Records the duration of a phase that started at the given time and
+   * returns the start time of the next phase.  Does nothing and returns 
+   * zero if timing is off.
+   */
+  private long endPhase(FramePhase phase, long start)
+  {
+    if (metrics == null)
+    {
+      return 0;
+    }
+    long now = System.nanoTime();
+    metrics.record(phase, now - start);
+    return now;
+  }
+
+  /**
+   * Returns the eaten flag for the cell with the given row-major index.
+   */
+  boolean isEaten(int index)
+  {
+    return (eaten[index >> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Sets the eaten flag for the cell with the given row-major index,
+   * first copying the flags if they are shared with a snapshot.
+   */
+  void setEaten(int index, boolean value)
+  {
+    if (isEaten(index) == value)
+    {
+      return;
+    }
+    if (eatenShared)
+    {
+      eaten = eaten.clone();
+      eatenShared = false;
+    }
+    eaten[index >> 6] ^= 1L << index;
+    if (pelletField != null)
+    {
+      if (value)
+      {
+        pelletField.pelletEaten(index);
+      }
+      else
+      {
+        pelletField.invalidate();
+      }
+    }
+  }
+
+  /**
+   * Refresh the reusable descriptor for current game state.
    * @return
    */
   private Descriptor makeDescriptor()
   {
-    Location enemyLoc = null;
-    if (enemies.length > 0)
+    descriptor.update(frameCount, player, enemies);
+    return descriptor;
+  }
+
+  /**
+   * Adds the given number of stored enemies for the ghost marker at the 
+   * given position, if the character is a ghost marker.  Blinky's copies go
+   * at the front of the list, since enemy 0 is treated as Blinky.
+   */
+  private void addStoredGhosts(char c, int row, int col, int count, double baseSpeed, SplittableRandom seeds,
+      ArrayList<Actor> enemyList, ArrayList<Color> colorList, ArrayList<Integer> groupList)
+  {
+    int kind;
+    Location scatterTarget;
+    Color color;
+    int height = getNumRows();
+    int width = getNumColumns();
+    if (c == 'B')
+    {
+      kind = GhostStore.BLINKY;
+      scatterTarget = new Location(-3, width - 3);
+      color = Color.RED;
+    }
+    else if (c == 'P')
+    {
+      kind = GhostStore.PINKY;
+      scatterTarget = new Location(-3, 2);
+      color = Color.PINK;
+    }
+    else if (c == 'I')
+    {
+      kind = GhostStore.INKY;
+      scatterTarget = new Location(height + 1, width - 1);
+      color = Color.CYAN;
+    }
+    else if (c == 'C')
     {
-      enemyLoc = enemies[0].getCurrentLocation();
+      kind = GhostStore.CLYDE;
+      scatterTarget = new Location(height + 1, 0);
+      color = Color.ORANGE;
     }
-    return new Descriptor(player.getCurrentLocation(), player.getCurrentDirection(), enemyLoc);
+    else
+    {
+      return;
+    }
+    Location home = new Location(row, col);
+    Direction dir = findInitialDirection(row, col);
+    for (int n = 0; n < count; ++n)
+    {
+      Actor a = ghostStore.getView(ghostStore.add(kind, home, baseSpeed, dir, scatterTarget, seeds.nextLong()));
+      int position = kind == GhostStore.BLINKY ? 0 : enemyList.size();
+      enemyList.add(position, a);
+      colorList.add(position, color);
+      groupList.add(position, kind);
+    }
+  }
+
+  /**
+   * Returns a checksum of the position, direction and mode of an actor.
+   */
+  private static long checksum(Actor a)
+  {
+    long h = mix(Double.doubleToLongBits(a.getRowExact()), Double.doubleToLongBits(a.getColExact()));
+    h = mix(h, a.getCurrentDirection() == null ? -1 : a.getCurrentDirection().ordinal());
+    return mix(h, a.getMode() == null ? -1 : a.getMode().ordinal());
+  }
+  
+  /**
+   * Combines a hash with a value.
+   */
+  private static long mix(long h, long value)
+  {
+    h = (h ^ value) * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
   }
 
   /**
@@ -616,19 +1599,19 @@ public class PacmanGame
   private Direction findInitialDirection(int row, int col)
   {
     // check in order up, left, down, right for a non-wall
-    if (!getCell(row - 1, col).isWall())
+    if (maze.canMove(row, col, UP))
     {
       return UP;
     }
-    else if (!getCell(row, col - 1).isWall())
+    else if (maze.canMove(row, col, LEFT))
     {
       return LEFT;
     }
-    else if (!getCell(row + 1, col).isWall())
+    else if (maze.canMove(row, col, DOWN))
     {
       return DOWN;
     }
-    else if (!getCell(row, col + 1).isWall())
+    else if (maze.canMove(row, col, RIGHT))
     {
       return RIGHT;
     }
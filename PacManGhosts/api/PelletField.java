@@ -0,0 +1,379 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * Distance from every open cell of a game's maze to the nearest uneaten
+ * pellet, where both dots and energizers count as pellets, together with
+ * the first move toward that pellet.  Queries are array lookups.
+ * <p>
+ * The field is built by a breadth-first search starting from all of the
+ * uneaten pellets at once, which also records, for each cell, which
+ * pellet is nearest.  When a pellet is eaten, only the cells for which
+ * it was the nearest can change, so only those are searched again,
+ * starting from the cells around them whose distances are still valid.
+ * Pellets reappearing, for example when a snapshot is restored, cannot
+ * be handled this way, so the field is marked stale and rebuilt in full
+ * at the next query.
+ * <p>
+ * A game creates its field the first time it is asked for one and keeps
+ * it up to date from then on; games that never ask pay nothing.  Paths
+ * take the tunnel wraparound on the left and right edges into account.
+ */
+public class PelletField
+{
+  /**
+   * Distance of a cell that has not yet been reached by a search.
+   */
+  private static final int UNSET = Integer.MAX_VALUE;
+
+  /**
+   * All directions, indexed by ordinal.
+   */
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  private final PacmanGame game;
+  private final MazeMap map;
+  private final int numRows;
+  private final int numCols;
+
+  /**
+   * Whether each cell, in row-major order, is a DOT or ENERGIZER cell,
+   * eaten or not.
+   */
+  private final boolean[] pellet;
+
+  /**
+   * Distance to the nearest uneaten pellet for each cell, or -1 if the
+   * cell is a wall or no pellet can be reached.
+   */
+  private final int[] dist;
+
+  /**
+   * Row-major index of the nearest uneaten pellet for each cell, or -1.
+   */
+  private final int[] nearest;
+
+  /**
+   * Ordinal of the first move toward the nearest pellet for each cell,
+   * or -1 if the cell holds a pellet or no pellet can be reached.
+   */
+  private final byte[] toward;
+
+  /**
+   * Tentative distances during an update; UNSET if none.
+   */
+  private final int[] candidate;
+
+  /**
+   * Breadth-first search queue.
+   */
+  private final int[] queue;
+
+  /**
+   * Cells whose nearest pellet was eaten, during an update.
+   */
+  private final int[] region;
+
+  /**
+   * Cells of the region next to valid cells, as distance in the high
+   * half and cell in the low half, so they sort by distance.
+   */
+  private long[] seeds = new long[64];
+
+  /**
+   * True if pellets have reappeared since the field was built.
+   */
+  private boolean stale = true;
+
+  /**
+   * Constructs a field for the given game.  The field is built when
+   * first queried.
+   */
+  PelletField(PacmanGame game)
+  {
+    this.game = game;
+    map = game.getMazeMap();
+    numRows = game.getNumRows();
+    numCols = game.getNumColumns();
+    int size = numRows * numCols;
+    pellet = new boolean[size];
+    for (int i = 0; i < size; ++i)
+    {
+      CellType type = game.getCell(i / numCols, i % numCols).getType();
+      pellet[i] = type == CellType.DOT || type == CellType.ENERGIZER;
+    }
+    dist = new int[size];
+    nearest = new int[size];
+    toward = new byte[size];
+    candidate = new int[size];
+    Arrays.fill(candidate, UNSET);
+    queue = new int[size];
+    region = new int[size];
+  }
+
+  /**
+   * Returns the number of moves from the given cell to the nearest
+   * uneaten pellet, which is zero if the cell holds one.  Returns -1 if
+   * the cell is a wall or no uneaten pellet can be reached.  No bounds
+   * checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   distance to the nearest pellet, or -1
+   */
+  public int getDistance(int row, int col)
+  {
+    refresh();
+    return dist[row * numCols + col];
+  }
+
+  /**
+   * Returns the direction of the first move along a shortest path from
+   * the given cell to the nearest uneaten pellet.  Returns null if the
+   * cell holds a pellet, is a wall, or no pellet can be reached.  No
+   * bounds checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   direction toward the nearest pellet, or null
+   */
+  public Direction getDirection(int row, int col)
+  {
+    refresh();
+    int d = toward[row * numCols + col];
+    return d < 0 ? null : DIRECTIONS[d];
+  }
+
+  /**
+   * Returns the uneaten pellet nearest to the given cell, as a cell
+   * packed by Location.pack(), or -1 if no pellet can be reached.  When
+   * several pellets are equally near, any one of them may be returned.
+   * No bounds checking is done.
+   * @param row
+   *   given row
+   * @param col
+   *   given column
+   * @return
+   *   packed cell of the nearest pellet, or -1
+   */
+  public int getNearestPellet(int row, int col)
+  {
+    refresh();
+    int p = nearest[row * numCols + col];
+    return p < 0 ? -1 : Location.pack(p / numCols, p % numCols);
+  }
+
+  /**
+   * Updates the field after the pellet in the given cell is eaten.
+   */
+  void pelletEaten(int index)
+  {
+    if (stale || nearest[index] != index)
+    {
+      return;
+    }
+
+    // collect the cells that had the eaten pellet as their nearest
+    int size = 0;
+    region[size++] = index;
+    nearest[index] = -1;
+    for (int i = 0; i < size; ++i)
+    {
+      int cell = region[i];
+      int mask = map.getMoveMask(cell / numCols, cell % numCols);
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        if ((mask & (1 << d)) != 0)
+        {
+          int next = neighbor(cell, d);
+          if (nearest[next] == index)
+          {
+            nearest[next] = -1;
+            region[size++] = next;
+          }
+        }
+      }
+    }
+
+    // the region's distances can only come from its border with the
+    // rest of the field
+    int numSeeds = 0;
+    for (int i = 0; i < size; ++i)
+    {
+      int cell = region[i];
+      dist[cell] = UNSET;
+      toward[cell] = -1;
+    }
+    for (int i = 0; i < size; ++i)
+    {
+      int cell = region[i];
+      int mask = map.getMoveMask(cell / numCols, cell % numCols);
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        if ((mask & (1 << d)) != 0)
+        {
+          int next = neighbor(cell, d);
+          if (dist[next] != UNSET && nearest[next] >= 0 && dist[next] + 1 < candidate[cell])
+          {
+            candidate[cell] = dist[next] + 1;
+            nearest[cell] = nearest[next];
+            toward[cell] = (byte) d;
+          }
+        }
+      }
+      if (candidate[cell] != UNSET)
+      {
+        if (numSeeds == seeds.length)
+        {
+          seeds = Arrays.copyOf(seeds, 2 * numSeeds);
+        }
+        seeds[numSeeds++] = ((long) candidate[cell] << 32) | cell;
+      }
+    }
+    Arrays.sort(seeds, 0, numSeeds);
+
+    // breadth-first search through the region, merging the seeds in
+    // order of distance with the cells reached from them
+    int head = 0;
+    int tail = 0;
+    int next = 0;
+    while (head < tail || next < numSeeds)
+    {
+      int cell;
+      if (next == numSeeds || (head < tail && candidate[queue[head]] <= (int) (seeds[next] >>> 32)))
+      {
+        cell = queue[head++];
+      }
+      else
+      {
+        cell = (int) seeds[next++];
+      }
+      if (dist[cell] != UNSET)
+      {
+        continue;
+      }
+      dist[cell] = candidate[cell];
+      tail = expand(cell, tail);
+    }
+
+    for (int i = 0; i < size; ++i)
+    {
+      int cell = region[i];
+      candidate[cell] = UNSET;
+      if (dist[cell] == UNSET)
+      {
+        dist[cell] = -1;
+      }
+    }
+  }
+
+  /**
+   * Marks the field as needing to be rebuilt, because pellets may have
+   * reappeared.
+   */
+  void invalidate()
+  {
+    stale = true;
+  }
+
+  /**
+   * Rebuilds the field if it is stale.
+   */
+  private void refresh()
+  {
+    if (!stale)
+    {
+      return;
+    }
+    Arrays.fill(dist, UNSET);
+    Arrays.fill(nearest, -1);
+    Arrays.fill(toward, (byte) -1);
+    int tail = 0;
+    for (int i = 0; i < pellet.length; ++i)
+    {
+      if (pellet[i] && !game.isEaten(i))
+      {
+        dist[i] = 0;
+        nearest[i] = i;
+        queue[tail++] = i;
+      }
+    }
+    for (int head = 0; head < tail; ++head)
+    {
+      int cell = queue[head];
+      int mask = map.getMoveMask(cell / numCols, cell % numCols);
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        if ((mask & (1 << d)) != 0)
+        {
+          int n = neighbor(cell, d);
+          if (dist[n] == UNSET)
+          {
+            dist[n] = dist[cell] + 1;
+            nearest[n] = nearest[cell];
+            toward[n] = (byte) (d ^ 1);
+            queue[tail++] = n;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < dist.length; ++i)
+    {
+      if (dist[i] == UNSET)
+      {
+        dist[i] = -1;
+      }
+    }
+    stale = false;
+  }
+
+  /**
+   * Offers the neighbors of a newly settled cell in the region a path
+   * through it, adding those it improves to the queue.  Returns the new
+   * tail of the queue.
+   */
+  private int expand(int cell, int tail)
+  {
+    int mask = map.getMoveMask(cell / numCols, cell % numCols);
+    for (int d = 0; d < DIRECTIONS.length; ++d)
+    {
+      if ((mask & (1 << d)) != 0)
+      {
+        int n = neighbor(cell, d);
+        if (dist[n] == UNSET && dist[cell] + 1 < candidate[n])
+        {
+          candidate[n] = dist[cell] + 1;
+          nearest[n] = nearest[cell];
+          toward[n] = (byte) (d ^ 1);
+          queue[tail++] = n;
+        }
+      }
+    }
+    return tail;
+  }
+
+  /**
+   * Returns the row-major index of the neighbor of the given open cell
+   * in the direction with the given ordinal, wrapping around the left
+   * and right edges.  The move must be legal.
+   */
+  private int neighbor(int cell, int d)
+  {
+    switch (DIRECTIONS[d])
+    {
+      case LEFT:
+        return cell % numCols > 0 ? cell - 1 : cell + numCols - 1;
+      case RIGHT:
+        return cell % numCols < numCols - 1 ? cell + 1 : cell - numCols + 1;
+      case UP:
+        return cell - numCols;
+      default:
+        return cell + numCols;
+    }
+  }
+}
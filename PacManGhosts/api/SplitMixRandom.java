@@ -0,0 +1,55 @@
+package api;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * SplitMix64 pseudorandom generator whose entire state is a single long
+ * that can be read and restored, so that a game snapshot can capture
+ * exactly where each enemy is in its random sequence.
+ */
+public class SplitMixRandom implements RandomGenerator
+{
+  /**
+   * Current state; advanced by a fixed odd constant for each value.
+   */
+  private long state;
+
+  /**
+   * Constructs a generator with the given seed.
+   * @param seed
+   *   initial state
+   */
+  public SplitMixRandom(long seed)
+  {
+    state = seed;
+  }
+
+  @Override
+  public long nextLong()
+  {
+    long z = state += 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Returns the current state of this generator.
+   * @return
+   *   current state
+   */
+  public long getState()
+  {
+    return state;
+  }
+
+  /**
+   * Restores a state previously returned by getState().
+   * @param state
+   *   the state to restore
+   */
+  public void setState(long state)
+  {
+    this.state = state;
+  }
+}
@@ -0,0 +1,18 @@
+package api;
+
+/**
+ * Callback notified each time the player is asked to turn, for example
+ * so that the input to a game can be recorded.
+ */
+public interface TurnListener
+{
+  /**
+   * Called from PacmanGame.turnPlayer(), whether or not the turn
+   * actually takes effect.
+   * @param frame
+   *   number of frames simulated before the call
+   * @param dir
+   *   requested direction
+   */
+  void playerTurned(int frame, Direction dir);
+}
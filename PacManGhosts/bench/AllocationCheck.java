@@ -0,0 +1,93 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+
+import api.Direction;
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.PlayerController;
+import ui.RunGame;
+
+/**
+ * Checks that simulating a frame of a Pacman game allocates no memory
+ * once the game has warmed up.  Uses the per-thread allocation counter
+ * from com.sun.management.ThreadMXBean, so it requires a HotSpot-based
+ * JVM.  Exits with a nonzero status if the check fails.
+ */
+public class AllocationCheck
+{
+  /**
+   * Frames simulated before measuring, so that the JIT has settled.
+   */
+  private static final int WARMUP_FRAMES = 200000;
+  
+  /**
+   * Frames simulated while measuring.
+   */
+  private static final int MEASURED_FRAMES = 100000;
+  
+  /**
+   * Largest acceptable average number of bytes allocated per frame.
+   */
+  private static final double MAX_BYTES_PER_FRAME = 1.0;
+  
+  private static final Direction[] DIRECTIONS = Direction.values();
+  
+  public static void main(String[] args)
+  {
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    
+    simulate(WARMUP_FRAMES, bean, threadId);
+    long bytes = simulate(MEASURED_FRAMES, bean, threadId);
+    double perFrame = (double) bytes / MEASURED_FRAMES;
+    System.out.printf("%d bytes allocated over %d frames (%.3f bytes/frame)%n", bytes, MEASURED_FRAMES, perFrame);
+    
+    if (perFrame > MAX_BYTES_PER_FRAME)
+    {
+      System.out.println("FAILED: expected at most " + MAX_BYTES_PER_FRAME + " bytes/frame");
+      System.exit(1);
+    }
+    System.out.println("OK");
+  }
+  
+  /**
+   * Simulates the given number of frames on the classic maze, starting
+   * a new game whenever a level ends, and returns the number of bytes
+   * allocated by this thread while frames were being simulated.  
+   */
+  private static long simulate(int frames, com.sun.management.ThreadMXBean bean, long threadId)
+  {
+    long total = 0;
+    int remaining = frames;
+    while (remaining > 0)
+    {
+      // game construction allocates, so it is not counted
+      HeadlessEngine engine = new HeadlessEngine(new PacmanGame(RunGame.MAIN1, 60), new WanderController());
+      long before = bean.getThreadAllocatedBytes(threadId);
+      remaining -= engine.run(remaining);
+      total += bean.getThreadAllocatedBytes(threadId) - before;
+    }
+    return total;
+  }
+  
+  /**
+   * Controller that picks a new direction every few frames using
+   * a simple linear congruential generator, without allocating.
+   */
+  private static class WanderController implements PlayerController
+  {
+    private long state = 12345;
+    
+    @Override
+    public Direction chooseDirection(PacmanGame game)
+    {
+      if (game.getFrameCount() % 20 != 0)
+      {
+        return null;
+      }
+      state = state * 6364136223846793005L + 1442695040888963407L;
+      return DIRECTIONS[(int) ((state >>> 33) % DIRECTIONS.length)];
+    }
+  }
+}
@@ -0,0 +1,454 @@
+package bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+import api.ActorState;
+import api.Descriptor;
+import api.Direction;
+import api.GameSnapshot;
+import api.MazeMap;
+import api.Mode;
+import api.PacmanGame;
+import hw4.Ghost;
+import hw4.Pacman;
+import sim.HeadlessEngine;
+import sim.MazeGenerator;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Benchmark suite for the engine's hot paths, for catching performance
+ * regressions.  Each benchmark is run on the test mazes, the classic
+ * maze and two large generated mazes:
+ * <ul>
+ * <li>frame: one frame of a game in progress, that is, the controller's
+ * choice and PacmanGame.updateAll(), starting over from a snapshot
+ * whenever the level ends
+ * <li>game: a full headless game, including constructing the game,
+ * fast-forwarded as in BatchRunner and capped at GAME_FRAMES frames
+ * <li>ghostDecision: one Ghost.calculateNextCell() decision partway
+ * through a game, made through setMode() so that SCATTER, CHASE and
+ * FRIGHTENED take turns
+ * <li>tryTurn: one Pacman.tryTurn() partway through a game, including
+ * restoring the player's state beforehand so that every call starts
+ * from the same position
+ * <li>isWall: one MazeMap.isWall() on a random cell
+ * </ul>
+ * Each benchmark runs on each maze in a JVM of its own, so that what the
+ * JIT compiler learned from one does not slow down or speed up another.
+ * It is calibrated to a batch size, run for a few warmup iterations and
+ * then for a few measured ones of a fixed duration.  The report gives the
+ * mean time per operation with its standard deviation across iterations,
+ * and the bytes allocated per operation and the
+ * allocation rate, from the per-thread allocation counter of
+ * com.sun.management.ThreadMXBean, so it requires a HotSpot-based JVM.
+ * <p>
+ * Arguments, if any, select what is run: a benchmark runs on a maze if
+ * one of them is part of the benchmark's name and the maze's name joined
+ * by a slash.  For example, "frame/large" runs the frame benchmark on
+ * the large mazes and "MAIN1" runs every benchmark on the classic maze.
+ */
+public class EngineBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int WARMUP_ITERATIONS = 6;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final long ITERATION_NANOS = 300_000_000L;
+
+  /**
+   * Shortest time of a batch of operations, so that the cost of reading
+   * the clock does not count.
+   */
+  private static final long MIN_BATCH_NANOS = 1_000_000L;
+
+  /**
+   * Frames played before the decision benchmarks take their state.
+   */
+  private static final int MIDGAME_FRAMES = 600;
+
+  /**
+   * Largest number of frames of a game in the game benchmark, since the
+   * player may survive for a long time on the large mazes.
+   */
+  private static final int GAME_FRAMES = 50_000;
+
+  /**
+   * First argument of a forked JVM that runs a single benchmark.
+   */
+  private static final String FORK_FLAG = "-fork";
+
+  private static final String[] BENCHMARK_NAMES = {"frame", "game", "ghostDecision", "tryTurn", "isWall"};
+  private static final String[] MAZE_NAMES = {"TEST0", "TEST1", "TEST2", "MAIN1", "large255", "large1023"};
+  private static final Direction[] DIRECTIONS = Direction.values();
+  private static final Mode[] MOVING_MODES = {Mode.SCATTER, Mode.CHASE, Mode.FRIGHTENED};
+
+  /**
+   * Keeps the results of the operations from being optimized away.
+   */
+  private static volatile long sink;
+
+  public static void main(String[] args) throws IOException, InterruptedException
+  {
+    if (args.length == 3 && args[0].equals(FORK_FLAG))
+    {
+      runOne(args[1], args[2]);
+      return;
+    }
+
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    System.out.printf("%-14s %-10s %14s %10s %12s %10s%n", "benchmark", "maze", "ns/op", "stdev", "B/op", "MB/s");
+    for (String b : BENCHMARK_NAMES)
+    {
+      for (String m : MAZE_NAMES)
+      {
+        if (selected(args, b, m))
+        {
+          new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), EngineBenchmark.class.getName(),
+              FORK_FLAG, b, m).inheritIO().start().waitFor();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the named benchmark on the named maze in this JVM and prints a
+   * line of the report.
+   */
+  private static void runOne(String name, String mazeName)
+  {
+    Benchmark b = createBenchmark(name);
+    if (!b.setup(createMaze(mazeName)))
+    {
+      System.out.printf("%-14s %-10s %14s%n", name, mazeName, "n/a");
+      return;
+    }
+    double[] result = measure(b);
+    System.out.printf("%-14s %-10s %14.1f %10.1f %12.1f %10.1f%n", name, mazeName,
+        result[0], result[1], result[2], result[3]);
+  }
+
+  private static Benchmark createBenchmark(String name)
+  {
+    switch (name)
+    {
+      case "frame":
+        return new FrameBenchmark();
+      case "game":
+        return new GameBenchmark();
+      case "ghostDecision":
+        return new GhostDecisionBenchmark();
+      case "tryTurn":
+        return new TryTurnBenchmark();
+      case "isWall":
+        return new IsWallBenchmark();
+      default:
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+  }
+
+  private static String[] createMaze(String name)
+  {
+    switch (name)
+    {
+      case "TEST0":
+        return RunGame.TEST0;
+      case "TEST1":
+        return RunGame.TEST1;
+      case "TEST2":
+        return RunGame.TEST2;
+      case "MAIN1":
+        return RunGame.MAIN1;
+      case "large255":
+        return new MazeGenerator(255, 256, 255).generate();
+      case "large1023":
+        return new MazeGenerator(1023, 1024, 1023).generate();
+      default:
+        throw new IllegalArgumentException("Unknown maze: " + name);
+    }
+  }
+
+  /**
+   * Returns true if there are no arguments or one of them is part of the
+   * benchmark name and maze name joined by a slash.
+   */
+  private static boolean selected(String[] args, String benchmark, String maze)
+  {
+    String id = benchmark + "/" + maze;
+    for (String arg : args)
+    {
+      if (id.contains(arg))
+      {
+        return true;
+      }
+    }
+    return args.length == 0;
+  }
+
+  /**
+   * Runs a benchmark that has been set up and returns the mean time per
+   * operation in nanoseconds, its standard deviation across iterations,
+   * the bytes allocated per operation and the allocation rate in
+   * megabytes per second.
+   */
+  private static double[] measure(Benchmark b)
+  {
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    int batch = 1;
+    long start = System.nanoTime();
+    sink = b.run(batch);
+    while (System.nanoTime() - start < MIN_BATCH_NANOS && batch < (1 << 24))
+    {
+      batch *= 2;
+      start = System.nanoTime();
+      sink = b.run(batch);
+    }
+
+    double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+    long totalOps = 0;
+    long totalNanos = 0;
+    long totalBytes = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; ++i)
+    {
+      long ops = 0;
+      long bytes = bean.getThreadAllocatedBytes(threadId);
+      start = System.nanoTime();
+      long elapsed;
+      do
+      {
+        sink = b.run(batch);
+        ops += batch;
+        elapsed = System.nanoTime() - start;
+      }
+      while (elapsed < ITERATION_NANOS);
+      bytes = bean.getThreadAllocatedBytes(threadId) - bytes;
+
+      if (i >= WARMUP_ITERATIONS)
+      {
+        nanosPerOp[i - WARMUP_ITERATIONS] = (double) elapsed / ops;
+        totalOps += ops;
+        totalNanos += elapsed;
+        totalBytes += bytes;
+      }
+    }
+
+    double mean = 0;
+    for (double x : nanosPerOp)
+    {
+      mean += x;
+    }
+    mean /= MEASURED_ITERATIONS;
+    double variance = 0;
+    for (double x : nanosPerOp)
+    {
+      variance += (x - mean) * (x - mean);
+    }
+    variance /= MEASURED_ITERATIONS - 1;
+    double bytesPerOp = (double) totalBytes / totalOps;
+    double megabytesPerSecond = totalBytes / 1e6 / (totalNanos / 1e9);
+    return new double[] {mean, Math.sqrt(variance), bytesPerOp, megabytesPerSecond};
+  }
+
+  /**
+   * Plays a new game on the given maze for MIDGAME_FRAMES frames, or until
+   * the level ends, and returns it.
+   */
+  private static PacmanGame midgame(String[] rows)
+  {
+    PacmanGame game = new PacmanGame(rows, FRAME_RATE, 1);
+    new HeadlessEngine(game, new RandomWalkController(1, 20)).run(MIDGAME_FRAMES);
+    return game;
+  }
+
+  /**
+   * One benchmark of the suite.
+   */
+  private abstract static class Benchmark
+  {
+    /**
+     * Prepares to run on the given maze.  Returns false if the benchmark
+     * does not apply to it.
+     */
+    abstract boolean setup(String[] rows);
+
+    /**
+     * Performs the given number of operations and returns a value that
+     * depends on all of them.
+     */
+    abstract long run(int ops);
+  }
+
+  private static class FrameBenchmark extends Benchmark
+  {
+    private PacmanGame game;
+    private HeadlessEngine engine;
+    private GameSnapshot start;
+
+    @Override
+    boolean setup(String[] rows)
+    {
+      game = new PacmanGame(rows, FRAME_RATE, 1);
+      engine = new HeadlessEngine(game, new RandomWalkController(1, 20));
+      start = game.snapshot();
+      return true;
+    }
+
+    @Override
+    long run(int ops)
+    {
+      for (int i = 0; i < ops; ++i)
+      {
+        if (!engine.step())
+        {
+          game.restore(start);
+          engine.step();
+        }
+      }
+      return game.getStateChecksum();
+    }
+  }
+
+  private static class GameBenchmark extends Benchmark
+  {
+    private String[] rows;
+    private long seed;
+
+    @Override
+    boolean setup(String[] rows)
+    {
+      this.rows = rows;
+      return true;
+    }
+
+    @Override
+    long run(int ops)
+    {
+      long result = 0;
+      for (int i = 0; i < ops; ++i)
+      {
+        seed += 1;
+        HeadlessEngine engine = new HeadlessEngine(new PacmanGame(rows, FRAME_RATE, seed),
+            new RandomWalkController(seed, 20));
+        engine.setFastForward(true);
+        result += engine.run(GAME_FRAMES);
+      }
+      return result;
+    }
+  }
+
+  private static class GhostDecisionBenchmark extends Benchmark
+  {
+    private Ghost[] ghosts;
+    private Descriptor desc;
+
+    @Override
+    boolean setup(String[] rows)
+    {
+      PacmanGame game = midgame(rows);
+      int count = 0;
+      for (int i = 0; i < game.getEnemies().length; ++i)
+      {
+        if (game.getEnemies()[i] instanceof Ghost)
+        {
+          count += 1;
+        }
+      }
+      if (count == 0)
+      {
+        return false;
+      }
+      ghosts = new Ghost[count];
+      count = 0;
+      for (int i = 0; i < game.getEnemies().length; ++i)
+      {
+        if (game.getEnemies()[i] instanceof Ghost)
+        {
+          ghosts[count++] = (Ghost) game.getEnemies()[i];
+        }
+      }
+      Pacman player = game.getPlayer();
+      Direction dir = player.getCurrentDirection() != null ? player.getCurrentDirection() : Direction.LEFT;
+      desc = new Descriptor(player.getCurrentLocation(), dir, ghosts[0].getCurrentLocation());
+      return true;
+    }
+
+    @Override
+    long run(int ops)
+    {
+      long result = 0;
+      for (int i = 0; i < ops; ++i)
+      {
+        Ghost g = ghosts[i % ghosts.length];
+        g.setMode(MOVING_MODES[i % MOVING_MODES.length], desc);
+        result += g.getNextCell().row();
+      }
+      return result;
+    }
+  }
+
+  private static class TryTurnBenchmark extends Benchmark
+  {
+    private Pacman player;
+    private final ActorState saved = new ActorState();
+
+    @Override
+    boolean setup(String[] rows)
+    {
+      player = midgame(rows).getPlayer();
+      player.saveState(saved);
+      return true;
+    }
+
+    @Override
+    long run(int ops)
+    {
+      long result = 0;
+      for (int i = 0; i < ops; ++i)
+      {
+        player.restoreState(saved);
+        player.tryTurn(DIRECTIONS[i & 3]);
+        result += player.getCurrentDirection().ordinal();
+      }
+      return result;
+    }
+  }
+
+  private static class IsWallBenchmark extends Benchmark
+  {
+    private static final int CELLS = 4096;
+    private MazeMap map;
+    private final int[] cellRows = new int[CELLS];
+    private final int[] cellCols = new int[CELLS];
+
+    @Override
+    boolean setup(String[] rows)
+    {
+      map = new PacmanGame(rows, FRAME_RATE).getMazeMap();
+      SplittableRandom rand = new SplittableRandom(rows.length);
+      for (int i = 0; i < CELLS; ++i)
+      {
+        cellRows[i] = rand.nextInt(rows.length);
+        cellCols[i] = rand.nextInt(rows[0].length());
+      }
+      return true;
+    }
+
+    @Override
+    long run(int ops)
+    {
+      long result = 0;
+      for (int i = 0; i < ops; ++i)
+      {
+        if (map.isWall(cellRows[i & (CELLS - 1)], cellCols[i & (CELLS - 1)]))
+        {
+          result += 1;
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.MazeGenerator;
+import sim.PlayerController;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Checks that PacmanGame.fastForward() gives the same result as stepping
+ * frame by frame.  For each of several mazes, enemy configurations (the
+ * usual ghosts, and one or three stored enemies per marker) and input
+ * patterns, a reference game is stepped one frame at a time and its
+ * state checksum recorded after every frame.  A second game receives the
+ * same input but is fast-forwarded between inputs, in jumps whose lengths
+ * are capped at random so that they end on arbitrary frames, and its
+ * checksum is compared with the reference on every frame it lands on.
+ * Every case is run with positions in doubles and again in fixed point.
+ * Then reports how much faster fast-forwarding is.  Exits with a nonzero
+ * status if any checksum differs.
+ */
+public class FastForwardCheck
+{
+  private static final int FRAME_RATE = 60;
+  private static final int FRAMES = 30000;
+  private static final int GAMES = 4;
+  private static final int TIMING_FRAMES = 2000000;
+
+  /**
+   * Frames between random player turns; long intervals leave the player
+   * resting against walls, short ones keep it moving.
+   */
+  private static final int[] INTERVALS = {7, 20, 300};
+
+  public static void main(String[] args)
+  {
+    String[][] mazes = {RunGame.MAIN1, RunGame.TEST1, RunGame.TEST2, new MazeGenerator(31, 40, 5).generate()};
+    int simulated = 0;
+    int compared = 0;
+    int failures = 0;
+    for (boolean fixed : new boolean[] {false, true})
+    {
+      for (int m = 0; m < mazes.length; ++m)
+      {
+        for (int ghostsPerMarker : new int[] {0, 1, 3})
+        {
+          for (int interval : INTERVALS)
+          {
+            long seed = 1000 * m + 100 * ghostsPerMarker + interval;
+            for (int game = 0; game < GAMES; ++game)
+            {
+              int[] counts = compare(mazes[m], ghostsPerMarker, interval, seed + game, fixed);
+              simulated += counts[0];
+              compared += counts[1];
+              if (counts[2] >= 0)
+              {
+                failures += 1;
+                System.out.printf("FAILED: maze %d, %d per marker, interval %d, seed %d%s: first difference at frame %d%n",
+                    m, ghostsPerMarker, interval, seed + game, fixed ? ", fixed point" : "", counts[2]);
+              }
+            }
+          }
+        }
+      }
+    }
+    System.out.println(simulated + " frames simulated, checksums compared on " + compared + " of them");
+
+    for (int interval : INTERVALS)
+    {
+      double stepped = time(interval, false);
+      double skipped = time(interval, true);
+      System.out.printf("interval %3d: %6.1f ns/frame stepped, %6.1f ns/frame fast-forwarded (%.1fx)%n",
+          interval, stepped, skipped, stepped / skipped);
+    }
+
+    if (failures > 0)
+    {
+      System.exit(1);
+    }
+    System.out.println("OK");
+  }
+
+  /**
+   * Runs the reference and fast-forwarded games and returns the number of
+   * frames simulated, the number compared and the first frame that
+   * differed, or -1.
+   */
+  private static int[] compare(String[] rows, int ghostsPerMarker, int interval, long seed, boolean fixed)
+  {
+    PacmanGame reference = new PacmanGame(rows, FRAME_RATE, seed, ghostsPerMarker);
+    reference.setFixedPoint(fixed);
+    HeadlessEngine stepper = new HeadlessEngine(reference, new RandomWalkController(seed, interval));
+    long[] checksums = new long[FRAMES + 1];
+    checksums[0] = reference.getStateChecksum();
+    int end = 0;
+    while (end < FRAMES && stepper.step())
+    {
+      end += 1;
+      checksums[end] = reference.getStateChecksum();
+    }
+
+    PacmanGame game = new PacmanGame(rows, FRAME_RATE, seed, ghostsPerMarker);
+    game.setFixedPoint(fixed);
+    PlayerController controller = new RandomWalkController(seed, interval);
+    HeadlessEngine engine = new HeadlessEngine(game, controller);
+    SplittableRandom caps = new SplittableRandom(seed);
+    int compared = 0;
+    while (game.getFrameCount() < end && !game.levelOver())
+    {
+      int quiet = controller.getQuietFrames(game);
+      if (quiet == 0)
+      {
+        engine.step();
+      }
+      else
+      {
+        int cap = 1 + caps.nextInt(2 * interval);
+        game.fastForward(Math.min(Math.min(quiet, cap), end - game.getFrameCount()));
+      }
+      compared += 1;
+      if (game.getStateChecksum() != checksums[game.getFrameCount()])
+      {
+        return new int[] {end, compared, game.getFrameCount()};
+      }
+    }
+    if (game.getFrameCount() != end)
+    {
+      return new int[] {end, compared, game.getFrameCount()};
+    }
+    return new int[] {end, compared, -1};
+  }
+
+  /**
+   * Returns the average time per frame of headless runs on the classic
+   * maze, with or without fast-forwarding.
+   */
+  private static double time(int interval, boolean fastForward)
+  {
+    long nanos = 0;
+    int frames = 0;
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      nanos = 0;
+      frames = 0;
+      long seed = 0;
+      while (frames < TIMING_FRAMES)
+      {
+        PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE, seed++);
+        HeadlessEngine engine = new HeadlessEngine(game, new RandomWalkController(seed, interval));
+        engine.setFastForward(fastForward);
+        long start = System.nanoTime();
+        frames += engine.run(TIMING_FRAMES - frames);
+        nanos += System.nanoTime() - start;
+      }
+    }
+    return (double) nanos / frames;
+  }
+}
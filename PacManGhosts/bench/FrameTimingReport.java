@@ -0,0 +1,55 @@
+package bench;
+
+import api.FrameMetrics;
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Plays the classic maze with phase timing turned on and prints the
+ * percentiles of each phase of updateAll(), first with the usual four
+ * ghosts and then with a large number of stored enemies, so that the
+ * phase that dominates the frame time under load is easy to see.  An
+ * optional argument gives the number of stored enemies per ghost marker.
+ */
+public class FrameTimingReport
+{
+  private static final int FRAME_RATE = 60;
+  private static final int FRAMES = 20000;
+  private static final int DEFAULT_GHOSTS_PER_MARKER = 500;
+
+  public static void main(String[] args)
+  {
+    int ghostsPerMarker = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GHOSTS_PER_MARKER;
+
+    System.out.println("Classic ghosts");
+    report(0);
+    System.out.println();
+    System.out.println(4 * ghostsPerMarker + " stored enemies");
+    report(ghostsPerMarker);
+  }
+
+  /**
+   * Plays games with the given number of stored enemies per marker until
+   * the frame count is reached, after a warmup, and prints the report.
+   */
+  private static void report(int ghostsPerMarker)
+  {
+    FrameMetrics metrics = new FrameMetrics();
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      metrics.reset();
+      int frames = 0;
+      long seed = 0;
+      while (frames < FRAMES)
+      {
+        PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE, seed, ghostsPerMarker);
+        game.setMetrics(metrics);
+        frames += new HeadlessEngine(game, new RandomWalkController(seed, 20)).run(FRAMES - frames);
+        seed += 1;
+      }
+    }
+    metrics.printReport(System.out);
+  }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import api.LatencyHistogram;
+import api.PacmanGame;
+import sim.GameHost;
+import sim.GameSession;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Finds how many real-time sessions of the classic maze a GameHost can
+ * carry.  Runs the host with an increasing number of sessions, each with
+ * a random-walking player and replaced by a new one when its level ends,
+ * and for each number reports the frames run per second, the percentiles
+ * of the tick lag and the frames dropped.  A host is keeping up as long
+ * as the lag stays well under a frame (16.7 ms at 60 frames per second)
+ * and no frames are dropped.  Optional arguments give the largest number
+ * of sessions and the number of workers.
+ */
+public class GameHostBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int DEFAULT_MAX_SESSIONS = 16000;
+  private static final long STEP_MILLIS = 3000;
+
+  /**
+   * Time after each increase during which lag is not recorded, while the
+   * new sessions settle into their schedule.
+   */
+  private static final long SETTLE_MILLIS = 1000;
+
+  /**
+   * Frames dropped by sessions that have been replaced.
+   */
+  private static long retiredDropped;
+
+  public static void main(String[] args) throws InterruptedException
+  {
+    int maxSessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_SESSIONS;
+    GameHost host = args.length > 1 ? new GameHost(Integer.parseInt(args[1])) : new GameHost();
+    host.start();
+
+    System.out.println(host.getWorkerCount() + " workers");
+    System.out.printf("%10s %12s %10s %10s %10s %10s%n", "sessions", "frames/s", "p50 ms", "p99 ms", "max ms",
+        "dropped");
+    List<GameSession> sessions = new ArrayList<>();
+    long seed = 0;
+    for (int count = 1000; count <= maxSessions; count *= 2)
+    {
+      while (sessions.size() < count)
+      {
+        sessions.add(host.addSession(new PacmanGame(RunGame.MAIN1, FRAME_RATE, seed), new RandomWalkController(seed, 20)));
+        seed += 1;
+      }
+      seed = replaceFinished(host, sessions, seed, SETTLE_MILLIS);
+
+      host.getLag().reset();
+      long dropped = countDropped(sessions);
+      long start = System.nanoTime();
+      seed = replaceFinished(host, sessions, seed, STEP_MILLIS);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      LatencyHistogram lag = host.getLag();
+      System.out.printf("%10d %12.0f %10.2f %10.2f %10.2f %10d%n", count, lag.getCount() / seconds,
+          lag.getPercentile(50) / 1e6, lag.getPercentile(99) / 1e6, lag.getMax() / 1e6,
+          countDropped(sessions) - dropped);
+    }
+    host.stop();
+  }
+
+  /**
+   * Waits for the given time, replacing finished sessions with new ones
+   * every few milliseconds, and returns the next seed.
+   */
+  private static long replaceFinished(GameHost host, List<GameSession> sessions, long seed, long millis)
+      throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + millis;
+    while (System.currentTimeMillis() < end)
+    {
+      Thread.sleep(10);
+      for (int i = 0; i < sessions.size(); ++i)
+      {
+        if (sessions.get(i).isFinished())
+        {
+          retiredDropped += sessions.get(i).getDroppedFrames();
+          sessions.set(i, host.addSession(new PacmanGame(RunGame.MAIN1, FRAME_RATE, seed),
+              new RandomWalkController(seed, 20)));
+          seed += 1;
+        }
+      }
+    }
+    return seed;
+  }
+
+  private static long countDropped(List<GameSession> sessions)
+  {
+    long n = retiredDropped;
+    for (GameSession s : sessions)
+    {
+      n += s.getDroppedFrames();
+    }
+    return n;
+  }
+}
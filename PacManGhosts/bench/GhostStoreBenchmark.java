@@ -0,0 +1,69 @@
+package bench;
+
+import api.Actor;
+import api.Descriptor;
+import api.GhostStore;
+import api.Mode;
+import api.PacmanGame;
+import ui.RunGame;
+
+/**
+ * Measures the cost of updating a large number of enemies kept in a
+ * GhostStore, on the classic maze.  Reports the time to move every enemy
+ * once, and the time for a complete call to PacmanGame.updateAll(), and
+ * compares both with the 60 FPS frame budget.
+ */
+public class GhostStoreBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int GHOSTS_PER_MARKER = 2500;
+  private static final int FRAMES = 5000;
+  private static final double BUDGET_NANOS = 1e9 / FRAME_RATE;
+
+  public static void main(String[] args)
+  {
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE, pass, GHOSTS_PER_MARKER);
+      GhostStore store = game.getGhostStore();
+      Actor p = game.getPlayer();
+      Descriptor desc = new Descriptor(p.getCurrentLocation(), p.getCurrentDirection(), game.getEnemies()[0].getCurrentLocation());
+      for (int i = 0; i < store.size(); ++i)
+      {
+        store.setMode(i, Mode.CHASE);
+      }
+
+      long start = System.nanoTime();
+      for (int f = 0; f < FRAMES; ++f)
+      {
+        store.updateAll(desc);
+      }
+      double moveNanos = (double) (System.nanoTime() - start) / FRAMES;
+
+      // full frames, counting only those in which the player is alive,
+      // since nothing moves during the pause after a death
+      PacmanGame fullGame = new PacmanGame(RunGame.MAIN1, FRAME_RATE, pass, GHOSTS_PER_MARKER);
+      long total = 0;
+      int frames = 0;
+      while (frames < FRAMES && !fullGame.levelOver())
+      {
+        boolean alive = !fullGame.isPlayerDead();
+        long t = System.nanoTime();
+        fullGame.updateAll();
+        if (alive)
+        {
+          total += System.nanoTime() - t;
+          frames += 1;
+        }
+      }
+      double frameNanos = frames == 0 ? 0 : (double) total / frames;
+
+      if (pass == 1)
+      {
+        System.out.printf("%d enemies%n", store.size());
+        System.out.printf("move all enemies: %10.0f ns (%.1f%% of 60 FPS budget)%n", moveNanos, 100 * moveNanos / BUDGET_NANOS);
+        System.out.printf("updateAll():      %10.0f ns (%.1f%% of 60 FPS budget, %d frames)%n", frameNanos, 100 * frameNanos / BUDGET_NANOS, frames);
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+import api.JunctionGraph;
+import api.MazeLayout;
+import api.MazeMap;
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.MazeGenerator;
+import sim.RandomWalkController;
+
+/**
+ * Measures how the engine's hot paths scale with the size of the maze,
+ * on generated mazes from the size of the classic maze up to a few
+ * million cells.  For each size, reports the time to generate the maze
+ * and construct a game, the time per frame of updateAll(), and the time
+ * per shortest-path query, both on the maze map and with A* on its
+ * junction graph.  Path queries on large mazes mostly miss the map's
+ * table cache, so they include a breadth-first search over every cell,
+ * where A* visits only junctions.
+ */
+public class MazeScalingBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int FRAMES = 2000;
+  private static final int QUERIES = 2000;
+
+  /**
+   * Time after which the path queries for a size stop early, since on
+   * the largest mazes each one can take tens of milliseconds.
+   */
+  private static final long QUERY_BUDGET_NANOS = 500_000_000L;
+  private static final int[] SIZES = {31, 63, 127, 255, 511, 1023, 2047};
+
+  /**
+   * Keeps the path queries from being optimized away.
+   */
+  private static volatile int sink;
+
+  public static void main(String[] args)
+  {
+    System.out.printf("%10s %10s %10s %12s %12s %12s%n", "size", "generate", "construct", "ns/frame", "ns/query",
+        "ns/astar");
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      for (int size : SIZES)
+      {
+        long start = System.nanoTime();
+        MazeLayout layout = new MazeGenerator(size, size + 1, size).generateLayout();
+        double generateMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        PacmanGame game = new PacmanGame(layout, FRAME_RATE);
+        double constructMillis = (System.nanoTime() - start) / 1e6;
+
+        HeadlessEngine engine = new HeadlessEngine(game, new RandomWalkController(size, 20));
+        start = System.nanoTime();
+        int frames = engine.run(FRAMES);
+        double frameNanos = (double) (System.nanoTime() - start) / Math.max(1, frames);
+
+        MazeMap map = game.getMazeMap();
+        SplittableRandom rand = new SplittableRandom(size);
+        int total = 0;
+        int queries = 0;
+        start = System.nanoTime();
+        while (queries < QUERIES && System.nanoTime() - start < QUERY_BUDGET_NANOS)
+        {
+          total += map.getPathDistance(rand.nextInt(size), rand.nextInt(size + 1),
+              rand.nextInt(size), rand.nextInt(size + 1));
+          queries += 1;
+        }
+        double queryNanos = (double) (System.nanoTime() - start) / queries;
+
+        JunctionGraph graph = map.getJunctionGraph();
+        rand = new SplittableRandom(size);
+        queries = 0;
+        start = System.nanoTime();
+        while (queries < QUERIES && System.nanoTime() - start < QUERY_BUDGET_NANOS)
+        {
+          total += graph.getPathDistance(rand.nextInt(size), rand.nextInt(size + 1),
+              rand.nextInt(size), rand.nextInt(size + 1));
+          queries += 1;
+        }
+        double graphNanos = (double) (System.nanoTime() - start) / queries;
+        sink = total;
+
+        if (pass == 1)
+        {
+          System.out.printf("%10s %8.1fms %8.1fms %12.0f %12.0f %12.0f%n", size + "x" + (size + 1),
+              generateMillis, constructMillis, frameNanos, queryNanos, graphNanos);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.MctsController;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Plays the classic maze with the Monte Carlo tree search autopilot and
+ * reports the simulations per second it achieves, the longest time taken
+ * to choose a direction compared with the 60 FPS frame time, and how well
+ * it played compared with a random walk over the same number of frames.
+ * An optional argument gives the number of frames to play.
+ */
+public class MctsBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int DEFAULT_FRAMES = 1200;
+  private static final double FRAME_NANOS = 1e9 / FRAME_RATE;
+
+  public static void main(String[] args)
+  {
+    int frames = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE);
+    MctsController autopilot = new MctsController(RunGame.MAIN1, MctsController.DEFAULT_BUDGET_NANOS, pool, 0);
+    int played = new HeadlessEngine(game, autopilot).run(frames);
+
+    PacmanGame baseline = new PacmanGame(RunGame.MAIN1, FRAME_RATE);
+    new HeadlessEngine(baseline, new RandomWalkController(0, 20)).run(played);
+
+    System.out.printf("%d workers, %.1f ms budget per frame%n", pool.getParallelism(), MctsController.DEFAULT_BUDGET_NANOS / 1e6);
+    System.out.printf("rollouts/s:       %,12.0f%n", autopilot.getRolloutsPerSecond());
+    System.out.printf("rollouts/frame:   %,12.0f%n", (double) autopilot.getTotalRollouts() / played);
+    System.out.printf("longest decision: %12.2f ms (frame is %.2f ms)%n", autopilot.getMaxSearchNanos() / 1e6, FRAME_NANOS / 1e6);
+    System.out.printf("autopilot:   %d frames, score %d, pellets %d, lives lost %d%n",
+        played, game.getScore(), game.getPelletsEaten(), 3 - game.getLives());
+    System.out.printf("random walk: %d frames, score %d, pellets %d, lives lost %d%n",
+        baseline.getFrameCount(), baseline.getScore(), baseline.getPelletsEaten(), 3 - baseline.getLives());
+  }
+}
@@ -0,0 +1,127 @@
+package bench;
+
+import api.Actor;
+import api.Descriptor;
+import api.Direction;
+import api.JunctionGraph;
+import api.Location;
+import api.Mode;
+import api.PacmanGame;
+import hw4.DistanceMetric;
+import hw4.Ghost;
+import hw4.ManhattanMetric;
+import hw4.MazeDistanceMetric;
+import hw4.SquaredEuclideanMetric;
+import sim.HeadlessEngine;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Compares the ghost distance metrics on the classic maze.  For each metric
+ * this reports the average cost of a ghost decision at a junction (one call
+ * to Ghost.calculateNextCell() by a chasing ghost standing on a junction
+ * cell) and summarizes the outcome of a set of games played by a
+ * random-walking player, as a rough measure of how the metric changes ghost
+ * behavior.  Only junctions are sampled because elsewhere a ghost just
+ * follows its corridor without consulting the metric.
+ */
+public class MetricBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int GAMES = 200;
+  private static final int MAX_FRAMES = 20000;
+  private static final int DECISIONS = 2000000;
+  private static final String[] NAMES = {"squared euclidean", "manhattan", "maze path"};
+  
+  public static void main(String[] args)
+  {
+    System.out.printf("%-18s %12s %10s %10s %12s%n", "metric", "ns/junction", "avg score", "avg lives", "avg frames");
+    for (int m = 0; m < NAMES.length; ++m)
+    {
+      // run everything twice and report the second pass, after JIT warmup
+      measureDecisions(m);
+      double nanos = measureDecisions(m);
+      
+      long totalScore = 0;
+      long totalLivesLost = 0;
+      long totalFrames = 0;
+      for (int i = 0; i < GAMES; ++i)
+      {
+        PacmanGame game = createGame(m);
+        HeadlessEngine engine = new HeadlessEngine(game, new RandomWalkController(i, 20));
+        totalFrames += engine.run(MAX_FRAMES);
+        totalScore += game.getScore();
+        totalLivesLost += 3 - game.getLives();
+      }
+      System.out.printf("%-18s %12.1f %10.1f %10.2f %12.1f%n", NAMES[m], nanos,
+          (double) totalScore / GAMES, (double) totalLivesLost / GAMES, (double) totalFrames / GAMES);
+    }
+  }
+  
+  /**
+   * Returns the average time in nanoseconds for a ghost decision at a
+   * junction using the given metric.  The ghosts are put in chase mode and
+   * moved, between timed batches, from junction to junction, so that every
+   * timed decision evaluates the metric.
+   */
+  private static double measureDecisions(int m)
+  {
+    PacmanGame game = createGame(m);
+    
+    // run until all ghosts have left the inactive state
+    new HeadlessEngine(game).run(15 * FRAME_RATE);
+    Actor p = game.getPlayer();
+    Descriptor desc = new Descriptor(p.getCurrentLocation(), p.getCurrentDirection(), game.getEnemies()[0].getCurrentLocation());
+    Actor[] enemies = game.getEnemies();
+    JunctionGraph junctions = game.getMazeMap().getJunctionGraph();
+    int numJunctions = junctions.getJunctionCount();
+    int perJunction = Math.max(1, DECISIONS / numJunctions);
+    
+    long nanos = 0;
+    for (int j = 0; j < numJunctions; ++j)
+    {
+      for (int k = 0; k < enemies.length; ++k)
+      {
+        int cell = junctions.getJunctionCell((j + k * numJunctions / enemies.length) % numJunctions);
+        Ghost g = (Ghost) enemies[k];
+        g.setRowExact(Location.packedRow(cell) + 0.5);
+        g.setColExact(Location.packedCol(cell) + 0.5);
+        g.setDirection(Direction.values()[(j + k) % 4]);
+        g.setMode(Mode.CHASE, desc);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < perJunction; ++i)
+      {
+        ((Ghost) enemies[i % enemies.length]).calculateNextCell(desc);
+      }
+      nanos += System.nanoTime() - start;
+    }
+    return (double) nanos / ((long) perJunction * numJunctions);
+  }
+  
+  /**
+   * Creates a game on the classic maze whose ghosts use the given metric.
+   */
+  private static PacmanGame createGame(int m)
+  {
+    PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE);
+    DistanceMetric metric;
+    if (m == 0)
+    {
+      metric = new SquaredEuclideanMetric();
+    }
+    else if (m == 1)
+    {
+      metric = new ManhattanMetric();
+    }
+    else
+    {
+      metric = new MazeDistanceMetric(game.getMazeMap());
+    }
+    for (Actor a : game.getEnemies())
+    {
+      ((Ghost) a).setDistanceMetric(metric);
+    }
+    return game;
+  }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import api.GameSnapshot;
+import api.PacmanGame;
+import sim.HeadlessEngine;
+import sim.RandomWalkController;
+import ui.RunGame;
+
+/**
+ * Measures the throughput of PacmanGame.snapshot() and restore() on the
+ * classic maze, partway through a game.  Reports snapshot+restore pairs
+ * per second with a fresh snapshot each time and with a reused one, and
+ * the rate of the typical lookahead pattern of restoring and then
+ * simulating a single frame, which pays for the copy-on-write of the
+ * pellets whenever a pellet is eaten.
+ */
+public class SnapshotBenchmark
+{
+  private static final int FRAME_RATE = 60;
+  private static final int WARMUP_FRAMES = 600;
+  private static final int ITERATIONS = 2_000_000;
+
+  public static void main(String[] args)
+  {
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      PacmanGame game = new PacmanGame(RunGame.MAIN1, FRAME_RATE, pass);
+      new HeadlessEngine(game, new RandomWalkController(pass, 20)).run(WARMUP_FRAMES);
+
+      long start = System.nanoTime();
+      GameSnapshot snap = null;
+      for (int i = 0; i < ITERATIONS; ++i)
+      {
+        snap = game.snapshot();
+        game.restore(snap);
+      }
+      double freshNanos = (double) (System.nanoTime() - start) / ITERATIONS;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; ++i)
+      {
+        snap = game.snapshot(snap);
+        game.restore(snap);
+      }
+      double reusedNanos = (double) (System.nanoTime() - start) / ITERATIONS;
+
+      start = System.nanoTime();
+      int before = game.getPelletsEaten();
+      int eats = 0;
+      for (int i = 0; i < ITERATIONS; ++i)
+      {
+        game.restore(snap);
+        game.updateAll();
+        if (game.getPelletsEaten() != before)
+        {
+          eats += 1;
+        }
+      }
+      double stepNanos = (double) (System.nanoTime() - start) / ITERATIONS;
+
+      if (pass == 1)
+      {
+        System.out.printf("%d enemies, frame %d%n", game.getEnemies().length, snap.getFrameCount());
+        System.out.printf("snapshot+restore (new):     %8.1f ns  %,12.0f /s%n", freshNanos, 1e9 / freshNanos);
+        System.out.printf("snapshot+restore (reused):  %8.1f ns  %,12.0f /s%n", reusedNanos, 1e9 / reusedNanos);
+        System.out.printf("restore+updateAll():        %8.1f ns  %,12.0f /s (%d pellet copies)%n", stepNanos, 1e9 / stepNanos, eats);
+      }
+    }
+  }
+}
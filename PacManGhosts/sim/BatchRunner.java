@@ -0,0 +1,162 @@
+package sim;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongFunction;
+
+import api.PacmanGame;
+
+/**
+ * Runs many independent games of the same maze in parallel on a
+ * work-stealing pool.  Each game is constructed with its own seed and 
+ * controller and shares no mutable state with the others, so the result
+ * for a given seed does not depend on the number of threads or on the
+ * order in which games happen to run.  Games are fast-forwarded over
+ * frames in which their controller has no input.
+ */
+public class BatchRunner
+{
+  /**
+   * Number of games below which a task runs its games directly
+   * instead of splitting.
+   */
+  private static final int SPLIT_THRESHOLD = 4;
+  
+  private final String[] rows;
+  private final int frameRate;
+  private final int maxFrames;
+  private final LongFunction<PlayerController> controllers;
+  private final ForkJoinPool pool;
+  
+  /**
+   * Constructs a runner for the given maze that uses the common pool.
+   * @param rows
+   *   maze rows, as for the PacmanGame constructor
+   * @param frameRate
+   *   frames per second
+   * @param maxFrames
+   *   maximum number of frames to simulate for each game
+   * @param controllers
+   *   creates the controller for a game given the game's seed; may
+   *   return null for no player input
+   */
+  public BatchRunner(String[] rows, int frameRate, int maxFrames, LongFunction<PlayerController> controllers)
+  {
+    this(rows, frameRate, maxFrames, controllers, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Constructs a runner for the given maze that uses the given pool.
+   * @param rows
+   *   maze rows, as for the PacmanGame constructor
+   * @param frameRate
+   *   frames per second
+   * @param maxFrames
+   *   maximum number of frames to simulate for each game
+   * @param controllers
+   *   creates the controller for a game given the game's seed; may
+   *   return null for no player input
+   * @param pool
+   *   pool on which to run the games
+   */
+  public BatchRunner(String[] rows, int frameRate, int maxFrames, LongFunction<PlayerController> controllers, ForkJoinPool pool)
+  {
+    this.rows = rows;
+    this.frameRate = frameRate;
+    this.maxFrames = maxFrames;
+    this.controllers = controllers;
+    this.pool = pool;
+  }
+  
+  /**
+   * Runs one game for each of the given seeds.
+   * @param seeds
+   *   seeds of the games to run
+   * @return
+   *   results in the same order as the seeds
+   */
+  public GameResult[] run(long[] seeds)
+  {
+    GameResult[] results = new GameResult[seeds.length];
+    pool.invoke(new BatchTask(seeds, results, 0, seeds.length));
+    return results;
+  }
+  
+  /**
+   * Runs the given number of games, with seeds generated from the 
+   * given base seed.
+   * @param baseSeed
+   *   seed from which the game seeds are generated
+   * @param count
+   *   number of games to run
+   * @return
+   *   results, in the order the seeds were generated
+   */
+  public GameResult[] run(long baseSeed, int count)
+  {
+    SplittableRandom rand = new SplittableRandom(baseSeed);
+    long[] seeds = new long[count];
+    for (int i = 0; i < count; ++i)
+    {
+      seeds[i] = rand.nextLong();
+    }
+    return run(seeds);
+  }
+  
+  /**
+   * Runs a single game with the given seed on the calling thread.
+   * @param seed
+   *   seed of the game
+   * @return
+   *   result of the game
+   */
+  public GameResult runOne(long seed)
+  {
+    PacmanGame game = new PacmanGame(rows, frameRate, seed);
+    int startLives = game.getLives();
+    HeadlessEngine engine = new HeadlessEngine(game, controllers.apply(seed));
+    engine.setFastForward(true);
+    int frames = engine.run(maxFrames);
+    return new GameResult(seed, game.getScore(), startLives - game.getLives(), frames, game.getPelletsEaten());
+  }
+  
+  /**
+   * Task that runs the games in a range of seeds, splitting the range
+   * in half until it is small.
+   */
+  private class BatchTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+    
+    private final long[] seeds;
+    private final GameResult[] results;
+    private final int start;
+    private final int end;
+    
+    private BatchTask(long[] seeds, GameResult[] results, int start, int end)
+    {
+      this.seeds = seeds;
+      this.results = results;
+      this.start = start;
+      this.end = end;
+    }
+    
+    @Override
+    protected void compute()
+    {
+      if (end - start <= SPLIT_THRESHOLD)
+      {
+        for (int i = start; i < end; ++i)
+        {
+          results[i] = runOne(seeds[i]);
+        }
+      }
+      else
+      {
+        int mid = (start + end) >>> 1;
+        invokeAll(new BatchTask(seeds, results, start, mid), new BatchTask(seeds, results, mid, end));
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package sim;
+
+/**
+ * Aggregate statistics over the results of a batch of games.
+ */
+public class BatchSummary
+{
+  private final int games;
+  private final long totalScore;
+  private final int minScore;
+  private final int maxScore;
+  private final long totalLivesLost;
+  private final long totalFrames;
+  private final long totalPellets;
+  
+  /**
+   * Constructs a summary of the given results.
+   * @param results
+   *   results to summarize
+   */
+  public BatchSummary(GameResult[] results)
+  {
+    games = results.length;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    long score = 0;
+    long lives = 0;
+    long frames = 0;
+    long pellets = 0;
+    for (GameResult r : results)
+    {
+      score += r.getScore();
+      min = Math.min(min, r.getScore());
+      max = Math.max(max, r.getScore());
+      lives += r.getLivesLost();
+      frames += r.getFramesSurvived();
+      pellets += r.getPelletsEaten();
+    }
+    totalScore = score;
+    minScore = games == 0 ? 0 : min;
+    maxScore = games == 0 ? 0 : max;
+    totalLivesLost = lives;
+    totalFrames = frames;
+    totalPellets = pellets;
+  }
+  
+  /**
+   * Returns the number of games summarized.
+   * @return
+   *   number of games
+   */
+  public int getGames()
+  {
+    return games;
+  }
+  
+  /**
+   * Returns the lowest score of any game.
+   * @return
+   *   minimum score
+   */
+  public int getMinScore()
+  {
+    return minScore;
+  }
+  
+  /**
+   * Returns the highest score of any game.
+   * @return
+   *   maximum score
+   */
+  public int getMaxScore()
+  {
+    return maxScore;
+  }
+  
+  /**
+   * Returns the mean score.
+   * @return
+   *   mean score
+   */
+  public double getMeanScore()
+  {
+    return mean(totalScore);
+  }
+  
+  /**
+   * Returns the mean number of lives lost.
+   * @return
+   *   mean lives lost
+   */
+  public double getMeanLivesLost()
+  {
+    return mean(totalLivesLost);
+  }
+  
+  /**
+   * Returns the mean number of frames survived.
+   * @return
+   *   mean frames survived
+   */
+  public double getMeanFramesSurvived()
+  {
+    return mean(totalFrames);
+  }
+  
+  /**
+   * Returns the total number of frames simulated over all games.
+   * @return
+   *   total frames
+   */
+  public long getTotalFrames()
+  {
+    return totalFrames;
+  }
+  
+  /**
+   * Returns the mean number of pellets eaten.
+   * @return
+   *   mean pellets eaten
+   */
+  public double getMeanPelletsEaten()
+  {
+    return mean(totalPellets);
+  }
+  
+  private double mean(long total)
+  {
+    return games == 0 ? 0 : (double) total / games;
+  }
+  
+  @Override
+  public String toString()
+  {
+    return String.format("games=%d score=%.1f [%d, %d] livesLost=%.2f frames=%.1f pellets=%.1f",
+        games, getMeanScore(), minScore, maxScore, getMeanLivesLost(), getMeanFramesSurvived(), getMeanPelletsEaten());
+  }
+}
@@ -0,0 +1,312 @@
+package sim;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import api.Actor;
+import api.Direction;
+import api.Location;
+import api.MazeLayout;
+import api.MazeLoader;
+import api.PacmanGame;
+import ui.RunGame;
+
+/**
+ * Lets an external program play a game over a line-oriented text
+ * protocol, for example through a pipe to its standard input and output,
+ * with no user interface at all.
+ * <p>
+ * When started, the server writes a header line
+ * <pre>
+ *   maze rows columns seed frameRate
+ * </pre>
+ * followed by the rows of the maze, one per line, in the format read by
+ * MazeLoader, and then the observation of frame 0.
+ * <p>
+ * Each line it reads is a message giving the input for a batch of
+ * frames, so that a client does not pay for a round trip per frame.  A
+ * message is a sequence of tokens, each an optional count followed by one
+ * of the letters L, R, U and D, to turn the player left, right, up or
+ * down before each of that many frames, or a dot, for that many frames
+ * with no input.  The count defaults to 1, and spaces between tokens are
+ * ignored.  For example, "L 59." turns left and then runs 60 frames.  The
+ * server runs the frames and replies with one observation line per frame,
+ * flushing once per message.  A message starting with an asterisk asks
+ * for only the observation after its last frame, and runs its frames with
+ * no input fast-forwarded, which is much cheaper for long waits; an empty
+ * message runs no frames and is also answered with one line.  Once the
+ * level is over no more frames are run, but a reply still has a line for
+ * each frame asked for, repeating the final observation, so a client
+ * always knows how many lines to read.  A message that cannot be parsed
+ * is answered with a line starting with "error", and none of its frames
+ * are run.  The server stops at the end of its input or at a line reading
+ * "quit".
+ * <p>
+ * An observation is a line of integers and letters separated by spaces:
+ * <pre>
+ *   frame score lives state playerRow playerCol n row col mode ...
+ * </pre>
+ * where state is A while the player is alive, X while it is dead, and O
+ * once the level is over, and n is the number of enemies, each of which
+ * is given by its row, its column and the first letter of its mode.
+ */
+public class BotServer
+{
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /**
+   * Letter for each mode, indexed by ordinal.
+   */
+  private static final char[] MODE_LETTERS = {'I', 'D', 'F', 'S', 'C'};
+
+  private final PacmanGame game;
+  private final BufferedReader in;
+  private final Writer out;
+
+  /**
+   * Observation being written.
+   */
+  private final StringBuilder line = new StringBuilder();
+
+  /**
+   * Count and input of each token of the current message; the input is a
+   * Direction ordinal, or -1 for none.
+   */
+  private int[] counts = new int[16];
+  private int[] inputs = new int[16];
+
+  /**
+   * Constructs a server that plays the given game, reading messages from
+   * the given reader and writing replies to the given writer.
+   * @param game
+   *   the game to play
+   * @param in
+   *   source of messages
+   * @param out
+   *   destination of replies
+   */
+  public BotServer(PacmanGame game, Reader in, Writer out)
+  {
+    this.game = game;
+    this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+    this.out = out;
+  }
+
+  /**
+   * Plays the game against standard input and output.  Arguments are
+   * the path of a maze file, or "-" for the classic maze, and optionally
+   * the seed, the frame rate and the number of enemies per ghost marker.
+   * @param args
+   *   [maze [seed [frameRate [ghostsPerMarker]]]]
+   * @throws IOException
+   *   if the maze cannot be read or the output cannot be written
+   */
+  public static void main(String[] args) throws IOException
+  {
+    MazeLayout layout = args.length > 0 && !args[0].equals("-")
+        ? MazeLoader.load(Paths.get(args[0]))
+        : MazeLayout.fromRows(RunGame.MAIN1);
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    int frameRate = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+    int ghostsPerMarker = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+    PacmanGame game = new PacmanGame(layout, frameRate, seed, ghostsPerMarker);
+
+    Reader in = new InputStreamReader(System.in, StandardCharsets.US_ASCII);
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+    BotServer server = new BotServer(game, in, out);
+    server.writeHeader(layout, seed, frameRate);
+    server.run();
+  }
+
+  /**
+   * Writes the header and the rows of the maze.
+   * @param layout
+   *   layout the game was constructed from
+   * @param seed
+   *   seed the game was constructed with
+   * @param frameRate
+   *   frame rate of the game
+   * @throws IOException
+   *   if the output cannot be written
+   */
+  public void writeHeader(MazeLayout layout, long seed, int frameRate) throws IOException
+  {
+    out.write("maze " + layout.getNumRows() + " " + layout.getNumColumns() + " " + seed + " " + frameRate + "\n");
+    char[] row = new char[layout.getNumColumns()];
+    for (int r = 0; r < layout.getNumRows(); ++r)
+    {
+      for (int c = 0; c < row.length; ++c)
+      {
+        row[c] = layout.getChar(r, c);
+      }
+      out.write(row);
+      out.write('\n');
+    }
+  }
+
+  /**
+   * Writes the current observation and then answers messages until the
+   * end of the input or a "quit" line.
+   * @throws IOException
+   *   if the input cannot be read or the output cannot be written
+   */
+  public void run() throws IOException
+  {
+    writeObservation();
+    out.flush();
+    String message;
+    while ((message = in.readLine()) != null && !message.equals("quit"))
+    {
+      boolean lastOnly = message.startsWith("*");
+      int numTokens = parse(message, lastOnly ? 1 : 0);
+      if (numTokens < 0)
+      {
+        out.write("error cannot parse: " + message + "\n");
+      }
+      else
+      {
+        play(numTokens, lastOnly);
+      }
+      out.flush();
+    }
+    out.flush();
+  }
+
+  /**
+   * Runs the frames of a parsed message, writing an observation after
+   * each one, or only after the last one if lastOnly is true.
+   */
+  private void play(int numTokens, boolean lastOnly) throws IOException
+  {
+    boolean written = false;
+    for (int t = 0; t < numTokens; ++t)
+    {
+      if (lastOnly && inputs[t] < 0)
+      {
+        game.fastForward(counts[t]);
+        continue;
+      }
+      for (int i = 0; i < counts[t]; ++i)
+      {
+        if (!game.levelOver())
+        {
+          if (inputs[t] >= 0)
+          {
+            game.turnPlayer(DIRECTIONS[inputs[t]]);
+          }
+          game.updateAll();
+        }
+        if (!lastOnly)
+        {
+          writeObservation();
+          written = true;
+        }
+      }
+    }
+    if (!written)
+    {
+      writeObservation();
+    }
+  }
+
+  /**
+   * Parses a message, starting at the given index, into counts and
+   * inputs.  Returns the number of tokens, or -1 if the message is
+   * malformed.
+   */
+  private int parse(String message, int start)
+  {
+    int numTokens = 0;
+    int count = -1;
+    for (int i = start; i < message.length(); ++i)
+    {
+      char c = message.charAt(i);
+      if (c >= '0' && c <= '9')
+      {
+        count = (count < 0 ? 0 : count) * 10 + (c - '0');
+        if (count > 100_000_000)
+        {
+          return -1;
+        }
+        continue;
+      }
+      int input;
+      switch (c)
+      {
+        case ' ':
+          if (count >= 0)
+          {
+            return -1;
+          }
+          continue;
+        case '.':
+          input = -1;
+          break;
+        case 'L':
+          input = Direction.LEFT.ordinal();
+          break;
+        case 'R':
+          input = Direction.RIGHT.ordinal();
+          break;
+        case 'U':
+          input = Direction.UP.ordinal();
+          break;
+        case 'D':
+          input = Direction.DOWN.ordinal();
+          break;
+        default:
+          return -1;
+      }
+      if (numTokens == counts.length)
+      {
+        counts = Arrays.copyOf(counts, 2 * numTokens);
+        inputs = Arrays.copyOf(inputs, 2 * numTokens);
+      }
+      counts[numTokens] = count < 0 ? 1 : count;
+      inputs[numTokens] = input;
+      numTokens += 1;
+      count = -1;
+    }
+    return count < 0 ? numTokens : -1;
+  }
+
+  /**
+   * Writes the observation of the current frame.
+   */
+  private void writeObservation() throws IOException
+  {
+    line.setLength(0);
+    line.append(game.getFrameCount()).append(' ')
+        .append(game.getScore()).append(' ')
+        .append(game.getLives()).append(' ')
+        .append(game.levelOver() ? 'O' : game.isPlayerDead() ? 'X' : 'A').append(' ');
+    appendCell(game.getPlayer().getCurrentCell());
+
+    Actor[] enemies = game.getEnemies();
+    line.append(' ').append(enemies.length);
+    for (Actor a : enemies)
+    {
+      line.append(' ');
+      appendCell(a.getCurrentCell());
+      line.append(' ').append(MODE_LETTERS[a.getMode().ordinal()]);
+    }
+    line.append('\n');
+    out.append(line);
+  }
+
+  /**
+   * Appends the row and column of a packed cell.
+   */
+  private void appendCell(int cell)
+  {
+    line.append(Location.packedRow(cell)).append(' ').append(Location.packedCol(cell));
+  }
+}
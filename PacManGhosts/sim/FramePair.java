@@ -0,0 +1,63 @@
+package sim;
+
+import api.GameSnapshot;
+
+/**
+ * The two most recent frames published by a SimulationThread, together
+ * with the time the newer one was published.  A renderer can interpolate
+ * between the two to draw smooth motion at a refresh rate that differs
+ * from the simulation rate.  Instances are immutable.
+ */
+public final class FramePair
+{
+  private final GameSnapshot previous;
+  private final GameSnapshot current;
+  private final long publishNanos;
+
+  /**
+   * Constructs a pair.
+   * @param previous
+   *   the frame before the current one
+   * @param current
+   *   the most recent frame
+   * @param publishNanos
+   *   value of System.nanoTime() when the current frame was published
+   */
+  public FramePair(GameSnapshot previous, GameSnapshot current, long publishNanos)
+  {
+    this.previous = previous;
+    this.current = current;
+    this.publishNanos = publishNanos;
+  }
+
+  /**
+   * Returns the frame before the current one.  For the first frame of a
+   * game, this is the same as the current frame.
+   * @return
+   *   previous frame
+   */
+  public GameSnapshot getPrevious()
+  {
+    return previous;
+  }
+
+  /**
+   * Returns the most recent frame.
+   * @return
+   *   current frame
+   */
+  public GameSnapshot getCurrent()
+  {
+    return current;
+  }
+
+  /**
+   * Returns the time at which the current frame was published.
+   * @return
+   *   publish time, as given by System.nanoTime()
+   */
+  public long getPublishNanos()
+  {
+    return publishNanos;
+  }
+}
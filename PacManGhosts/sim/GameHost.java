@@ -0,0 +1,228 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import api.LatencyHistogram;
+import api.PacmanGame;
+
+/**
+ * Runs many games at once in real time on a small, fixed number of
+ * worker threads, for hosting thousands of sessions in one JVM.  Each
+ * session is assigned to one worker, which keeps its sessions in order of
+ * when their next frame is due and runs each frame on time, at the
+ * session's own frame rate; in between it parks until the next frame is
+ * due.  Games share no mutable state and each is only ever touched by its
+ * worker, so sessions are isolated from one another without locking.
+ * Nothing in a frame blocks: the pause after the player dies is counted in
+ * frames, not slept.
+ * <p>
+ * Lag, how late each frame is started relative to its scheduled time, is
+ * kept per session by GameSession and over all sessions in a histogram,
+ * so that the number of sessions a host can carry can be found by adding
+ * sessions until the lag grows.
+ */
+public class GameHost
+{
+  private final Worker[] workers;
+  private final LatencyHistogram lag = new LatencyHistogram();
+  private final AtomicLong nextId = new AtomicLong();
+  private volatile boolean running;
+
+  /**
+   * Constructs a host with one worker per available processor.
+   */
+  public GameHost()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a host with the given number of workers.  The workers are
+   * started by start().
+   * @param numWorkers
+   *   number of worker threads
+   */
+  public GameHost(int numWorkers)
+  {
+    if (numWorkers < 1)
+    {
+      throw new IllegalArgumentException("Need at least one worker: " + numWorkers);
+    }
+    workers = new Worker[numWorkers];
+    for (int i = 0; i < numWorkers; ++i)
+    {
+      workers[i] = new Worker();
+    }
+  }
+
+  /**
+   * Starts the workers on daemon threads.  Does nothing if already
+   * running.
+   */
+  public synchronized void start()
+  {
+    if (running)
+    {
+      return;
+    }
+    running = true;
+    for (int i = 0; i < workers.length; ++i)
+    {
+      workers[i].thread = new Thread(workers[i], "pacman-host-" + i);
+      workers[i].thread.setDaemon(true);
+      workers[i].thread.start();
+    }
+  }
+
+  /**
+   * Stops the workers and waits for them to finish.  Sessions that were
+   * still running are left unfinished, and may then be read from any
+   * thread.
+   */
+  public synchronized void stop()
+  {
+    if (!running)
+    {
+      return;
+    }
+    running = false;
+    for (Worker w : workers)
+    {
+      LockSupport.unpark(w.thread);
+    }
+    try
+    {
+      for (Worker w : workers)
+      {
+        w.thread.join();
+        w.thread = null;
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Adds a game to the host.  Its first frame is run as soon as its
+   * worker gets to it.  The game must not be touched by the caller from
+   * then on, until the session is finished.  May be called from any
+   * thread.
+   * @param game
+   *   the game to run
+   * @param controller
+   *   controller consulted before each frame in which the player is
+   *   alive, or null for none
+   * @return
+   *   the new session
+   */
+  public GameSession addSession(PacmanGame game, PlayerController controller)
+  {
+    long id = nextId.getAndIncrement();
+    GameSession s = new GameSession(id, game, controller, lag);
+    Worker w = workers[(int) (id % workers.length)];
+    w.incoming.add(s);
+    LockSupport.unpark(w.thread);
+    return s;
+  }
+
+  /**
+   * Returns the number of sessions that are not finished.
+   * @return
+   *   number of active sessions
+   */
+  public int getSessionCount()
+  {
+    int n = 0;
+    for (Worker w : workers)
+    {
+      n += w.active;
+    }
+    return n;
+  }
+
+  /**
+   * Returns the histogram of the lag of every frame run by this host.
+   * @return
+   *   lag histogram, in nanoseconds
+   */
+  public LatencyHistogram getLag()
+  {
+    return lag;
+  }
+
+  /**
+   * Returns the number of workers.
+   * @return
+   *   number of workers
+   */
+  public int getWorkerCount()
+  {
+    return workers.length;
+  }
+
+  /**
+   * Worker thread, with the sessions assigned to it.
+   */
+  private class Worker implements Runnable
+  {
+    private final ConcurrentLinkedQueue<GameSession> incoming = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<GameSession> due = new PriorityQueue<>(Comparator.comparingLong(s -> s.next));
+    private volatile int active;
+    private volatile Thread thread;
+
+    @Override
+    public void run()
+    {
+      List<GameSession> added = new ArrayList<>();
+      while (running)
+      {
+        GameSession s;
+        while ((s = incoming.poll()) != null)
+        {
+          added.add(s);
+        }
+        if (!added.isEmpty())
+        {
+          long now = System.nanoTime();
+          for (GameSession a : added)
+          {
+            a.next = now;
+            due.add(a);
+          }
+          added.clear();
+          active = due.size();
+        }
+
+        s = due.peek();
+        if (s == null)
+        {
+          LockSupport.park(this);
+          continue;
+        }
+        long now = System.nanoTime();
+        if (now < s.next)
+        {
+          LockSupport.parkNanos(this, s.next - now);
+          continue;
+        }
+        due.poll();
+        if (s.tick(now))
+        {
+          due.add(s);
+        }
+        else
+        {
+          active = due.size();
+        }
+      }
+    }
+  }
+}
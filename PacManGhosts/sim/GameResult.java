@@ -0,0 +1,93 @@
+package sim;
+
+/**
+ * Outcome of a single game run without a UI.
+ */
+public class GameResult
+{
+  private final long seed;
+  private final int score;
+  private final int livesLost;
+  private final int framesSurvived;
+  private final int pelletsEaten;
+  
+  /**
+   * Constructs a result with the given values.
+   * @param seed
+   *   seed of the game
+   * @param score
+   *   final score
+   * @param livesLost
+   *   number of lives the player lost
+   * @param framesSurvived
+   *   number of frames simulated before the game ended or was stopped
+   * @param pelletsEaten
+   *   number of pellets eaten
+   */
+  public GameResult(long seed, int score, int livesLost, int framesSurvived, int pelletsEaten)
+  {
+    this.seed = seed;
+    this.score = score;
+    this.livesLost = livesLost;
+    this.framesSurvived = framesSurvived;
+    this.pelletsEaten = pelletsEaten;
+  }
+  
+  /**
+   * Returns the seed of the game.
+   * @return
+   *   seed
+   */
+  public long getSeed()
+  {
+    return seed;
+  }
+  
+  /**
+   * Returns the final score.
+   * @return
+   *   score
+   */
+  public int getScore()
+  {
+    return score;
+  }
+  
+  /**
+   * Returns the number of lives the player lost.
+   * @return
+   *   lives lost
+   */
+  public int getLivesLost()
+  {
+    return livesLost;
+  }
+  
+  /**
+   * Returns the number of frames simulated before the game ended
+   * or was stopped.
+   * @return
+   *   frames survived
+   */
+  public int getFramesSurvived()
+  {
+    return framesSurvived;
+  }
+  
+  /**
+   * Returns the number of pellets eaten.
+   * @return
+   *   pellets eaten
+   */
+  public int getPelletsEaten()
+  {
+    return pelletsEaten;
+  }
+  
+  @Override
+  public String toString()
+  {
+    return "seed=" + seed + " score=" + score + " livesLost=" + livesLost 
+        + " frames=" + framesSurvived + " pellets=" + pelletsEaten;
+  }
+}
@@ -0,0 +1,231 @@
+package sim;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import api.Direction;
+import api.LatencyHistogram;
+import api.PacmanGame;
+
+/**
+ * One game hosted by a GameHost.  The game is run by one of the host's
+ * worker threads at its own frame rate and, while the session is active,
+ * must not be touched by any other thread; input from other threads is
+ * passed in through turnPlayer(), which queues it for the next frame.
+ * Once isFinished() returns true the worker no longer touches the game,
+ * and it may be read from any thread.
+ * <p>
+ * Each session keeps its own tick lag statistics: how late each frame
+ * was started relative to its scheduled time, which is the measure of
+ * whether a host is overloaded.  As in SimulationThread, a session that
+ * falls more than a few frames behind drops the missed frames rather than
+ * running them back to back, and counts them.  The statistics are a few
+ * counters rather than a histogram, so that a host can hold thousands of
+ * sessions; the host keeps a histogram over all of them.
+ */
+public class GameSession
+{
+  /**
+   * Largest number of frames that are run back to back to catch up.
+   */
+  private static final int MAX_CATCH_UP = 5;
+
+  private final long id;
+  private final PacmanGame game;
+  private final PlayerController controller;
+  private final long stepNanos;
+  private final LatencyHistogram hostLag;
+  private final ConcurrentLinkedQueue<Direction> input = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Scheduled start time of the next frame, used only by the worker.
+   */
+  long next;
+
+  private volatile boolean closed;
+  private volatile boolean finished;
+  private volatile long ticks;
+  private volatile long droppedFrames;
+  private volatile long totalLag;
+  private volatile long maxLag;
+  private volatile long lastLag;
+
+  /**
+   * Constructs a session for the given game, recording its lag in the
+   * given histogram as well as its own counters.
+   */
+  GameSession(long id, PacmanGame game, PlayerController controller, LatencyHistogram hostLag)
+  {
+    this.id = id;
+    this.game = game;
+    this.controller = controller;
+    this.hostLag = hostLag;
+    stepNanos = 1_000_000_000L / game.getFrameRate();
+  }
+
+  /**
+   * Returns the identifier given to this session by its host.
+   * @return
+   *   session identifier
+   */
+  public long getId()
+  {
+    return id;
+  }
+
+  /**
+   * Returns the game.  It may only be used by other threads once the
+   * session is finished.
+   * @return
+   *   the game
+   */
+  public PacmanGame getGame()
+  {
+    return game;
+  }
+
+  /**
+   * Queues a turn of the player, to be applied before the next frame.
+   * May be called from any thread.
+   * @param dir
+   *   desired direction
+   */
+  public void turnPlayer(Direction dir)
+  {
+    input.add(dir);
+  }
+
+  /**
+   * Asks the host to stop running this session.  The session is finished
+   * once the worker has noticed, no later than its next scheduled frame.
+   * May be called from any thread.
+   */
+  public void close()
+  {
+    closed = true;
+  }
+
+  /**
+   * Returns true if the level is over or the session was closed, and the
+   * worker will no longer touch the game.
+   * @return
+   *   true if finished
+   */
+  public boolean isFinished()
+  {
+    return finished;
+  }
+
+  /**
+   * Returns the number of frames run.
+   * @return
+   *   number of frames
+   */
+  public long getTicks()
+  {
+    return ticks;
+  }
+
+  /**
+   * Returns the number of frames dropped because the session fell too
+   * far behind.
+   * @return
+   *   number of dropped frames
+   */
+  public long getDroppedFrames()
+  {
+    return droppedFrames;
+  }
+
+  /**
+   * Returns how late the most recent frame was started.
+   * @return
+   *   lag in nanoseconds
+   */
+  public long getLastLag()
+  {
+    return lastLag;
+  }
+
+  /**
+   * Returns the greatest lag of any frame.
+   * @return
+   *   lag in nanoseconds
+   */
+  public long getMaxLag()
+  {
+    return maxLag;
+  }
+
+  /**
+   * Returns the mean lag of the frames run, or zero if there are none.
+   * @return
+   *   mean lag in nanoseconds
+   */
+  public double getMeanLag()
+  {
+    long n = ticks;
+    return n == 0 ? 0 : (double) totalLag / n;
+  }
+
+  /**
+   * Returns the time between frames.
+   * @return
+   *   frame interval in nanoseconds
+   */
+  public long getStepNanos()
+  {
+    return stepNanos;
+  }
+
+  /**
+   * Runs the frame due at the scheduled time, given the current time, and
+   * schedules the next one.  Returns false if the session is finished and
+   * should not be scheduled again.  Called only by the worker.
+   */
+  boolean tick(long now)
+  {
+    if (closed || game.levelOver())
+    {
+      finished = true;
+      return false;
+    }
+
+    long lag = now - next;
+    lastLag = lag;
+    totalLag += lag;
+    if (lag > maxLag)
+    {
+      maxLag = lag;
+    }
+    hostLag.record(lag);
+    if (lag > MAX_CATCH_UP * stepNanos)
+    {
+      droppedFrames += lag / stepNanos;
+      next = now;
+    }
+
+    Direction dir;
+    while ((dir = input.poll()) != null)
+    {
+      game.turnPlayer(dir);
+    }
+    if (controller != null && !game.isPlayerDead())
+    {
+      dir = controller.chooseDirection(game);
+      if (dir != null)
+      {
+        game.turnPlayer(dir);
+      }
+    }
+    game.updateAll();
+    ticks += 1;
+    next += stepNanos;
+
+    if (game.levelOver())
+    {
+      finished = true;
+      return false;
+    }
+    return true;
+  }
+}
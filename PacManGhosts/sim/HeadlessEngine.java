@@ -0,0 +1,149 @@
+package sim;
+
+import api.Direction;
+import api.PacmanGame;
+
+/**
+ * Fixed-timestep driver for a Pacman game that does not depend on
+ * a UI or wall-clock time.  Each step corresponds to exactly one frame
+ * of the game, and frames are simulated as fast as possible.
+ */
+public class HeadlessEngine
+{
+  /**
+   * The game being simulated.
+   */
+  private final PacmanGame game;
+  
+  /**
+   * Source of player input, possibly null.
+   */
+  private final PlayerController controller;
+
+  /**
+   * True if run() fast-forwards over frames without input.
+   */
+  private boolean fastForward;
+  
+  /**
+   * Constructs an engine for the given game with no player input.
+   * @param game
+   *   the game to simulate
+   */
+  public HeadlessEngine(PacmanGame game)
+  {
+    this(game, null);
+  }
+  
+  /**
+   * Constructs an engine for the given game, consulting the given
+   * controller for player input before every frame.
+   * @param game
+   *   the game to simulate
+   * @param controller
+   *   source of player input, or null for none
+   */
+  public HeadlessEngine(PacmanGame game, PlayerController controller)
+  {
+    this.game = game;
+    this.controller = controller;
+  }
+  
+  /**
+   * Returns the game being simulated.
+   * @return
+   *   the game
+   */
+  public PacmanGame getGame()
+  {
+    return game;
+  }
+  
+  /**
+   * Sets whether run() fast-forwards the game over frames in which the
+   * controller has no input, as reported by its getQuietFrames(), using
+   * PacmanGame.fastForward().  The result is the same either way.
+   * @param enabled
+   *   true to fast-forward, false to simulate every frame through step()
+   */
+  public void setFastForward(boolean enabled)
+  {
+    fastForward = enabled;
+  }
+
+  /**
+   * Simulates a single frame, first applying any input from the controller.
+   * Does nothing if the level is already over.
+   * @return
+   *   true if a frame was simulated, false if the level is over
+   */
+  public boolean step()
+  {
+    if (game.levelOver())
+    {
+      return false;
+    }
+    if (controller != null && !game.isPlayerDead())
+    {
+      Direction dir = controller.chooseDirection(game);
+      if (dir != null)
+      {
+        game.turnPlayer(dir);
+      }
+    }
+    game.updateAll();
+    return true;
+  }
+  
+  /**
+   * Simulates frames until the level is over or the given number
+   * of frames has been simulated.
+   * @param maxFrames
+   *   maximum number of frames to simulate
+   * @return
+   *   number of frames actually simulated
+   */
+  public int run(int maxFrames)
+  {
+    int count = 0;
+    if (fastForward)
+    {
+      while (count < maxFrames && !game.levelOver())
+      {
+        int quiet = controller == null ? maxFrames - count : controller.getQuietFrames(game);
+        if (quiet > 0)
+        {
+          count += game.fastForward(Math.min(quiet, maxFrames - count));
+        }
+        else
+        {
+          step();
+          count += 1;
+        }
+      }
+      return count;
+    }
+    while (count < maxFrames && step())
+    {
+      count += 1;
+    }
+    return count;
+  }
+  
+  /**
+   * Simulates frames until the level is over.  Note that without player
+   * input this may never happen, so callers should normally prefer
+   * run(int).
+   * @return
+   *   number of frames simulated
+   */
+  public int runToEnd()
+  {
+    int count = 0;
+    while (step())
+    {
+      count += 1;
+    }
+    return count;
+  }
+}
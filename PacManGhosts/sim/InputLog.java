@@ -0,0 +1,440 @@
+package sim;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import api.Direction;
+import api.PacmanGame;
+
+/**
+ * Immutable binary record of the player input to one game, along with
+ * enough information to reconstruct the game and check the outcome of
+ * a replay.  The encoded form is a fixed-size big-endian header followed
+ * by the input events:
+ * <pre>
+ *   int   magic ("PMRL")
+ *   byte  format version
+ *   long  seed
+ *   long  maze hash
+ *   int   frame rate
+ *   int   number of stored enemies per ghost marker
+ *   byte  mode flags: 1 for pursuit, 2 for fixed point
+ *   int   number of frames simulated
+ *   int   final score
+ *   int   final number of lives
+ *   long  final state checksum
+ *   int   number of events
+ *   int   number of event bytes
+ *   ...   events
+ * </pre>
+ * Each event is a single unsigned variable-length integer (seven bits per
+ * byte, low bits first) holding the number of frames since the previous
+ * event shifted left by two, ored with the ordinal of the direction.  A
+ * typical event takes one or two bytes.
+ * <p>
+ * The enemies per marker and the modes are those of the game when the
+ * log was finished; modes are expected to be set before the first frame
+ * and not changed during the game.
+ */
+public final class InputLog
+{
+  /**
+   * First four bytes of every encoded log.
+   */
+  public static final int MAGIC = 0x504D524C;
+  
+  /**
+   * Current format version.
+   */
+  public static final int VERSION = 2;
+  
+  /**
+   * Size in bytes of the encoded header.
+   */
+  public static final int HEADER_SIZE = 4 + 1 + 8 + 8 + 4 + 4 + 1 + 4 + 4 + 4 + 8 + 4 + 4;
+  
+  /**
+   * Mode flag for a game with pursuit on.
+   */
+  public static final int PURSUIT = 1;
+  
+  /**
+   * Mode flag for a game with fixed-point positions.
+   */
+  public static final int FIXED_POINT = 2;
+  
+  private static final Direction[] DIRECTIONS = Direction.values();
+  
+  private final long seed;
+  private final long mazeHash;
+  private final int frameRate;
+  private final int ghostsPerMarker;
+  private final int modes;
+  private final int frameCount;
+  private final int finalScore;
+  private final int finalLives;
+  private final long finalChecksum;
+  private final int eventCount;
+  
+  /**
+   * Encoded events; read-only, position zero.
+   */
+  private final ByteBuffer events;
+  
+  /**
+   * Constructs a log from its parts.
+   */
+  InputLog(long seed, long mazeHash, int frameRate, int ghostsPerMarker, int modes,
+      int frameCount, int finalScore, int finalLives, long finalChecksum,
+      int eventCount, ByteBuffer events)
+  {
+    this.seed = seed;
+    this.mazeHash = mazeHash;
+    this.frameRate = frameRate;
+    this.ghostsPerMarker = ghostsPerMarker;
+    this.modes = modes;
+    this.frameCount = frameCount;
+    this.finalScore = finalScore;
+    this.finalLives = finalLives;
+    this.finalChecksum = finalChecksum;
+    this.eventCount = eventCount;
+    this.events = events.asReadOnlyBuffer();
+  }
+  
+  /**
+   * Returns the seed of the recorded game.
+   * @return
+   *   the seed
+   */
+  public long getSeed()
+  {
+    return seed;
+  }
+  
+  /**
+   * Returns the hash of the maze the game was played on.
+   * @return
+   *   maze hash, as computed by PacmanGame.hashMaze()
+   */
+  public long getMazeHash()
+  {
+    return mazeHash;
+  }
+  
+  /**
+   * Returns the frame rate of the recorded game.
+   * @return
+   *   frames per second
+   */
+  public int getFrameRate()
+  {
+    return frameRate;
+  }
+  
+  /**
+   * Returns the number of stored enemies per ghost marker of the recorded
+   * game.
+   * @return
+   *   enemies per marker, or zero for the usual ghosts
+   */
+  public int getGhostsPerMarker()
+  {
+    return ghostsPerMarker;
+  }
+  
+  /**
+   * Returns the modes of the recorded game.
+   * @return
+   *   mode flags, a combination of PURSUIT and FIXED_POINT
+   */
+  public int getModes()
+  {
+    return modes;
+  }
+  
+  /**
+   * Returns the mode flags of the given game.
+   * @param game
+   *   the game
+   * @return
+   *   mode flags, a combination of PURSUIT and FIXED_POINT
+   */
+  public static int modesOf(PacmanGame game)
+  {
+    return (game.isPursuit() ? PURSUIT : 0) | (game.isFixedPoint() ? FIXED_POINT : 0);
+  }
+  
+  /**
+   * Returns the number of frames simulated when recording finished.
+   * @return
+   *   number of frames
+   */
+  public int getFrameCount()
+  {
+    return frameCount;
+  }
+  
+  /**
+   * Returns the score when recording finished.
+   * @return
+   *   final score
+   */
+  public int getFinalScore()
+  {
+    return finalScore;
+  }
+  
+  /**
+   * Returns the number of lives remaining when recording finished.
+   * @return
+   *   final number of lives
+   */
+  public int getFinalLives()
+  {
+    return finalLives;
+  }
+  
+  /**
+   * Returns the game's state checksum when recording finished.
+   * @return
+   *   final checksum
+   */
+  public long getFinalChecksum()
+  {
+    return finalChecksum;
+  }
+  
+  /**
+   * Returns the number of recorded input events.
+   * @return
+   *   number of events
+   */
+  public int getEventCount()
+  {
+    return eventCount;
+  }
+  
+  /**
+   * Returns the number of bytes in the encoded form of this log.
+   * @return
+   *   encoded size
+   */
+  public int getEncodedSize()
+  {
+    return HEADER_SIZE + events.limit();
+  }
+  
+  /**
+   * Returns a cursor over the events in this log.
+   * @return
+   *   new cursor positioned before the first event
+   */
+  public Cursor cursor()
+  {
+    return new Cursor(events.duplicate());
+  }
+  
+  /**
+   * Writes the encoded form of this log to the given stream.
+   * @param out
+   *   destination stream
+   * @throws IOException
+   *   if the stream cannot be written
+   */
+  public void writeTo(OutputStream out) throws IOException
+  {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeByte(VERSION);
+    data.writeLong(seed);
+    data.writeLong(mazeHash);
+    data.writeInt(frameRate);
+    data.writeInt(ghostsPerMarker);
+    data.writeByte(modes);
+    data.writeInt(frameCount);
+    data.writeInt(finalScore);
+    data.writeInt(finalLives);
+    data.writeLong(finalChecksum);
+    data.writeInt(eventCount);
+    data.writeInt(events.limit());
+    ByteBuffer copy = events.duplicate();
+    byte[] chunk = new byte[Math.min(copy.remaining(), 8192)];
+    while (copy.hasRemaining())
+    {
+      int n = Math.min(chunk.length, copy.remaining());
+      copy.get(chunk, 0, n);
+      data.write(chunk, 0, n);
+    }
+    data.flush();
+  }
+  
+  /**
+   * Returns the encoded form of this log.
+   * @return
+   *   encoded bytes
+   */
+  public byte[] toBytes()
+  {
+    ByteBuffer buf = ByteBuffer.allocate(getEncodedSize());
+    buf.putInt(MAGIC);
+    buf.put((byte) VERSION);
+    buf.putLong(seed);
+    buf.putLong(mazeHash);
+    buf.putInt(frameRate);
+    buf.putInt(ghostsPerMarker);
+    buf.put((byte) modes);
+    buf.putInt(frameCount);
+    buf.putInt(finalScore);
+    buf.putInt(finalLives);
+    buf.putLong(finalChecksum);
+    buf.putInt(eventCount);
+    buf.putInt(events.limit());
+    buf.put(events.duplicate());
+    return buf.array();
+  }
+  
+  /**
+   * Decodes a log starting at the buffer's current position and advances
+   * the position past it.  The events are not copied, so the returned log
+   * shares its content with the given buffer.
+   * @param buf
+   *   buffer containing an encoded log
+   * @return
+   *   the decoded log
+   * @throws IllegalArgumentException
+   *   if the buffer does not contain a valid log
+   */
+  public static InputLog read(ByteBuffer buf)
+  {
+    if (buf.remaining() < HEADER_SIZE)
+    {
+      throw new IllegalArgumentException("Truncated input log header");
+    }
+    buf.order(ByteOrder.BIG_ENDIAN);
+    if (buf.getInt() != MAGIC)
+    {
+      throw new IllegalArgumentException("Not an input log");
+    }
+    int version = buf.get();
+    if (version != VERSION)
+    {
+      throw new IllegalArgumentException("Unsupported input log version " + version);
+    }
+    long seed = buf.getLong();
+    long mazeHash = buf.getLong();
+    int frameRate = buf.getInt();
+    int ghostsPerMarker = buf.getInt();
+    int modes = buf.get();
+    if (ghostsPerMarker < 0 || (modes & ~(PURSUIT | FIXED_POINT)) != 0)
+    {
+      throw new IllegalArgumentException("Invalid input log settings");
+    }
+    int frameCount = buf.getInt();
+    int finalScore = buf.getInt();
+    int finalLives = buf.getInt();
+    long finalChecksum = buf.getLong();
+    int eventCount = buf.getInt();
+    int eventBytes = buf.getInt();
+    if (eventBytes < 0 || eventBytes > buf.remaining())
+    {
+      throw new IllegalArgumentException("Truncated input log events");
+    }
+    ByteBuffer events = buf.slice();
+    events.limit(eventBytes);
+    buf.position(buf.position() + eventBytes);
+    return new InputLog(seed, mazeHash, frameRate, ghostsPerMarker, modes, frameCount,
+        finalScore, finalLives, finalChecksum, eventCount, events);
+  }
+  
+  /**
+   * Decodes a log from the given bytes.
+   * @param bytes
+   *   encoded log
+   * @return
+   *   the decoded log
+   */
+  public static InputLog read(byte[] bytes)
+  {
+    return read(ByteBuffer.wrap(bytes));
+  }
+  
+  /**
+   * Returns true if the given game was constructed from the same maze,
+   * seed, frame rate and enemies per marker as the recorded game, and has
+   * the same modes.
+   * @param game
+   *   game to check
+   * @return
+   *   true if the game matches this log
+   */
+  public boolean matches(PacmanGame game)
+  {
+    return game.getSeed() == seed && game.getMazeHash() == mazeHash
+        && game.getFrameRate() == frameRate && game.getGhostsPerMarker() == ghostsPerMarker
+        && modesOf(game) == modes;
+  }
+  
+  /**
+   * Sequential reader for the events in a log.  After a successful call
+   * to next(), getFrame() and getDirection() describe the current event.
+   */
+  public static final class Cursor
+  {
+    private final ByteBuffer buf;
+    private int frame;
+    private Direction dir;
+    
+    private Cursor(ByteBuffer buf)
+    {
+      this.buf = buf;
+    }
+    
+    /**
+     * Advances to the next event.
+     * @return
+     *   false if there are no more events
+     */
+    public boolean next()
+    {
+      if (!buf.hasRemaining())
+      {
+        return false;
+      }
+      long value = 0;
+      int shift = 0;
+      int b;
+      do
+      {
+        b = buf.get();
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      frame += (int) (value >>> 2);
+      dir = DIRECTIONS[(int) (value & 3)];
+      return true;
+    }
+    
+    /**
+     * Returns the frame of the current event.
+     * @return
+     *   frame count at the time of the turn
+     */
+    public int getFrame()
+    {
+      return frame;
+    }
+    
+    /**
+     * Returns the direction of the current event.
+     * @return
+     *   requested direction
+     */
+    public Direction getDirection()
+    {
+      return dir;
+    }
+  }
+}
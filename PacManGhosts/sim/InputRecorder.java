@@ -0,0 +1,125 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import api.Direction;
+import api.PacmanGame;
+import api.TurnListener;
+
+/**
+ * Records every call to turnPlayer() on a game into a compact binary
+ * event stream.  Typical usage:
+ * <pre>
+ *   InputRecorder recorder = InputRecorder.attach(game);
+ *   ... play the game ...
+ *   InputLog log = recorder.finish();
+ * </pre>
+ */
+public class InputRecorder implements TurnListener
+{
+  /**
+   * The game being recorded.
+   */
+  private final PacmanGame game;
+  
+  /**
+   * Encoded events so far.
+   */
+  private byte[] bytes = new byte[256];
+  
+  /**
+   * Number of bytes of <code>bytes</code> in use.
+   */
+  private int size;
+  
+  /**
+   * Number of events recorded.
+   */
+  private int eventCount;
+  
+  /**
+   * Frame of the most recent event.
+   */
+  private int lastFrame;
+  
+  /**
+   * Constructs a recorder for the given game.  The recorder must be
+   * registered with setTurnListener() before any input is given, and the
+   * game must not have been updated yet.
+   * @param game
+   *   game to record
+   */
+  public InputRecorder(PacmanGame game)
+  {
+    if (game.getFrameCount() != 0)
+    {
+      throw new IllegalStateException("Recording must start before the first frame");
+    }
+    this.game = game;
+  }
+  
+  /**
+   * Creates a recorder and registers it as the given game's turn listener.
+   * @param game
+   *   game to record
+   * @return
+   *   the new recorder
+   */
+  public static InputRecorder attach(PacmanGame game)
+  {
+    InputRecorder recorder = new InputRecorder(game);
+    game.setTurnListener(recorder);
+    return recorder;
+  }
+  
+  @Override
+  public void playerTurned(int frame, Direction dir)
+  {
+    if (dir == null)
+    {
+      return;
+    }
+    long value = ((long) (frame - lastFrame) << 2) | dir.ordinal();
+    lastFrame = frame;
+    if (size + 10 > bytes.length)
+    {
+      bytes = Arrays.copyOf(bytes, bytes.length * 2);
+    }
+    while ((value & ~0x7FL) != 0)
+    {
+      bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[size++] = (byte) value;
+    eventCount += 1;
+  }
+  
+  /**
+   * Returns the number of events recorded so far.
+   * @return
+   *   number of events
+   */
+  public int getEventCount()
+  {
+    return eventCount;
+  }
+  
+  /**
+   * Stops recording and returns a log of the input together with the
+   * current score, lives and state checksum of the game.
+   * @return
+   *   the completed log
+   */
+  public InputLog finish()
+  {
+    if (game.getTurnListener() == this)
+    {
+      game.setTurnListener(null);
+    }
+    return new InputLog(game.getSeed(), game.getMazeHash(), game.getFrameRate(),
+        game.getGhostsPerMarker(), InputLog.modesOf(game), game.getFrameCount(),
+        game.getScore(), game.getLives(), game.getStateChecksum(),
+        eventCount, ByteBuffer.wrap(Arrays.copyOf(bytes, size)));
+  }
+}
@@ -0,0 +1,461 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import api.MazeLayout;
+
+/**
+ * Generates Pacman mazes of any size, for testing how the engine scales
+ * beyond the hand-drawn mazes.  The same size and seed always produce the
+ * same maze.  Mazes use the usual text format and contain everything the
+ * hand-drawn ones do: a ghost house with B, P, I and C markers, a player
+ * start, dots, energizers and tunnels through the left and right edges.
+ * <p>
+ * The corridors are carved by a randomized depth-first search over a
+ * lattice of cells at odd coordinates, which gives a maze with exactly
+ * one path between any two cells.  The ghost house is then stamped over
+ * the center with a corridor all the way around it, which keeps the maze
+ * connected.  Finally the maze is braided: every dead end is joined to a
+ * neighboring corridor, or filled in if that is not possible, since
+ * ghosts cannot turn around in a dead end.
+ */
+public class MazeGenerator
+{
+  /**
+   * Smallest number of rows in a generated maze.
+   */
+  public static final int MIN_ROWS = 9;
+
+  /**
+   * Smallest number of columns in a generated maze.
+   */
+  public static final int MIN_COLUMNS = 12;
+
+  /**
+   * Approximate number of rows per tunnel when the number of tunnels
+   * is not given.
+   */
+  private static final int ROWS_PER_TUNNEL = 30;
+
+  /**
+   * Approximate number of open cells per energizer, beyond the four
+   * in the corners.
+   */
+  private static final int CELLS_PER_ENERGIZER = 400;
+
+  private static final byte WALL = '#';
+  private static final byte DOT = '.';
+  private static final byte ENERGIZER = '*';
+  private static final byte EMPTY = ' ';
+
+  /**
+   * Row and column offsets for the four directions.
+   */
+  private static final int[] DR = {-1, 0, 1, 0};
+  private static final int[] DC = {0, -1, 0, 1};
+
+  private final int numRows;
+  private final int numCols;
+  private final long seed;
+  private final int numTunnels;
+
+  /**
+   * Cells of the maze being generated, in row-major order.
+   */
+  private byte[] cells;
+
+  /**
+   * Cells that belong to the ghost house or the corridor around it,
+   * which are not changed when braiding.
+   */
+  private boolean[] reserved;
+
+  /**
+   * Constructs a generator for mazes of the given size, with about one
+   * tunnel for every 30 rows.
+   * @param numRows
+   *   number of rows, at least MIN_ROWS
+   * @param numCols
+   *   number of columns, at least MIN_COLUMNS
+   * @param seed
+   *   seed for the random choices
+   */
+  public MazeGenerator(int numRows, int numCols, long seed)
+  {
+    this(numRows, numCols, seed, Math.max(1, numRows / ROWS_PER_TUNNEL));
+  }
+
+  /**
+   * Constructs a generator for mazes of the given size.
+   * @param numRows
+   *   number of rows, at least MIN_ROWS
+   * @param numCols
+   *   number of columns, at least MIN_COLUMNS
+   * @param seed
+   *   seed for the random choices
+   * @param numTunnels
+   *   number of rows that wrap around from the left edge to the right
+   */
+  public MazeGenerator(int numRows, int numCols, long seed, int numTunnels)
+  {
+    if (numRows < MIN_ROWS || numCols < MIN_COLUMNS)
+    {
+      throw new IllegalArgumentException("Maze must be at least " + MIN_ROWS + " by " + MIN_COLUMNS);
+    }
+    this.numRows = numRows;
+    this.numCols = numCols;
+    this.seed = seed;
+    this.numTunnels = numTunnels;
+  }
+
+  /**
+   * Generates the maze as rows of text, as for the PacmanGame constructor.
+   * @return
+   *   rows of the maze
+   */
+  public String[] generate()
+  {
+    build();
+    String[] rows = new String[numRows];
+    for (int row = 0; row < numRows; ++row)
+    {
+      rows[row] = new String(cells, row * numCols, numCols, StandardCharsets.US_ASCII);
+    }
+    cells = null;
+    reserved = null;
+    return rows;
+  }
+
+  /**
+   * Generates the maze as a layout.
+   * @return
+   *   layout of the maze
+   */
+  public MazeLayout generateLayout()
+  {
+    return MazeLayout.fromRows(generate());
+  }
+
+  /**
+   * Writes the maze as text, one line per row.
+   * @param out
+   *   stream to write to, which is not closed
+   * @throws IOException
+   *   if the stream cannot be written
+   */
+  public void writeTo(OutputStream out) throws IOException
+  {
+    build();
+    for (int row = 0; row < numRows; ++row)
+    {
+      out.write(cells, row * numCols, numCols);
+      out.write('\n');
+    }
+    out.flush();
+    cells = null;
+    reserved = null;
+  }
+
+  /**
+   * Writes a maze to standard output.  Arguments are the number of rows,
+   * the number of columns, and optionally the seed and number of tunnels.
+   * @param args
+   *   rows, columns, [seed, [tunnels]]
+   * @throws IOException
+   *   if the output cannot be written
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 2)
+    {
+      System.err.println("usage: MazeGenerator rows columns [seed [tunnels]]");
+      System.exit(1);
+    }
+    int rows = Integer.parseInt(args[0]);
+    int cols = Integer.parseInt(args[1]);
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+    MazeGenerator gen = args.length > 3
+        ? new MazeGenerator(rows, cols, seed, Integer.parseInt(args[3]))
+        : new MazeGenerator(rows, cols, seed);
+    gen.writeTo(new BufferedOutputStream(System.out, 1 << 16));
+  }
+
+  /**
+   * Generates a maze into the cell array.
+   */
+  private void build()
+  {
+    SplittableRandom rand = new SplittableRandom(seed);
+    cells = new byte[numRows * numCols];
+    reserved = new boolean[numRows * numCols];
+    Arrays.fill(cells, WALL);
+    carve(rand);
+
+    // center of the ghost house, on the lattice
+    int houseRow = (numRows / 2) | 1;
+    int houseCol = ((numCols - 2) / 2) | 1;
+    if (houseRow + 2 > numRows - 2)
+    {
+      houseRow -= 2;
+    }
+    if (houseCol + 5 > numCols - 2)
+    {
+      houseCol -= 2;
+    }
+    stampHouse(houseRow, houseCol);
+    addTunnels(houseRow);
+    braid(rand);
+    addPellets(rand);
+  }
+
+  /**
+   * Carves a perfect maze by a randomized depth-first search over the
+   * cells at odd row and column.
+   */
+  private void carve(SplittableRandom rand)
+  {
+    int roomRows = (numRows - 1) / 2;
+    int roomCols = (numCols - 1) / 2;
+    boolean[] visited = new boolean[roomRows * roomCols];
+    int[] stack = new int[roomRows * roomCols];
+    int top = 0;
+    int start = rand.nextInt(roomRows * roomCols);
+    visited[start] = true;
+    open(2 * (start / roomCols) + 1, 2 * (start % roomCols) + 1);
+    stack[top++] = start;
+    int[] choices = new int[4];
+    while (top > 0)
+    {
+      int room = stack[top - 1];
+      int r = room / roomCols;
+      int c = room % roomCols;
+      int count = 0;
+      for (int d = 0; d < 4; ++d)
+      {
+        int nr = r + DR[d];
+        int nc = c + DC[d];
+        if (nr >= 0 && nr < roomRows && nc >= 0 && nc < roomCols && !visited[nr * roomCols + nc])
+        {
+          choices[count++] = d;
+        }
+      }
+      if (count == 0)
+      {
+        top -= 1;
+        continue;
+      }
+      int d = choices[rand.nextInt(count)];
+      int next = (r + DR[d]) * roomCols + c + DC[d];
+      visited[next] = true;
+      open(2 * r + 1 + DR[d], 2 * c + 1 + DC[d]);
+      open(2 * r + 1 + 2 * DR[d], 2 * c + 1 + 2 * DC[d]);
+      stack[top++] = next;
+    }
+  }
+
+  /**
+   * Replaces the area around the given cell with the ghost house: a
+   * block of wall with a pocket holding the four ghost markers, open
+   * to the top, surrounded by a corridor.  Anything the block cuts off
+   * stays connected through the corridor.
+   */
+  private void stampHouse(int row, int col)
+  {
+    for (int r = row - 2; r <= row + 2; ++r)
+    {
+      for (int c = col - 4; c <= col + 5; ++c)
+      {
+        boolean ring = r == row - 2 || r == row + 2 || c == col - 4 || c == col + 5;
+        cells[r * numCols + c] = ring ? EMPTY : WALL;
+        reserved[r * numCols + c] = true;
+      }
+    }
+    byte[] markers = {'B', 'P', 'I', 'C'};
+    for (int i = 0; i < markers.length; ++i)
+    {
+      cells[row * numCols + col - 1 + i] = markers[i];
+      cells[(row - 1) * numCols + col - 1 + i] = EMPTY;
+    }
+    cells[(row + 2) * numCols + col] = 'S';
+  }
+
+  /**
+   * Opens tunnels through the left and right edges on rows spread
+   * evenly down the maze, avoiding the ghost house.
+   */
+  private void addTunnels(int houseRow)
+  {
+    for (int i = 0; i < numTunnels; ++i)
+    {
+      int row = ((i + 1) * numRows / (numTunnels + 1)) | 1;
+      if (Math.abs(row - houseRow) <= 2)
+      {
+        row = houseRow + 4;
+      }
+      if (row > numRows - 2)
+      {
+        continue;
+      }
+      cells[row * numCols] = EMPTY;
+      reserved[row * numCols] = true;
+      for (int col = numCols - 1; cells[row * numCols + col] == WALL; --col)
+      {
+        cells[row * numCols + col] = EMPTY;
+        reserved[row * numCols + col] = col == numCols - 1;
+      }
+    }
+  }
+
+  /**
+   * Removes every dead end, preferably by opening the wall between it
+   * and another corridor, otherwise by filling it in.  Filling in a dead
+   * end can make its neighbor a dead end, so the neighbor is then checked
+   * in turn.
+   */
+  private void braid(SplittableRandom rand)
+  {
+    int[] choices = new int[4];
+    for (int start = 0; start < cells.length; ++start)
+    {
+      int cell = start;
+      while (cell >= 0 && cells[cell] != WALL && !reserved[cell] && degree(cell) <= 1)
+      {
+        int r = cell / numCols;
+        int c = cell % numCols;
+        int count = 0;
+        for (int d = 0; d < 4; ++d)
+        {
+          int wr = r + DR[d];
+          int wc = c + DC[d];
+          int br = r + 2 * DR[d];
+          int bc = c + 2 * DC[d];
+          if (br > 0 && br < numRows - 1 && bc > 0 && bc < numCols - 1
+              && cells[wr * numCols + wc] == WALL && !reserved[wr * numCols + wc]
+              && cells[br * numCols + bc] != WALL)
+          {
+            choices[count++] = d;
+          }
+        }
+        if (count > 0)
+        {
+          int d = choices[rand.nextInt(count)];
+          open(r + DR[d], c + DC[d]);
+          cell = -1;
+        }
+        else
+        {
+          // fill in, then look at the one neighbor, if any
+          cells[cell] = WALL;
+          int next = -1;
+          for (int d = 0; d < 4; ++d)
+          {
+            int n = neighbor(cell, d);
+            if (n >= 0 && cells[n] != WALL)
+            {
+              next = n;
+            }
+          }
+          cell = next;
+        }
+      }
+    }
+  }
+
+  /**
+   * Puts a dot in every open cell outside the ghost house and tunnels,
+   * with energizers in the cells nearest the four corners and a few
+   * more scattered at random.
+   */
+  private void addPellets(SplittableRandom rand)
+  {
+    int open = 0;
+    for (int i = 0; i < cells.length; ++i)
+    {
+      if (cells[i] == EMPTY && !reserved[i])
+      {
+        cells[i] = DOT;
+        open += 1;
+      }
+    }
+    placeEnergizer(1, 1, 1, 1);
+    placeEnergizer(1, numCols - 2, 1, -1);
+    placeEnergizer(numRows - 2, 1, -1, 1);
+    placeEnergizer(numRows - 2, numCols - 2, -1, -1);
+    for (int i = open / CELLS_PER_ENERGIZER - 4; i > 0; --i)
+    {
+      int cell = rand.nextInt(cells.length);
+      if (cells[cell] == DOT)
+      {
+        cells[cell] = ENERGIZER;
+      }
+    }
+  }
+
+  /**
+   * Turns the dot nearest the given corner into an energizer, searching
+   * diagonals of increasing distance from the corner.
+   */
+  private void placeEnergizer(int row, int col, int rowStep, int colStep)
+  {
+    for (int dist = 0; dist < numRows + numCols; ++dist)
+    {
+      for (int i = 0; i <= dist; ++i)
+      {
+        int r = row + rowStep * i;
+        int c = col + colStep * (dist - i);
+        if (r > 0 && r < numRows - 1 && c > 0 && c < numCols - 1 && cells[r * numCols + c] == DOT)
+        {
+          cells[r * numCols + c] = ENERGIZER;
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of open neighbors of the given cell, counting
+   * the wraparound at the left and right edges.
+   */
+  private int degree(int cell)
+  {
+    int count = 0;
+    for (int d = 0; d < 4; ++d)
+    {
+      int n = neighbor(cell, d);
+      if (n >= 0 && cells[n] != WALL)
+      {
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns the neighbor of the given cell in the given direction,
+   * wrapping around the left and right edges, or -1 if it is outside
+   * the maze.
+   */
+  private int neighbor(int cell, int d)
+  {
+    int r = cell / numCols + DR[d];
+    int c = cell % numCols + DC[d];
+    if (r < 0 || r >= numRows)
+    {
+      return -1;
+    }
+    return r * numCols + (c + numCols) % numCols;
+  }
+
+  /**
+   * Opens the given cell.
+   */
+  private void open(int row, int col)
+  {
+    cells[row * numCols + col] = EMPTY;
+  }
+}
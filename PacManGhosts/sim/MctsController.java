@@ -0,0 +1,515 @@
+package sim;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import api.Direction;
+import api.GameSnapshot;
+import api.MazeLayout;
+import api.PacmanGame;
+
+/**
+ * Autopilot that chooses the player's direction by Monte Carlo tree
+ * search over copies of the game.  Each call to chooseDirection() takes
+ * a snapshot of the game and searches until a fixed time budget runs out,
+ * so it can be called once per frame without missing the frame deadline.
+ * <p>
+ * The search is root-parallel: each worker on a work-stealing pool owns
+ * a private game built from the same maze, restores the snapshot into it,
+ * and grows its own tree; the root statistics of all the trees are then
+ * combined and the most visited direction is chosen.  A move in the tree
+ * is a direction held for a few frames, and a direction is only considered
+ * if Pacman.tryTurn() accepts it in that state, so the search uses the
+ * same legality rules as a human player.  After the tree, each simulation
+ * continues with random turns up to a fixed horizon, with the ghosts
+ * behaving exactly as they do in the real game.  Simulations are scored
+ * by points gained, and any simulation in which the player dies scores
+ * zero.
+ * <p>
+ * Because the amount of search depends on elapsed time, the choices are
+ * not reproducible from run to run.  The worker games are built with the
+ * same settings as the first game the controller is asked about, so a
+ * controller should only be used with games built the same way.
+ */
+public class MctsController implements PlayerController
+{
+  /**
+   * Default search time per call, about half of a 60 FPS frame.
+   */
+  public static final long DEFAULT_BUDGET_NANOS = 8_000_000L;
+
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /**
+   * Number of frames a direction is held for each move of a simulation.
+   */
+  private static final int MOVE_FRAMES = 8;
+
+  /**
+   * Maximum depth of a tree.
+   */
+  private static final int TREE_DEPTH = 8;
+
+  /**
+   * Number of moves in each simulation, counting moves in the tree.
+   */
+  private static final int HORIZON = 20;
+
+  /**
+   * Points gained in a simulation that count as a perfect result.
+   */
+  private static final double REWARD_SCALE = 200;
+
+  /**
+   * Exploration constant for UCB1.
+   */
+  private static final double EXPLORATION = 0.7;
+
+  private final MazeLayout layout;
+  private final long budgetNanos;
+  private final ForkJoinPool pool;
+  private final long seed;
+
+  /**
+   * One worker per thread in the pool, created on first use.
+   */
+  private Worker[] workers;
+
+  /**
+   * Snapshot of the game being played, reused between calls.
+   */
+  private GameSnapshot root;
+
+  private long totalRollouts;
+  private long totalSearchNanos;
+  private long maxSearchNanos;
+  private int lastRollouts;
+
+  /**
+   * Constructs a controller for games on the given maze with the default
+   * time budget, searching on the common pool.
+   * @param rows
+   *   maze rows, as for the PacmanGame constructor
+   */
+  public MctsController(String[] rows)
+  {
+    this(MazeLayout.fromRows(rows), DEFAULT_BUDGET_NANOS, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * Constructs a controller for games on the given maze with the default
+   * time budget, searching on the common pool.
+   * @param layout
+   *   layout of the maze
+   */
+  public MctsController(MazeLayout layout)
+  {
+    this(layout, DEFAULT_BUDGET_NANOS, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * Constructs a controller for games on the given maze.
+   * @param rows
+   *   maze rows, as for the PacmanGame constructor
+   * @param budgetNanos
+   *   search time per call, in nanoseconds
+   * @param pool
+   *   pool on which to run the searches
+   * @param seed
+   *   seed for the random choices in simulations
+   */
+  public MctsController(String[] rows, long budgetNanos, ForkJoinPool pool, long seed)
+  {
+    this(MazeLayout.fromRows(rows), budgetNanos, pool, seed);
+  }
+
+  /**
+   * Constructs a controller for games on the given maze.
+   * @param layout
+   *   layout of the maze
+   * @param budgetNanos
+   *   search time per call, in nanoseconds
+   * @param pool
+   *   pool on which to run the searches
+   * @param seed
+   *   seed for the random choices in simulations
+   */
+  public MctsController(MazeLayout layout, long budgetNanos, ForkJoinPool pool, long seed)
+  {
+    this.layout = layout;
+    this.budgetNanos = budgetNanos;
+    this.pool = pool;
+    this.seed = seed;
+  }
+
+  @Override
+  public Direction chooseDirection(PacmanGame game)
+  {
+    long start = System.nanoTime();
+    if (workers == null)
+    {
+      createWorkers(game);
+    }
+    root = game.snapshot(root);
+    pool.invoke(new SearchTask(root, start + budgetNanos, 0, workers.length));
+
+    int[] visits = new int[DIRECTIONS.length];
+    int rollouts = 0;
+    for (Worker w : workers)
+    {
+      rollouts += w.rollouts;
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        Node child = w.tree.children[d];
+        if (child != null)
+        {
+          visits[d] += child.visits;
+        }
+      }
+    }
+    int best = -1;
+    for (int d = 0; d < DIRECTIONS.length; ++d)
+    {
+      if (visits[d] > 0 && (best < 0 || visits[d] > visits[best]))
+      {
+        best = d;
+      }
+    }
+
+    long elapsed = System.nanoTime() - start;
+    lastRollouts = rollouts;
+    totalRollouts += rollouts;
+    totalSearchNanos += elapsed;
+    maxSearchNanos = Math.max(maxSearchNanos, elapsed);
+    return best < 0 ? null : DIRECTIONS[best];
+  }
+
+  /**
+   * Returns the number of simulations run during the most recent call
+   * to chooseDirection(), over all workers.
+   * @return
+   *   number of simulations
+   */
+  public int getLastRollouts()
+  {
+    return lastRollouts;
+  }
+
+  /**
+   * Returns the total number of simulations run so far.
+   * @return
+   *   number of simulations
+   */
+  public long getTotalRollouts()
+  {
+    return totalRollouts;
+  }
+
+  /**
+   * Returns the average number of simulations per second of search
+   * time so far, over all workers.
+   * @return
+   *   simulations per second
+   */
+  public double getRolloutsPerSecond()
+  {
+    return totalSearchNanos == 0 ? 0 : totalRollouts * 1e9 / totalSearchNanos;
+  }
+
+  /**
+   * Returns the longest time taken by a call to chooseDirection() so far.
+   * @return
+   *   longest call, in nanoseconds
+   */
+  public long getMaxSearchNanos()
+  {
+    return maxSearchNanos;
+  }
+
+  /**
+   * Creates one worker with its own game for each thread in the pool.
+   * The worker games are built with the same constructor arguments and
+   * modes as the given game, so that its snapshots can be restored into
+   * them and the simulations follow the same rules.
+   */
+  private void createWorkers(PacmanGame game)
+  {
+    if (game.getMazeHash() != layout.getHash())
+    {
+      throw new IllegalArgumentException("Game is not on the controller's maze");
+    }
+    SplittableRandom seeds = new SplittableRandom(seed);
+    GameSnapshot state = game.snapshot();
+    Worker[] created = new Worker[Math.max(1, pool.getParallelism())];
+    for (int i = 0; i < created.length; ++i)
+    {
+      PacmanGame copy = new PacmanGame(layout, game.getFrameRate(), game.getSeed(), game.getGhostsPerMarker());
+      copy.setPursuit(game.isPursuit());
+      copy.setFixedPoint(game.isFixedPoint());
+      if (!state.isCompatible(copy))
+      {
+        throw new IllegalArgumentException("Cannot build a search copy of the game: "
+            + game.getEnemies().length + " enemies, copy has " + copy.getEnemies().length);
+      }
+      created[i] = new Worker(copy, seeds.split());
+    }
+    workers = created;
+  }
+
+  /**
+   * Task that runs the searches for a range of workers, splitting the
+   * range in half until it holds a single worker.
+   */
+  private class SearchTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final GameSnapshot start;
+    private final long deadline;
+    private final int lo;
+    private final int hi;
+
+    private SearchTask(GameSnapshot start, long deadline, int lo, int hi)
+    {
+      this.start = start;
+      this.deadline = deadline;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (hi - lo == 1)
+      {
+        workers[lo].search(start, deadline);
+      }
+      else
+      {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new SearchTask(start, deadline, lo, mid), new SearchTask(start, deadline, mid, hi));
+      }
+    }
+  }
+
+  /**
+   * Search state confined to a single thread at a time: a private game,
+   * random stream and tree.
+   */
+  private static class Worker
+  {
+    private final PacmanGame game;
+    private final SplittableRandom rand;
+
+    /**
+     * Snapshot used to undo trial turns when finding legal moves.
+     */
+    private GameSnapshot scratch;
+
+    /**
+     * Nodes on the path of the current simulation.
+     */
+    private final Node[] path = new Node[TREE_DEPTH + 1];
+
+    private Node tree;
+    private int rollouts;
+
+    private Worker(PacmanGame game, SplittableRandom rand)
+    {
+      this.game = game;
+      this.rand = rand;
+    }
+
+    /**
+     * Runs simulations from the given state until the deadline.
+     */
+    private void search(GameSnapshot start, long deadline)
+    {
+      tree = new Node();
+      rollouts = 0;
+      long begin = System.nanoTime();
+      long now = begin;
+
+      // stop early enough that one more simulation of average length
+      // would still finish before the deadline
+      while (now + (rollouts == 0 ? 0 : (now - begin) / rollouts) < deadline)
+      {
+        game.restore(start);
+        simulate();
+        rollouts += 1;
+        now = System.nanoTime();
+      }
+    }
+
+    /**
+     * Runs one simulation from the current state of the game, descending
+     * and growing the tree, then backs up the result.
+     */
+    private void simulate()
+    {
+      int startScore = game.getScore();
+      int startLives = game.getLives();
+      Node node = tree;
+      int depth = 0;
+      int moves = 0;
+      path[0] = node;
+
+      // descend the tree until reaching a new node
+      while (depth < TREE_DEPTH && !isTerminal())
+      {
+        if (node.legal < 0)
+        {
+          node.legal = findLegalMoves();
+        }
+        int d = node.select(rand);
+        if (d < 0)
+        {
+          break;
+        }
+        if (node.children[d] == null)
+        {
+          node.children[d] = new Node();
+        }
+        node = node.children[d];
+        move(DIRECTIONS[d]);
+        moves += 1;
+        depth += 1;
+        path[depth] = node;
+        if (node.visits == 0)
+        {
+          break;
+        }
+      }
+
+      // random moves to the horizon
+      while (moves < HORIZON && !isTerminal())
+      {
+        move(DIRECTIONS[rand.nextInt(DIRECTIONS.length)]);
+        moves += 1;
+      }
+
+      double reward;
+      if (game.getLives() < startLives)
+      {
+        reward = 0;
+      }
+      else if (game.levelOver())
+      {
+        reward = 1;
+      }
+      else
+      {
+        reward = 0.1 + 0.9 * Math.min(1.0, (game.getScore() - startScore) / REWARD_SCALE);
+      }
+      for (int i = 0; i <= depth; ++i)
+      {
+        path[i].visits += 1;
+        path[i].total += reward;
+      }
+    }
+
+    /**
+     * Returns true if the simulation cannot usefully continue.
+     */
+    private boolean isTerminal()
+    {
+      return game.isPlayerDead() || game.levelOver();
+    }
+
+    /**
+     * Turns the player and simulates frames until the move is over
+     * or the player dies.
+     */
+    private void move(Direction dir)
+    {
+      game.turnPlayer(dir);
+      for (int f = 0; f < MOVE_FRAMES && !isTerminal(); ++f)
+      {
+        game.updateAll();
+      }
+    }
+
+    /**
+     * Returns a mask of the directions that the player would accept
+     * as a turn in the current state, leaving the state unchanged.
+     */
+    private int findLegalMoves()
+    {
+      scratch = game.snapshot(scratch);
+      int mask = 0;
+      for (int d = 0; d < DIRECTIONS.length; ++d)
+      {
+        game.turnPlayer(DIRECTIONS[d]);
+        if (game.getPlayer().getCurrentDirection() == DIRECTIONS[d])
+        {
+          mask |= 1 << d;
+        }
+        game.restore(scratch);
+      }
+      return mask;
+    }
+  }
+
+  /**
+   * Node of a search tree, with children indexed by direction ordinal.
+   */
+  private static class Node
+  {
+    private final Node[] children = new Node[DIRECTIONS.length];
+
+    /**
+     * Mask of legal directions, or -1 if not yet computed.
+     */
+    private int legal = -1;
+
+    private int visits;
+    private double total;
+
+    /**
+     * Returns the direction to explore next: an untried legal direction
+     * chosen at random if there is one, otherwise the one with the best
+     * UCB1 score, or -1 if no direction is legal.
+     */
+    private int select(SplittableRandom rand)
+    {
+      int untried = 0;
+      for (int d = 0; d < children.length; ++d)
+      {
+        if ((legal & (1 << d)) != 0 && (children[d] == null || children[d].visits == 0))
+        {
+          untried |= 1 << d;
+        }
+      }
+      if (untried != 0)
+      {
+        int pick = rand.nextInt(Integer.bitCount(untried));
+        for (int d = 0; ; ++d)
+        {
+          if ((untried & (1 << d)) != 0 && pick-- == 0)
+          {
+            return d;
+          }
+        }
+      }
+
+      int best = -1;
+      double bestScore = 0;
+      double logVisits = Math.log(visits);
+      for (int d = 0; d < children.length; ++d)
+      {
+        if ((legal & (1 << d)) != 0)
+        {
+          Node c = children[d];
+          double score = c.total / c.visits + EXPLORATION * Math.sqrt(logVisits / c.visits);
+          if (best < 0 || score > bestScore)
+          {
+            best = d;
+            bestScore = score;
+          }
+        }
+      }
+      return best;
+    }
+  }
+}
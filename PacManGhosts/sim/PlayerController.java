@@ -0,0 +1,36 @@
+package sim;
+
+import api.Direction;
+import api.PacmanGame;
+
+/**
+ * Source of player input for a game that is run without a UI.
+ */
+public interface PlayerController
+{
+  /**
+   * Returns the direction the player should attempt to turn before
+   * the next frame is simulated, or null to leave the player alone.
+   * @param game
+   *   the game being simulated
+   * @return
+   *   desired direction, or null for no input
+   */
+  Direction chooseDirection(PacmanGame game);
+
+  /**
+   * Returns the number of consecutive frames, starting with the next one,
+   * before which chooseDirection() would certainly return null without
+   * changing any state, so that an engine may skip asking and fast-forward
+   * the game over them.  Controllers that cannot tell return zero, which
+   * means they are asked before every frame.
+   * @param game
+   *   the game being simulated
+   * @return
+   *   number of frames without input, or zero
+   */
+  default int getQuietFrames(PacmanGame game)
+  {
+    return 0;
+  }
+}
@@ -0,0 +1,57 @@
+package sim;
+
+import java.util.SplittableRandom;
+
+import api.Direction;
+import api.PacmanGame;
+
+/**
+ * Controller that makes the player wander, choosing a random direction
+ * at regular intervals.  The choices depend only on the seed, so runs
+ * using this controller are reproducible.
+ */
+public class RandomWalkController implements PlayerController
+{
+  private static final Direction[] DIRECTIONS = Direction.values();
+  
+  /**
+   * Source of random directions.
+   */
+  private final SplittableRandom rand;
+  
+  /**
+   * Number of frames between choices.
+   */
+  private final int interval;
+  
+  /**
+   * Constructs a controller with the given seed that chooses a new direction
+   * every given number of frames.
+   * @param seed
+   *   seed for the random directions
+   * @param interval
+   *   number of frames between choices
+   */
+  public RandomWalkController(long seed, int interval)
+  {
+    rand = new SplittableRandom(seed);
+    this.interval = interval;
+  }
+  
+  @Override
+  public Direction chooseDirection(PacmanGame game)
+  {
+    if (game.getFrameCount() % interval != 0)
+    {
+      return null;
+    }
+    return DIRECTIONS[rand.nextInt(DIRECTIONS.length)];
+  }
+
+  @Override
+  public int getQuietFrames(PacmanGame game)
+  {
+    int sinceChoice = game.getFrameCount() % interval;
+    return sinceChoice == 0 ? 0 : interval - sinceChoice;
+  }
+}
@@ -0,0 +1,207 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * File of concatenated input logs.  Logs are appended in their encoded
+ * form with no additional framing, since each log records its own length.
+ * Reading maps the file into memory in large windows, so the logs are
+ * decoded directly from the page cache without copying; this makes
+ * regression checks over thousands of recorded sessions cheap.
+ */
+public class ReplayArchive
+{
+  /**
+   * Largest region of the file mapped at once.
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+  
+  /**
+   * Number of logs verified in parallel at once by verifyAll().
+   */
+  private static final int BATCH_SIZE = 4096;
+  
+  /**
+   * Path of the archive file.
+   */
+  private final Path file;
+  
+  /**
+   * Constructs an archive backed by the given file, which need not
+   * exist yet.
+   * @param file
+   *   path of the archive
+   */
+  public ReplayArchive(Path file)
+  {
+    this.file = file;
+  }
+  
+  /**
+   * Appends the given logs to the archive, creating the file if necessary.
+   * @param logs
+   *   logs to append
+   * @throws IOException
+   *   if the file cannot be written
+   */
+  public void append(InputLog... logs) throws IOException
+  {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))
+    {
+      for (InputLog log : logs)
+      {
+        log.writeTo(out);
+      }
+    }
+  }
+  
+  /**
+   * Decodes every log in the archive, in order, passing each to the given
+   * action.  The logs share memory with the mapped file and should not be
+   * retained after the action returns unless they are small in number.
+   * @param action
+   *   action to perform on each log
+   * @throws IOException
+   *   if the file cannot be read
+   * @throws IllegalArgumentException
+   *   if the file contains a malformed log
+   */
+  public void forEach(Consumer<InputLog> action) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      long windowStart = 0;
+      MappedByteBuffer window = map(channel, windowStart, size);
+      while (windowStart + window.position() < size)
+      {
+        // remap so that the next log lies entirely within the window
+        if (!containsLog(window))
+        {
+          windowStart += window.position();
+          window = map(channel, windowStart, size);
+          if (!containsLog(window))
+          {
+            throw new IllegalArgumentException("Truncated input log at offset " + windowStart);
+          }
+        }
+        action.accept(InputLog.read(window));
+      }
+    }
+  }
+  
+  /**
+   * Returns all logs in the archive.  The logs are backed by a mapping
+   * of the file.
+   * @return
+   *   list of logs in file order
+   * @throws IOException
+   *   if the file cannot be read
+   */
+  public List<InputLog> readAll() throws IOException
+  {
+    List<InputLog> logs = new ArrayList<>();
+    forEach(logs::add);
+    return logs;
+  }
+  
+  /**
+   * Replays every log in the archive in parallel and returns those whose
+   * outcome does not match the recording.  The logs are read and verified
+   * a batch at a time, so that only one batch is held in memory however
+   * large the archive is.
+   * @param mazes
+   *   maze rows keyed by maze hash
+   * @return
+   *   logs that failed verification, in file order
+   * @throws IOException
+   *   if the file cannot be read
+   * @throws IllegalArgumentException
+   *   if a log was recorded on a maze not in the given map
+   */
+  public List<InputLog> verifyAll(Map<Long, String[]> mazes) throws IOException
+  {
+    Map<Long, Replayer> replayers = new HashMap<>();
+    for (Map.Entry<Long, String[]> e : mazes.entrySet())
+    {
+      replayers.put(e.getKey(), new Replayer(e.getValue()));
+    }
+    List<InputLog> batch = new ArrayList<>(BATCH_SIZE);
+    List<InputLog> result = new ArrayList<>();
+    forEach(log ->
+    {
+      batch.add(log);
+      if (batch.size() == BATCH_SIZE)
+      {
+        verifyBatch(batch, replayers, result);
+      }
+    });
+    verifyBatch(batch, replayers, result);
+    return result;
+  }
+  
+  /**
+   * Replays the given logs in parallel, adds those that fail verification
+   * to the result, and clears the batch.
+   */
+  private static void verifyBatch(List<InputLog> batch, Map<Long, Replayer> replayers, List<InputLog> result)
+  {
+    boolean[] failed = new boolean[batch.size()];
+    IntStream.range(0, batch.size()).parallel().forEach(i ->
+    {
+      InputLog log = batch.get(i);
+      Replayer replayer = replayers.get(log.getMazeHash());
+      if (replayer == null)
+      {
+        throw new IllegalArgumentException("No maze with hash " + Long.toHexString(log.getMazeHash()));
+      }
+      failed[i] = !replayer.verify(log);
+    });
+    for (int i = 0; i < failed.length; ++i)
+    {
+      if (failed[i])
+      {
+        result.add(batch.get(i));
+      }
+    }
+    batch.clear();
+  }
+  
+  /**
+   * Maps a read-only window of the file starting at the given offset.
+   */
+  private static MappedByteBuffer map(FileChannel channel, long start, long size) throws IOException
+  {
+    return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+  }
+  
+  /**
+   * Returns true if the log starting at the buffer's position lies
+   * entirely within the buffer.
+   */
+  private static boolean containsLog(ByteBuffer buf)
+  {
+    int pos = buf.position();
+    if (buf.remaining() < InputLog.HEADER_SIZE)
+    {
+      return false;
+    }
+    int eventBytes = buf.getInt(pos + InputLog.HEADER_SIZE - 4);
+    return eventBytes >= 0 && eventBytes <= buf.remaining() - InputLog.HEADER_SIZE;
+  }
+}
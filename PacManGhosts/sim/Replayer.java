@@ -0,0 +1,92 @@
+package sim;
+
+import api.PacmanGame;
+
+/**
+ * Re-runs a recorded input log headlessly, as fast as possible, and
+ * checks that the game ends up in the recorded state.  The game is
+ * rebuilt with the recorded enemies per marker and modes, and since it
+ * is deterministic for a given maze, seed and settings, any difference
+ * indicates a change in game behavior.
+ */
+public class Replayer
+{
+  /**
+   * Maze rows the logs were recorded on.
+   */
+  private final String[] rows;
+  
+  /**
+   * Hash of the maze rows.
+   */
+  private final long mazeHash;
+  
+  /**
+   * Constructs a replayer for logs recorded on the given maze.
+   * @param rows
+   *   maze rows
+   */
+  public Replayer(String[] rows)
+  {
+    this.rows = rows;
+    mazeHash = PacmanGame.hashMaze(rows);
+  }
+  
+  /**
+   * Replays the given log on a new game and returns the game in its
+   * final state.
+   * @param log
+   *   the log to replay
+   * @return
+   *   the game after replaying all input
+   * @throws IllegalArgumentException
+   *   if the log was recorded on a different maze
+   */
+  public PacmanGame replay(InputLog log)
+  {
+    if (log.getMazeHash() != mazeHash)
+    {
+      throw new IllegalArgumentException("Log was recorded on a different maze");
+    }
+    PacmanGame game = new PacmanGame(rows, log.getFrameRate(), log.getSeed(), log.getGhostsPerMarker());
+    game.setPursuit((log.getModes() & InputLog.PURSUIT) != 0);
+    game.setFixedPoint((log.getModes() & InputLog.FIXED_POINT) != 0);
+    InputLog.Cursor events = log.cursor();
+    boolean pending = events.next();
+    int end = log.getFrameCount();
+    while (true)
+    {
+      while (pending && events.getFrame() == game.getFrameCount())
+      {
+        game.turnPlayer(events.getDirection());
+        pending = events.next();
+      }
+      if (game.getFrameCount() >= end || game.levelOver())
+      {
+        break;
+      }
+
+      // nothing is logged until the next event, so skip ahead to it
+      int next = pending ? Math.min(events.getFrame(), end) : end;
+      game.fastForward(Math.max(1, next - game.getFrameCount()));
+    }
+    return game;
+  }
+  
+  /**
+   * Replays the given log and returns true if the final frame count,
+   * score, lives and state checksum match those recorded.
+   * @param log
+   *   the log to verify
+   * @return
+   *   true if the replay reproduces the recorded outcome
+   */
+  public boolean verify(InputLog log)
+  {
+    PacmanGame game = replay(log);
+    return game.getFrameCount() == log.getFrameCount()
+        && game.getScore() == log.getFinalScore()
+        && game.getLives() == log.getFinalLives()
+        && game.getStateChecksum() == log.getFinalChecksum();
+  }
+}
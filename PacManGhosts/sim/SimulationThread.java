@@ -0,0 +1,183 @@
+package sim;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import api.Direction;
+import api.PacmanGame;
+
+/**
+ * Runs a game at a fixed frame rate on a thread of its own, so that the
+ * speed of the game does not depend on how long it takes to draw.  After
+ * each frame, a snapshot of the game is published together with the one
+ * before it in a single atomic reference, which a renderer on another
+ * thread can read at any time without locking.  Once the thread is 
+ * started, the game must only be touched by this thread; input from other
+ * threads is passed in through turnPlayer(), which queues it for the next
+ * frame.
+ * <p>
+ * Frames are scheduled at fixed intervals from the start time.  If the
+ * thread falls more than a few frames behind, for example because the
+ * machine was suspended, the missed frames are dropped rather than being
+ * run back to back.
+ */
+public class SimulationThread implements Runnable
+{
+  /**
+   * Largest number of frames that are run back to back to catch up.
+   */
+  private static final int MAX_CATCH_UP = 5;
+
+  private final PacmanGame game;
+  private final long stepNanos;
+  private final ConcurrentLinkedQueue<Direction> input = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<FramePair> frames;
+  private volatile PlayerController controller;
+  private volatile boolean running;
+  private Thread thread;
+
+  /**
+   * Constructs a simulation thread for the given game, which should not
+   * be used by any other thread once the simulation is started.
+   * @param game
+   *   the game to run
+   */
+  public SimulationThread(PacmanGame game)
+  {
+    this.game = game;
+    stepNanos = 1_000_000_000L / game.getFrameRate();
+    FramePair first = new FramePair(game.snapshot(), game.snapshot(), System.nanoTime());
+    frames = new AtomicReference<>(first);
+  }
+
+  /**
+   * Starts running frames on a new daemon thread.  Does nothing if
+   * already running.
+   */
+  public synchronized void start()
+  {
+    if (thread != null)
+    {
+      return;
+    }
+    running = true;
+    thread = new Thread(this, "pacman-simulation");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops running frames and waits for the thread to finish.
+   */
+  public synchronized void stop()
+  {
+    if (thread == null)
+    {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(thread);
+    try
+    {
+      thread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    thread = null;
+  }
+
+  /**
+   * Queues a turn of the player, to be applied before the next frame.
+   * May be called from any thread.
+   * @param dir
+   *   desired direction
+   */
+  public void turnPlayer(Direction dir)
+  {
+    input.add(dir);
+  }
+
+  /**
+   * Sets a controller consulted on the simulation thread before each
+   * frame in which the player is alive.  May be called from any thread.
+   * @param c
+   *   the controller, or null for none
+   */
+  public void setController(PlayerController c)
+  {
+    controller = c;
+  }
+
+  /**
+   * Returns the two most recently published frames.  May be called from
+   * any thread.
+   * @return
+   *   latest frames
+   */
+  public FramePair getFrames()
+  {
+    return frames.get();
+  }
+
+  /**
+   * Returns the time between frames.
+   * @return
+   *   frame interval in nanoseconds
+   */
+  public long getStepNanos()
+  {
+    return stepNanos;
+  }
+
+  @Override
+  public void run()
+  {
+    long next = System.nanoTime();
+    while (running)
+    {
+      long now = System.nanoTime();
+      if (now < next)
+      {
+        LockSupport.parkNanos(next - now);
+        continue;
+      }
+      if (now - next > MAX_CATCH_UP * stepNanos)
+      {
+        next = now;
+      }
+      step();
+      next += stepNanos;
+    }
+  }
+
+  /**
+   * Applies queued input, runs one frame, and publishes the result.
+   */
+  private void step()
+  {
+    Direction dir;
+    while ((dir = input.poll()) != null)
+    {
+      game.turnPlayer(dir);
+    }
+    PlayerController c = controller;
+    if (c != null && !game.isPlayerDead() && !game.levelOver())
+    {
+      dir = c.chooseDirection(game);
+      if (dir != null)
+      {
+        game.turnPlayer(dir);
+      }
+    }
+    if (game.levelOver())
+    {
+      return;
+    }
+    game.updateAll();
+    FramePair last = frames.get();
+    frames.set(new FramePair(last.getCurrent(), game.snapshot(), System.nanoTime()));
+  }
+}
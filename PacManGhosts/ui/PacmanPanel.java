@@ -2,29 +2,46 @@ package ui;
 
 
 import java.awt.Color;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 import javax.swing.Timer;
 
-import api.Actor;
+import api.ActorState;
 import api.CellType;
 import api.Direction;
-import api.Location;
+import api.GameSnapshot;
 import api.MazeCell;
 import api.Mode;
 import api.PacmanGame;
+import sim.FramePair;
+import sim.PlayerController;
+import sim.SimulationThread;
 
 /**
  * UI for a Pacman game.  This UI does very little besides
- * a) send periodic update commands to the game, 
+ * a) start a simulation thread that updates the game at its own
+ * frame rate,
  * b) send turn instructions to the game when one of
  * the arrow keys is pressed, and 
- * c) draw the game state
+ * c) draw the frames published by the simulation thread at the
+ * refresh rate of the display, interpolating the actors' positions
+ * between the last two frames.
+ * <p>
+ * Once the panel is constructed the game belongs to the simulation
+ * thread; the panel only uses the parts of it that never change, such
+ * as the maze layout and color hints, and reads everything else from
+ * the published snapshots.
  */
 public class PacmanPanel extends JPanel 
 {
@@ -42,6 +59,18 @@ public class PacmanPanel extends JPanel
    * Size of dots.
    */
   public static final int PELLET_SIZE = CELL_SIZE / 4;
+  
+  /**
+   * Largest number of enemies for which only the areas around the
+   * actors are repainted each frame; with more, the whole panel is
+   * repainted.
+   */
+  private static final int MAX_DIRTY_ACTORS = 32;
+
+  /**
+   * Refresh rate assumed when the display does not report one.
+   */
+  private static final int DEFAULT_REFRESH_RATE = 60;
 
   /**
    * Slightly brighter blue for wall squares.
@@ -59,100 +88,352 @@ public class PacmanPanel extends JPanel
   private PacmanGame game; 
 
   /**
-   * Timer for game updates.
+   * Thread that runs the game.
+   */
+  private SimulationThread sim;
+
+  /**
+   * Timer for repainting, running at the display's refresh rate.
    */
   private Timer timer;
   
   /**
-   * Timer interval, determined by game's preferred frame rate.
+   * Game frame rate, used to time the flashing of frightened ghosts.
    */
-  private int interval;
+  private int frameRate;
   
+  /**
+   * Frames currently being drawn.
+   */
+  private FramePair shown;
+
+  /**
+   * Interpolated row of the center of each actor, the player first and
+   * then the enemies.
+   */
+  private double[] actorRow;
+
+  /**
+   * Interpolated column of the center of each actor, the player first
+   * and then the enemies.
+   */
+  private double[] actorCol;
   
+  /**
+   * Walls and uneaten pellets, rendered once at device resolution and
+   * updated as pellets are eaten.
+   */
+  private BufferedImage mazeLayer;
   
-  private Location prev;
-  private double angle;
-  private double arcIncrement;
+  /**
+   * Device pixels per user-space pixel that the maze layer was rendered
+   * at, 1.0 except on HiDPI displays.
+   */
+  private double layerScale;
+  
+  /**
+   * Whether each cell, in row-major order, has a pellet drawn in the 
+   * maze layer.
+   */
+  private boolean[] pelletShown;
+  
+  /**
+   * Frame count when the maze layer was last brought up to date.
+   */
+  private int layerFrame;
+  
+  /**
+   * Area last painted for each actor, the player first and then the
+   * enemies, or null if not yet painted.
+   */
+  private Rectangle[] actorBounds;
   
   /**
-   * Constructs a panel to display the given game.
+   * Constructs a panel to display the given game and starts running
+   * the game.  The game should not be used by the caller afterwards.
    * @param game
    *   the grid to be displayed
-   * @param sleepTime
-   *   time between frames, in milliseconds
    */
   public PacmanPanel(PacmanGame game)
   {
     this.game = game;   
-    prev = game.getPlayer().getCurrentLocation();
-    interval = 1000 / game.getFrameRate();   
-    timer = new Timer(interval, new TimerCallback());
+    frameRate = game.getFrameRate();
+    sim = new SimulationThread(game);
+    int numActors = sim.getFrames().getCurrent().getEnemyCount() + 1;
+    actorRow = new double[numActors];
+    actorCol = new double[numActors];
+    sim.start();
+    timer = new Timer(1000 / refreshRate(), new TimerCallback());
     timer.start();    
     this.addKeyListener(new MyKeyListener());
   }
 
+  /**
+   * Sets a controller that is consulted before each frame to steer the
+   * player.  Arrow keys still work while an autopilot is set.
+   * @param controller
+   *   the autopilot, or null to turn it off
+   */
+  public void setAutopilot(PlayerController controller)
+  {
+    sim.setController(controller);
+  }
+
   @Override
   public void paintComponent(Graphics g)
   {
-    // clear background
-    g.clearRect(0, 0, getWidth(), getHeight());
+    if (shown == null)
+    {
+      interpolate();
+    }
+    double scale = ((Graphics2D) g).getTransform().getScaleX();
+    if (mazeLayer == null || scale != layerScale)
+    {
+      renderMazeLayer(scale);
+    }
+    else
+    {
+      updateMazeLayer();
+    }
     
-    for (int row = 0; row < game.getNumRows(); ++row)
+    // clear background, then copy the part of the maze layer that
+    // needs painting
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
     {
-      for (int col = 0; col < game.getNumColumns(); ++col)
-      {
-        g.setColor(Color.BLACK);
-        g.fillRect(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);         
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    g.clearRect(clip.x, clip.y, clip.width, clip.height);
+    Rectangle area = clip.intersection(new Rectangle(0, 0, 
+        game.getNumColumns() * CELL_SIZE, game.getNumRows() * CELL_SIZE));
+    if (!area.isEmpty())
+    {
+      int x2 = area.x + area.width;
+      int y2 = area.y + area.height;
+      g.drawImage(mazeLayer, area.x, area.y, x2, y2,
+          (int) Math.floor(area.x * scale), (int) Math.floor(area.y * scale),
+          (int) Math.ceil(x2 * scale), (int) Math.ceil(y2 * scale), null);
+    }
+    
+    drawPacman(g);
+    drawGhosts(g);
 
-        
-        //Color color = getColor(row, col);
+   }
+  
+  /**
+   * Returns the refresh rate of the default screen, or a typical rate
+   * if it is not known.
+   */
+  private static int refreshRate()
+  {
+    if (GraphicsEnvironment.isHeadless())
+    {
+      return DEFAULT_REFRESH_RATE;
+    }
+    DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getDefaultScreenDevice().getDisplayMode();
+    int rate = mode.getRefreshRate();
+    return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : rate;
+  }
+
+  /**
+   * Picks up the latest frames from the simulation thread and computes
+   * where each actor should be drawn at this moment.  Positions are
+   * interpolated from the previous frame to the current one over one
+   * frame interval after the current frame was published, so the
+   * display runs one frame behind the game.  Jumps of more than one
+   * cell, such as passing through the tunnel or being reset after a
+   * death, are not interpolated.
+   */
+  private void interpolate()
+  {
+    shown = sim.getFrames();
+    double alpha = (double) (System.nanoTime() - shown.getPublishNanos()) / sim.getStepNanos();
+    alpha = Math.max(0, Math.min(1, alpha));
+    GameSnapshot previous = shown.getPrevious();
+    GameSnapshot current = shown.getCurrent();
+    for (int i = 0; i < actorRow.length; ++i)
+    {
+      ActorState before = i == 0 ? previous.getPlayerState() : previous.getEnemyState(i - 1);
+      ActorState after = i == 0 ? current.getPlayerState() : current.getEnemyState(i - 1);
+      actorRow[i] = blend(before.getRowExact(), after.getRowExact(), alpha);
+      actorCol[i] = blend(before.getColExact(), after.getColExact(), alpha);
+    }
+  }
+
+  /**
+   * Returns the value the given fraction of the way from the first given
+   * value to the second, or the second value if they are more than one
+   * cell apart.
+   */
+  private static double blend(double from, double to, double alpha)
+  {
+    if (Math.abs(to - from) > 1)
+    {
+      return to;
+    }
+    return from + (to - from) * alpha;
+  }
+
+  /**
+   * Draws the walls and uneaten pellets into a new maze layer at the
+   * given scale.
+   */
+  private void renderMazeLayer(double scale)
+  {
+    GameSnapshot frame = shown.getCurrent();
+    int numRows = game.getNumRows();
+    int numCols = game.getNumColumns();
+    int width = (int) Math.ceil(numCols * CELL_SIZE * scale);
+    int height = (int) Math.ceil(numRows * CELL_SIZE * scale);
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    mazeLayer = gc != null ? gc.createCompatibleImage(width, height) 
+        : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    layerScale = scale;
+    pelletShown = new boolean[numRows * numCols];
+    layerFrame = frame.getFrameCount();
+    
+    Graphics2D g = mazeLayer.createGraphics();
+    g.scale(scale, scale);
+    g.setColor(Color.BLACK);
+    g.fillRect(0, 0, numCols * CELL_SIZE, numRows * CELL_SIZE);
+    for (int row = 0; row < numRows; ++row)
+    {
+      for (int col = 0; col < numCols; ++col)
+      {
         MazeCell c = game.getCell(row, col);
         if (c.isWall())
         {
           g.setColor(WALL_COLOR);
           g.drawRect(col * CELL_SIZE + BORDER_SIZE / 2, row * CELL_SIZE + BORDER_SIZE / 2, BORDER_SIZE, BORDER_SIZE);
         }
-        else
+        else if (c.getType() == CellType.DOT && !frame.isEaten(row, col))
         {
-          if (c.getType() == CellType.DOT && c.canEat())
-          {
-            g.setColor(Color.WHITE);
-            g.fillOval(col * CELL_SIZE + (CELL_SIZE - PELLET_SIZE) / 2, row * CELL_SIZE + (CELL_SIZE - PELLET_SIZE) / 2, PELLET_SIZE, PELLET_SIZE);
-          }
-          else if (c.getType() == CellType.ENERGIZER && c.canEat())
-          {
-            g.setColor(Color.LIGHT_GRAY);
-            //g.fillOval(col * cellSize + (cellSize - PELLET_SIZE) / 2, row * cellSize + (cellSize - PELLET_SIZE) / 2, PELLET_SIZE, PELLET_SIZE);
-            g.fillOval(col * CELL_SIZE + BORDER_SIZE / 2, row * CELL_SIZE + BORDER_SIZE / 2, BORDER_SIZE, BORDER_SIZE);
-            
-          }
+          g.setColor(Color.WHITE);
+          g.fillOval(col * CELL_SIZE + (CELL_SIZE - PELLET_SIZE) / 2, row * CELL_SIZE + (CELL_SIZE - PELLET_SIZE) / 2, PELLET_SIZE, PELLET_SIZE);
+          pelletShown[row * numCols + col] = true;
+        }
+        else if (c.getType() == CellType.ENERGIZER && !frame.isEaten(row, col))
+        {
+          g.setColor(Color.LIGHT_GRAY);
+          g.fillOval(col * CELL_SIZE + BORDER_SIZE / 2, row * CELL_SIZE + BORDER_SIZE / 2, BORDER_SIZE, BORDER_SIZE);
+          pelletShown[row * numCols + col] = true;
         }
       }
     }
-    
-    // draw grid ?
-//    g.setColor(GRID_COLOR);
-//    for (int row = 0; row < maze.getNumRows(); ++row)
-//    {
-//      for (int col = 0; col < maze.getNumColumns(); ++col)
-//      {
-//        g.drawRect(col * cellSize, row * cellSize, cellSize, cellSize);
-//      }
-//    }
-
-    
-    drawPacman(g);
-    drawGhosts(g);
-
-   }
+    g.dispose();
+  }
+  
+  /**
+   * Brings the maze layer up to date with the current frame.  Normally
+   * only the player's cell can have changed since the last frame, so
+   * only it is checked; if frames were skipped, every cell is checked,
+   * and if a pellet has reappeared the layer is rendered again.
+   */
+  private void updateMazeLayer()
+  {
+    if (mazeLayer == null)
+    {
+      return;
+    }
+    GameSnapshot frame = shown.getCurrent();
+    int frameCount = frame.getFrameCount();
+    boolean rewound = false;
+    if (frameCount == layerFrame + 1)
+    {
+      ActorState player = frame.getPlayerState();
+      rewound = !updateCell(frame, (int) player.getRowExact(), (int) player.getColExact());
+    }
+    else if (frameCount != layerFrame)
+    {
+      for (int row = 0; row < game.getNumRows() && !rewound; ++row)
+      {
+        for (int col = 0; col < game.getNumColumns() && !rewound; ++col)
+        {
+          rewound = !updateCell(frame, row, col);
+        }
+      }
+    }
+    layerFrame = frameCount;
+    if (rewound)
+    {
+      // not incremental, but only happens on a new level or if the
+      // game state is rewound
+      renderMazeLayer(layerScale);
+      repaint();
+    }
+  }
+  
+  /**
+   * Erases the pellet in the given cell from the maze layer if it has
+   * been eaten in the given frame.  Returns false if the cell has a
+   * pellet that is not shown in the layer.
+   */
+  private boolean updateCell(GameSnapshot frame, int row, int col)
+  {
+    int index = row * game.getNumColumns() + col;
+    CellType type = game.getCell(row, col).getType();
+    boolean present = (type == CellType.DOT || type == CellType.ENERGIZER)
+        && !frame.isEaten(row, col);
+    if (pelletShown[index] && !present)
+    {
+      Graphics2D g = mazeLayer.createGraphics();
+      g.scale(layerScale, layerScale);
+      g.setColor(Color.BLACK);
+      g.fillRect(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+      g.dispose();
+      pelletShown[index] = false;
+      repaint(col * CELL_SIZE, row * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+    }
+    return pelletShown[index] || !present;
+  }
+  
+  /**
+   * Repaints the areas that the actors occupied when last painted and
+   * occupy now.  With many enemies, the whole panel is repainted instead.
+   */
+  private void repaintActors()
+  {
+    int numActors = actorRow.length;
+    if (numActors > MAX_DIRTY_ACTORS + 1 || mazeLayer == null || !isShowing())
+    {
+      actorBounds = null;
+      repaint();
+      return;
+    }
+    if (actorBounds == null)
+    {
+      actorBounds = new Rectangle[numActors];
+    }
+    for (int i = 0; i < numActors; ++i)
+    {
+      Rectangle now = boundsOf(actorRow[i], actorCol[i]);
+      Rectangle dirty = actorBounds[i] == null ? now : now.union(actorBounds[i]);
+      actorBounds[i] = now;
+      paintImmediately(dirty);
+    }
+  }
+  
+  /**
+   * Returns the area in which an actor centered at the given position
+   * is drawn, with a one-pixel margin.
+   */
+  private static Rectangle boundsOf(double row, double col)
+  {
+    int rowPixel = (int) Math.round((row - 0.5) * CELL_SIZE);
+    int colPixel = (int) Math.round((col - 0.5) * CELL_SIZE);
+    return new Rectangle(colPixel - 1, rowPixel - 1, CELL_SIZE + 2, CELL_SIZE + 2);
+  }
   
   private void drawPacman(Graphics g)
   {
     // upper left corner
-    Actor pacman = game.getPlayer();
-    Direction dir = pacman.getCurrentDirection();
+    Direction dir = shown.getCurrent().getPlayerState().getDirection();
+    double row = actorRow[0];
+    double col = actorCol[0];
     
     int dirDegrees = 0;
+    double along = col;
     switch (dir)
     {
       case LEFT:
@@ -163,18 +444,23 @@ public class PacmanPanel extends JPanel
         break;
       case UP:
         dirDegrees = 90;
+        along = row;
         break;
       case DOWN:
         dirDegrees = 270;
+        along = row;
     }
     
-    int currAngle = (int) Math.round(angle);
+    // eating animation: mouth is closed at the center of a cell and
+    // wide open at the edges
+    double frac = along - Math.floor(along);
+    int currAngle = (int) Math.round(50 * Math.abs(2 * frac - 1));
     int start = dirDegrees + currAngle;
     int sweep = 360 - currAngle * 2;
     
-    double pmRow = pacman.getRowExact() - 0.5;
+    double pmRow = row - 0.5;
     int rowPixel = (int) Math.round(pmRow * CELL_SIZE);
-    double pmCol = pacman.getColExact() - 0.5;
+    double pmCol = col - 0.5;
     int colPixel = (int) Math.round(pmCol * CELL_SIZE);
     g.setColor(Color.YELLOW);
     //g.fillOval(colPixel, rowPixel, CELL_SIZE, CELL_SIZE);
@@ -184,18 +470,18 @@ public class PacmanPanel extends JPanel
   
   private void drawGhosts(Graphics g)
   {
-    Actor[] enemies = game.getEnemies();
+    GameSnapshot frame = shown.getCurrent();
     Color[] colorHints = game.getColorHints();
-    for (int i = 0; i < enemies.length; ++i)
+    for (int i = 0; i < frame.getEnemyCount(); ++i)
     {
-      Actor ghost = enemies[i];
+      ActorState ghost = frame.getEnemyState(i);
       if (ghost.getMode() == Mode.FRIGHTENED)
       {
         g.setColor(Color.BLUE);
         
         // flash every QUARTER second = 8 flashes in last 4 seconds
-        int count = game.getFrightenedCount();
-        int quarterSecondCount = 250 / interval;
+        int count = frame.getFrightenedCount();
+        int quarterSecondCount = Math.max(1, frameRate / 4);
         if (quarterSecondCount * 16 >= count)
         {
           int flag = count / quarterSecondCount;
@@ -214,9 +500,9 @@ public class PacmanPanel extends JPanel
         g.setColor(colorHints[i]);
       }
 
-      double pmRow = ghost.getRowExact() - 0.5;
+      double pmRow = actorRow[i + 1] - 0.5;
       int rowPixel = (int) Math.round(pmRow * CELL_SIZE);
-      double pmCol = ghost.getColExact() - 0.5;
+      double pmCol = actorCol[i + 1] - 0.5;
       int colPixel = (int) Math.round(pmCol * CELL_SIZE);
       g.fillOval(colPixel, rowPixel, CELL_SIZE, CELL_SIZE);
       g.fillRect(colPixel, rowPixel + CELL_SIZE / 2, CELL_SIZE, CELL_SIZE / 2);
@@ -236,7 +522,7 @@ public class PacmanPanel extends JPanel
       int eyeballX = eyeSize / 2;
       int eyeballY = eyeSize / 2;
       int shift = eyeSize / 4;
-      Direction dir = ghost.getCurrentDirection();
+      Direction dir = ghost.getDirection();
       
       switch (dir)
       {
@@ -267,7 +553,6 @@ public class PacmanPanel extends JPanel
   }
   
   
-  
   private class MyKeyListener implements KeyListener
   {
     @Override
@@ -293,7 +578,7 @@ public class PacmanPanel extends JPanel
           return;
       }
       
-      game.turnPlayer(dir);
+      sim.turnPlayer(dir);
     }
 
     @Override
@@ -315,32 +600,9 @@ public class PacmanPanel extends JPanel
     @Override
     public void actionPerformed(ActionEvent e)
     {
-      game.updateAll();  
-      
-      // calculation for eating animation...
-      Actor pacman = game.getPlayer();
-      Location curr = pacman.getCurrentLocation();
-      if (!curr.equals(prev))
-      {
-        // transitioned to new cell, start closing pacman's mouth
-        prev = curr;
-        double currSpeed = pacman.getCurrentIncrement();
-        int numUpdates = (int) (1.0 / currSpeed / 2);
-        arcIncrement = - 50 / numUpdates;
-        angle = 50 + arcIncrement;
-      }
-      else if (angle <= 0)
-      {
-        arcIncrement = - arcIncrement;
-        angle = arcIncrement;
-      }
-      else if (angle < 50)
-      {
-        angle += arcIncrement;
-      }
-      
-      
-      repaint();
+      interpolate();
+      updateMazeLayer();
+      repaintActors();
     }   
   }
 
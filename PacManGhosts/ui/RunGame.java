@@ -1,11 +1,16 @@
 package ui;
 
 import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
+import api.MazeLayout;
+import api.MazeLoader;
 import api.PacmanGame;
+import sim.MctsController;
 
 public class RunGame
 {
@@ -84,20 +89,41 @@ public class RunGame
 
 
 
-  public static void main(String[] args)
+  public static void main(String[] args) throws IOException
   {
-    final PacmanGame maze = new PacmanGame(MAIN1, 60);
+    // "autopilot" as an argument lets the computer play, and any other
+    // argument is the path of a maze file to play instead of MAIN1
+    boolean useAutopilot = false;
+    MazeLayout layout = MazeLayout.fromRows(MAIN1);
+    for (String arg : args)
+    {
+      if (arg.equals("autopilot"))
+      {
+        useAutopilot = true;
+      }
+      else
+      {
+        layout = MazeLoader.load(Paths.get(arg));
+      }
+    }
+    final MazeLayout mazeLayout = layout;
+    final PacmanGame maze = new PacmanGame(mazeLayout, 60);
+    final boolean autopilot = useAutopilot;
     Runnable r = new Runnable()
     {
       public void run()
       {
-        createAndShow(maze);
+        PacmanPanel panel = createAndShow(maze);
+        if (autopilot)
+        {
+          panel.setAutopilot(new MctsController(mazeLayout));
+        }
       }
     };
     SwingUtilities.invokeLater(r);
   }
 
-  protected static void createAndShow(final PacmanGame maze)
+  protected static PacmanPanel createAndShow(final PacmanGame maze)
   {
 
     // create the frame
@@ -123,6 +149,7 @@ public class RunGame
     
     // make sure panel gets key events
     panel.grabFocus();
+    return panel;
 
   }
 